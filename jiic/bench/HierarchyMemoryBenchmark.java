@@ -0,0 +1,200 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.CompactHierarchy;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.FileAttributes;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660Directory;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660File;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660RootDirectory;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.CreateISO;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.ISO9660Config;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.ISO9660Element;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.ISOImageFileHandler;
+import de.tu_darmstadt.informatik.rbg.hatlak.joliet.impl.JolietConfig;
+import de.tu_darmstadt.informatik.rbg.hatlak.rockridge.impl.RockRidgeConfig;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.Element;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.StreamHandler;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.impl.ChainingStreamHandler;
+
+/**
+ * Compares the heap needed for many small files when kept as
+ * ISO9660Directory/ISO9660File objects and as CompactHierarchy: for a
+ * synthetic hierarchy in memory and for a tree of empty files on disk,
+ * both after adding the tree and while CreateISO builds an image of it
+ * with ISO 9660, Rock Ridge and Joliet (the heap retained when an area of
+ * the image starts and when it ends, at most).<br>
+ * Usage: HierarchyMemoryBenchmark [number of files] [files per directory]
+ * [number of files on disk] [work directory]
+ */
+public class HierarchyMemoryBenchmark {
+	private static final long TIME = 1200000000000L;
+	
+	public static void main(String[] args) throws Exception {
+		int fileCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int filesPerDir = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		int treeFileCount = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+		File work = args.length > 3 ? new File(args[3]) : new File(System.getProperty("java.io.tmpdir"), "jiic-memory");
+		
+		System.out.println("Files: " + fileCount + ", files per directory: " + filesPerDir);
+		
+		long base = usedMemory();
+		ISO9660RootDirectory root = buildObjects(fileCount, filesPerDir);
+		long objects = usedMemory() - base;
+		report("Object hierarchy", objects, fileCount);
+		root = null;
+		
+		base = usedMemory();
+		CompactHierarchy compact = buildCompact(fileCount, filesPerDir);
+		long compactSize = usedMemory() - base;
+		report("Compact hierarchy", compactSize, fileCount);
+		
+		System.out.println("Ratio: " + ratio(objects, compactSize));
+		
+		// Keep the hierarchy reachable until measured
+		System.out.println("Entries: " + compact.size());
+		compact = null;
+		
+		System.out.println("Files on disk: " + treeFileCount + ", files per directory: " + filesPerDir);
+		File tree = createTree(new File(work, "tree"), treeFileCount, filesPerDir);
+		File image = new File(work, "memory.iso");
+		
+		base = usedMemory();
+		root = new ISO9660RootDirectory();
+		root.addContentsRecursively(tree);
+		report("Object hierarchy", usedMemory() - base, treeFileCount);
+		long objectBuild = build(root, image) - base;
+		report("Object hierarchy, build", objectBuild, treeFileCount);
+		root = null;
+		
+		base = usedMemory();
+		compact = new CompactHierarchy(treeFileCount + treeFileCount / filesPerDir + 1);
+		compact.addContentsRecursively(CompactHierarchy.ROOT, tree);
+		root = compact.createRoot();
+		report("Compact hierarchy", usedMemory() - base, treeFileCount);
+		long compactBuild = build(root, image) - base;
+		report("Compact hierarchy, build", compactBuild, treeFileCount);
+		
+		System.out.println("Ratio, build: " + ratio(objectBuild, compactBuild));
+		image.delete();
+	}
+	
+	private static ISO9660RootDirectory buildObjects(int fileCount, int filesPerDir) throws Exception {
+		ISO9660RootDirectory root = new ISO9660RootDirectory();
+		ISO9660Directory dir = null;
+		for (int i = 0; i < fileCount; i++) {
+			if (i % filesPerDir == 0) {
+				dir = root.addDirectory("dir" + (i / filesPerDir));
+			}
+			dir.addFile(new ISO9660File(new File("file" + i + ".dat"), new FileAttributes(1024, TIME, false)));
+		}
+		return root;
+	}
+
+	private static CompactHierarchy buildCompact(int fileCount, int filesPerDir) {
+		CompactHierarchy hierarchy = new CompactHierarchy(fileCount + fileCount / filesPerDir + 1);
+		int dir = 0;
+		for (int i = 0; i < fileCount; i++) {
+			if (i % filesPerDir == 0) {
+				dir = hierarchy.addDirectory(CompactHierarchy.ROOT, "dir" + (i / filesPerDir), TIME, 0);
+			}
+			hierarchy.addFile(dir, "file" + i + ".dat", 1024, TIME, 0);
+		}
+		return hierarchy;
+	}
+	
+	// Empty files, created once and reused by later runs
+	private static File createTree(File tree, int fileCount, int filesPerDir) throws IOException {
+		File dir = null;
+		for (int i = 0; i < fileCount; i++) {
+			if (i % filesPerDir == 0) {
+				dir = new File(tree, "dir" + (i / filesPerDir));
+				dir.mkdirs();
+			}
+			new File(dir, "file" + i + ".dat").createNewFile();
+		}
+		return tree;
+	}
+	
+	/**
+	 * Builds an image and returns the heap retained when an area starts
+	 * or the image ends, at most
+	 */
+	private static long build(ISO9660RootDirectory root, File image) throws Exception {
+		ISO9660Config iso9660Config = new ISO9660Config();
+		iso9660Config.setVolumeID("Memory");
+		JolietConfig jolietConfig = new JolietConfig();
+		jolietConfig.setVolumeID("Memory");
+		
+		// Measured by the output handler: build metrics would meter each Fixup
+		HeapHandler heap = new HeapHandler(new ISOImageFileHandler(image));
+		new CreateISO(heap, root).process(iso9660Config, new RockRidgeConfig(), jolietConfig, null);
+		return heap.peak;
+	}
+	
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+	
+	private static double ratio(long objects, long compact) {
+		return (objects * 100 / Math.max(compact, 1)) / 100.0;
+	}
+	
+	private static void report(String name, long bytes, int fileCount) {
+		System.out.println(name + ": " + (bytes / 1048576) + " MB, " + (bytes / fileCount) + " bytes per file");
+	}
+	
+	/**
+	 * Output handler measuring the heap retained when an area starts and
+	 * when the image ends
+	 */
+	private static class HeapHandler extends ChainingStreamHandler {
+		private long peak = 0;
+		
+		HeapHandler(StreamHandler streamHandler) {
+			super(streamHandler, streamHandler);
+		}
+		
+		@Override
+		public void startElement(Element element) throws HandlerException {
+			if (element instanceof ISO9660Element) {
+				peak = Math.max(peak, usedMemory());
+			}
+			super.startElement(element);
+		}
+		
+		@Override
+		public void endDocument() throws HandlerException {
+			peak = Math.max(peak, usedMemory());
+			super.endDocument();
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.tu_darmstadt.informatik.rbg.hatlak.eltorito.impl.ElToritoConfig;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660RootDirectory;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.CreateISO;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.ISO9660Config;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.ISOImageFileHandler;
+import de.tu_darmstadt.informatik.rbg.hatlak.joliet.impl.JolietConfig;
+import de.tu_darmstadt.informatik.rbg.hatlak.rockridge.impl.RockRidgeConfig;
+
+/**
+ * Complete image creation as timed in perf.txt: the synthetic tree of a
+ * test case is added to a new hierarchy and written to an image with
+ * ISOtest's settings, for each combination of Joliet, Rock Ridge and
+ * El Torito.<br>
+ * Trees and images are kept in the directory given by the system
+ * property jiic.bench.dir (default: /dev/shm/jiic-bench); the linux tree
+ * and its images need about 1 GB there.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CreateISOBenchmark {
+	@Param({SyntheticTree.MINIMAL, SyntheticTree.TEST, SyntheticTree.ELDREAM, SyntheticTree.LINUX})
+	public String tree;
+
+	@Param({"true", "false"})
+	public boolean joliet;
+
+	@Param({"true", "false"})
+	public boolean rockRidge;
+
+	@Param({"true", "false"})
+	public boolean elTorito;
+
+	private File source, bootImage, image;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		File base = new File(System.getProperty("jiic.bench.dir", "/dev/shm/jiic-bench"));
+		source = SyntheticTree.create(base, tree);
+		bootImage = SyntheticTree.createBootImage(base);
+		image = new File(base, tree + ".iso");
+		ISO9660RootDirectory.MOVED_DIRECTORIES_STORE_NAME = "rr_moved";
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		image.delete();
+	}
+
+	@Benchmark
+	public long process() throws Exception {
+		ISO9660RootDirectory root = new ISO9660RootDirectory();
+		root.addContentsRecursively(source);
+
+		ISO9660Config iso9660Config = new ISO9660Config();
+		iso9660Config.allowASCII(false);
+		iso9660Config.setInterchangeLevel(1);
+		iso9660Config.restrictDirDepthTo8(true);
+		iso9660Config.setVolumeID("ISO Test");
+		iso9660Config.forceDotDelimiter(true);
+
+		RockRidgeConfig rrConfig = null;
+		if (rockRidge) {
+			rrConfig = new RockRidgeConfig();
+			rrConfig.setMkisofsCompatibility(false);
+			rrConfig.hideMovedDirectoriesStore(true);
+			rrConfig.forcePortableFilenameCharacterSet(true);
+		}
+
+		JolietConfig jolietConfig = null;
+		if (joliet) {
+			jolietConfig = new JolietConfig();
+			jolietConfig.setVolumeID("Joliet Test");
+			jolietConfig.forceDotDelimiter(true);
+		}
+
+		ElToritoConfig elToritoConfig = null;
+		if (elTorito) {
+			elToritoConfig = new ElToritoConfig(bootImage,
+					ElToritoConfig.BOOT_MEDIA_TYPE_2_88MEG_DISKETTE,
+					ElToritoConfig.PLATFORM_ID_X86, "isoTest", 4,
+					ElToritoConfig.LOAD_SEGMENT_7C0);
+		}
+
+		new CreateISO(new ISOImageFileHandler(image), root).process(iso9660Config, rrConfig, jolietConfig, elToritoConfig);
+		return image.length();
+	}
+}
@@ -0,0 +1,142 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.FileAttributes;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660File;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660RootDirectory;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.LayoutHelper;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.ISO9660DateDataReference;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.ISO9660DirectoryRecord;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.ISO9660LayoutHelper;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.RecordEncoder;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.DataReference;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.Element;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.Fixup;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.StreamHandler;
+
+/**
+ * Writing single Directory Records (as ISO9660Factory does for every file)
+ * and encoding the dates of the volume descriptors, into a handler that
+ * discards everything.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DirectoryRecordBenchmark {
+	private static final long TIME = 1200000000000L;
+
+	private NullStreamHandler streamHandler;
+	private LayoutHelper helper;
+	private RecordEncoder encoder;
+	private List<ISO9660File> files;
+	private int next;
+	private byte[] buffer;
+
+	@Setup
+	public void setup() throws HandlerException {
+		ISO9660RootDirectory root = new ISO9660RootDirectory();
+		for (int i = 0; i < 1000; i++) {
+			root.addFile(new ISO9660File(new File("FILE" + i + ".TXT"), new FileAttributes(0, 0, false)));
+		}
+		files = root.getFiles();
+		streamHandler = new NullStreamHandler();
+		helper = new ISO9660LayoutHelper(streamHandler, root);
+		encoder = new RecordEncoder();
+		buffer = new byte[17];
+	}
+
+	@Benchmark
+	public Object doDR() throws HandlerException {
+		ISO9660File file = files.get(next++ % files.size());
+		ISO9660DirectoryRecord dr = new ISO9660DirectoryRecord(streamHandler, file, helper);
+		dr.setEncoder(encoder);
+		dr.setDataLength(file.length());
+		dr.encode();
+		dr.write();
+		return dr.getLocationFixup();
+	}
+
+	@Benchmark
+	public void dateDataReference(Blackhole blackhole) throws IOException {
+		InputStream in = new ISO9660DateDataReference(TIME).createInputStream();
+		blackhole.consume(in.read(buffer));
+		in.close();
+	}
+
+	/**
+	 * Counts written bytes, Fixups included, and discards them
+	 */
+	private static class NullStreamHandler implements StreamHandler, Fixup {
+		private long position = 0;
+
+		public void startDocument() {
+		}
+
+		public void startElement(Element element) {
+		}
+
+		public void endElement() {
+		}
+
+		public void endDocument() {
+		}
+
+		public void data(DataReference reference) {
+			position += reference.getLength();
+		}
+
+		public Fixup fixup(DataReference reference) {
+			position += reference.getLength();
+			return this;
+		}
+
+		public long mark() {
+			return position;
+		}
+
+		public void close() {
+		}
+
+		public boolean isClosed() {
+			return false;
+		}
+	}
+}
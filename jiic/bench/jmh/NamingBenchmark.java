@@ -0,0 +1,185 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660File;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.NamingConventions;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.ISO9660NamingConventions;
+import de.tu_darmstadt.informatik.rbg.hatlak.joliet.impl.JolietNamingConventions;
+import de.tu_darmstadt.informatik.rbg.hatlak.rockridge.impl.RockRidgeNamingConventions;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
+
+/**
+ * Name normalization of the ISO 9660, Joliet and Rock Ridge naming
+ * conventions over a corpus of file names, compared to the regular
+ * expressions used before.<br>
+ * The corpus is either read from a directory tree (corpus parameter) or
+ * generated from typical source tree, document and media names.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NamingBenchmark {
+	private static final String[] STEMS = {
+		"README", "Makefile", "index", "main", "config", "libfoo-1.2.3",
+		"Übersicht", "photo_2019-07-01 12.30.45", "IMG_0042", "Kapitel 3",
+		"package-info", "CHANGELOG", "setup", "très_long_nom_de_fichier_accentué",
+		"a", "x86_64-linux-gnu", "résumé", "Mozilla Firefox", "test_case_17",
+		"foo.bar.baz", "file:with;odd*chars?", "данные", "データ"
+	};
+	private static final String[] EXTENSIONS = {
+		"", ".c", ".h", ".java", ".class", ".txt", ".tar.gz", ".tar.bz2",
+		".jpg", ".JPEG", ".so.6", ".html", ".xml", ".properties", ".mp3"
+	};
+	private static final Pattern FILEPATTERN = Pattern.compile("^([^.]+)\\.(.+)$");
+	private static final Pattern AZ09 = Pattern.compile("[^A-Z0-9_]");
+	private static final Pattern JOLIET = Pattern.compile("[*/:;?\\\\]");
+	private static final Pattern PORTABLE = Pattern.compile("[^-A-Za-z0-9._]");
+
+	@Param({""})
+	public String corpus;
+
+	@Param({"100000"})
+	public int size;
+
+	private String[] names;
+	private NamingConventions iso9660, joliet, rockRidge;
+
+	@Setup
+	public void setup() {
+		List<String> list = new ArrayList<String>(size);
+		if (corpus.length() > 0) {
+			collect(new File(corpus), list);
+		} else {
+			Random random = new Random(42);
+			while (list.size() < size) {
+				String name = STEMS[random.nextInt(STEMS.length)];
+				if (random.nextInt(3) == 0) {
+					name += random.nextInt(1000);
+				}
+				list.add(name + EXTENSIONS[random.nextInt(EXTENSIONS.length)]);
+			}
+		}
+		names = list.toArray(new String[list.size()]);
+
+		iso9660 = new ISO9660NamingConventions();
+		joliet = new JolietNamingConventions();
+		rockRidge = new RockRidgeNamingConventions();
+	}
+
+	private void collect(File dir, List<String> list) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (int i = 0; i < files.length && list.size() < size; i++) {
+			list.add(files[i].getName());
+			if (files[i].isDirectory()) {
+				collect(files[i], list);
+			}
+		}
+	}
+
+	@Benchmark
+	public void splitName(Blackhole blackhole) {
+		for (int i = 0; i < names.length; i++) {
+			blackhole.consume(ISO9660File.getExtensionDelimiter(names[i]));
+		}
+	}
+
+	@Benchmark
+	public void splitNameRegex(Blackhole blackhole) {
+		for (int i = 0; i < names.length; i++) {
+			Matcher m = FILEPATTERN.matcher(names[i]);
+			blackhole.consume(m.matches() ? m.group(1) : names[i]);
+		}
+	}
+
+	@Benchmark
+	public void iso9660(Blackhole blackhole) throws HandlerException {
+		normalize(iso9660, blackhole);
+	}
+
+	@Benchmark
+	public void iso9660Regex(Blackhole blackhole) {
+		for (int i = 0; i < names.length; i++) {
+			blackhole.consume(AZ09.matcher(names[i].toUpperCase()).replaceAll("_"));
+		}
+	}
+
+	@Benchmark
+	public void joliet(Blackhole blackhole) throws HandlerException {
+		normalize(joliet, blackhole);
+	}
+
+	@Benchmark
+	public void jolietRegex(Blackhole blackhole) {
+		for (int i = 0; i < names.length; i++) {
+			blackhole.consume(JOLIET.matcher(names[i]).replaceAll("_"));
+		}
+	}
+
+	@Benchmark
+	public void rockRidge(Blackhole blackhole) throws HandlerException {
+		normalize(rockRidge, blackhole);
+	}
+
+	@Benchmark
+	public void rockRidgeRegex(Blackhole blackhole) {
+		for (int i = 0; i < names.length; i++) {
+			blackhole.consume(PORTABLE.matcher(names[i]).replaceAll("_"));
+		}
+	}
+
+	private void normalize(NamingConventions conventions, Blackhole blackhole) throws HandlerException {
+		for (int i = 0; i < names.length; i++) {
+			String name = names[i];
+			int dot = ISO9660File.getExtensionDelimiter(name);
+			if (dot >= 0) {
+				blackhole.consume(conventions.normalizeFilename(name.substring(0, dot), name.substring(dot + 1), 1, false));
+			} else {
+				blackhole.consume(conventions.normalizeFilename(name, "", 1, false));
+			}
+		}
+	}
+}
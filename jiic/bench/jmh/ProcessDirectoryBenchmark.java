@@ -0,0 +1,113 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.FileAttributes;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660File;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660RootDirectory;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.NamingConventions;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.ISO9660NamingConventions;
+import de.tu_darmstadt.informatik.rbg.hatlak.joliet.impl.JolietNamingConventions;
+import de.tu_darmstadt.informatik.rbg.hatlak.rockridge.impl.RockRidgeNamingConventions;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
+
+/**
+ * Applying the naming conventions to a single directory, i.e. normalizing,
+ * sorting and resolving the duplicate names of its entries. Each
+ * invocation works on a fresh copy of the directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessDirectoryBenchmark {
+	private static final String[] STEMS = {
+		"README", "Makefile", "main", "config", "Kapitel 3", "Übersicht",
+		"photo_2019-07-01 12.30.45", "very_long_file_name_that_needs_truncation",
+		"test_case", "résumé", "Mozilla Firefox", "libfoo-1.2.3"
+	};
+	private static final String[] EXTENSIONS = {
+		"", ".c", ".h", ".txt", ".tar.gz", ".JPEG", ".html"
+	};
+
+	@Param({"iso9660", "joliet", "rockridge"})
+	public String conventions;
+
+	@Param({"100", "10000"})
+	public int width;
+
+	private NamingConventions namingConventions;
+	private ISO9660RootDirectory template, root;
+
+	@Setup(Level.Trial)
+	public void setup() throws HandlerException {
+		if (conventions.equals("joliet")) {
+			namingConventions = new JolietNamingConventions();
+		} else
+		if (conventions.equals("rockridge")) {
+			namingConventions = new RockRidgeNamingConventions();
+		} else {
+			namingConventions = new ISO9660NamingConventions();
+		}
+
+		// Names that collide once normalized
+		Random random = new Random(42);
+		template = new ISO9660RootDirectory();
+		for (int i = 0; i < width; i++) {
+			String name = STEMS[random.nextInt(STEMS.length)] + (random.nextInt(4)==0 ? "" : " " + random.nextInt(width / 4 + 1));
+			if (i % 10 == 0) {
+				// Directories and files fold case differently when compared
+				// to each other, other characters could break the sort
+				template.addDirectory(name.replaceAll("[^A-Za-z0-9 ]", "-"));
+			} else {
+				template.addFile(new ISO9660File(new File(name + EXTENSIONS[random.nextInt(EXTENSIONS.length)]), new FileAttributes(0, 0, false)));
+			}
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void copy() {
+		// A namespace of the template, as used by the handlers
+		root = template.createNamespace();
+	}
+
+	@Benchmark
+	public ISO9660RootDirectory processDirectory() throws HandlerException {
+		namingConventions.processDirectory(root);
+		return root;
+	}
+}
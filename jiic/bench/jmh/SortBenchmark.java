@@ -0,0 +1,97 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.FileAttributes;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660Directory;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660File;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660HierarchyObject;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660RootDirectory;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
+
+/**
+ * Sorting the contents of a wide directory (mixed case names, files and
+ * directories, several versions of some files) as done when naming
+ * conventions are applied and directory records are written.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SortBenchmark {
+	@Param({"1000", "100000"})
+	public int width;
+
+	private ISO9660Directory dir;
+	private List<ISO9660HierarchyObject> contents;
+
+	@Setup
+	public void setup() throws HandlerException {
+		Random random = new Random(42);
+		dir = new ISO9660RootDirectory();
+		for (int i = 0; i < width; i++) {
+			String name = (random.nextBoolean() ? "Report" : "report") + "_" + random.nextInt(width);
+			if (i % 8 == 0) {
+				dir.addDirectory(name);
+			} else {
+				ISO9660File file = new ISO9660File(new File(name + ".txt"), new FileAttributes(0, 0, false));
+				file.setVersion(1 + random.nextInt(3));
+				dir.addFile(file);
+			}
+		}
+		contents = new ArrayList<ISO9660HierarchyObject>(width);
+		contents.addAll(dir.getDirectories());
+		contents.addAll(dir.getFiles());
+	}
+
+	@Benchmark
+	public List<ISO9660HierarchyObject> sortContents() {
+		List<ISO9660HierarchyObject> list = new ArrayList<ISO9660HierarchyObject>(contents);
+		Collections.shuffle(list, new Random(1));
+		Collections.sort(list);
+		return list;
+	}
+
+	@Benchmark
+	public List<ISO9660File> sortDirectory() {
+		dir.forceSort();
+		return dir.getFiles();
+	}
+}
@@ -0,0 +1,217 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic file trees shaped like the test cases of perf.txt. A tree is
+ * created once below a base directory (preferably on tmpfs, like the
+ * ramdisk used by perf.sh) and reused by later runs.
+ */
+public class SyntheticTree {
+	/** 1 file, 0 bytes */
+	public static final String MINIMAL = "minimal";
+	/** 32 files, 23 directories (2 of them relocated), 416 KB */
+	public static final String TEST = "test";
+	/** 1 file, 425 MB */
+	public static final String ELDREAM = "eldream";
+	/** 21261 files, 1263 directories, about 478 MB */
+	public static final String LINUX = "linux";
+
+	private static final long KB = 1024, MB = 1024 * KB;
+	private static final long BOOT_IMAGE_SIZE = 2880 * KB;
+	private static final String[] DIR_NAMES = {
+		"arch", "block", "crypto", "Documentation", "drivers", "fs", "include",
+		"init", "ipc", "kernel", "lib", "mm", "net", "scripts", "security",
+		"sound", "usr", "x86", "usb", "scsi", "video", "media", "input"
+	};
+	private static final String[] FILE_NAMES = {
+		"main", "core", "Makefile", "Kconfig", "README", "setup", "init",
+		"driver", "ioctl", "proc", "sysfs", "debug", "irq", "dma", "util"
+	};
+	private static final String[] EXTENSIONS = {
+		".c", ".c", ".c", ".h", ".h", ".h", ".S", ".txt", ""
+	};
+
+	private final Random random = new Random(2007);
+	private final byte[] block;
+
+	private SyntheticTree() {
+		block = new byte[(int) MB];
+		random.nextBytes(block);
+	}
+
+	/**
+	 * Returns the tree of a perf.txt test case, creating it if necessary
+	 *
+	 * @param base Directory to keep the trees in
+	 * @param name One of MINIMAL, TEST, ELDREAM and LINUX
+	 * @return Root directory of the tree (its contents are to be added)
+	 * @throws IOException Problems creating the tree
+	 */
+	public static File create(File base, String name) throws IOException {
+		File dir = new File(base, name);
+		File complete = new File(base, name + ".complete");
+		if (complete.exists()) {
+			return dir;
+		}
+
+		delete(dir);
+		SyntheticTree tree = new SyntheticTree();
+		if (name.equals(MINIMAL)) {
+			tree.createFile(new File(dir, "dummy"), 0);
+		} else
+		if (name.equals(TEST)) {
+			tree.createTest(dir);
+		} else
+		if (name.equals(ELDREAM)) {
+			tree.createFile(new File(dir, "ED_1024.avi"), 425 * MB);
+		} else
+		if (name.equals(LINUX)) {
+			tree.createLinux(dir);
+		} else {
+			throw new IllegalArgumentException("Unknown tree: " + name);
+		}
+
+		complete.createNewFile();
+		return dir;
+	}
+
+	/**
+	 * Returns a 2.88 MB diskette boot image, creating it if necessary
+	 *
+	 * @param base Directory to keep the image in
+	 * @return Boot image
+	 * @throws IOException Problems creating the image
+	 */
+	public static File createBootImage(File base) throws IOException {
+		File image = new File(base, "boot.img");
+		if (image.length()!=BOOT_IMAGE_SIZE) {
+			new SyntheticTree().createFile(image, BOOT_IMAGE_SIZE);
+		}
+		return image;
+	}
+
+	private void createTest(File dir) throws IOException {
+		List<File> dirs = new ArrayList<File>();
+		dirs.add(dir);
+
+		// 14 directories of a small project
+		String[] paths = {
+			"doc", "doc/html", "doc/img", "src", "src/main", "src/main/java",
+			"src/main/resources", "src/test", "src/test/java", "lib", "bin",
+			"conf", "conf/examples", "data"
+		};
+		for (int i = 0; i < paths.length; i++) {
+			dirs.add(new File(dir, paths[i]));
+		}
+
+		// 9 nested directories, the two deepest are relocated
+		File deep = new File(dir, "deep");
+		dirs.add(deep);
+		for (int level = 3; level <= 8; level++) {
+			deep = new File(deep, "level" + level);
+			dirs.add(deep);
+		}
+		dirs.add(new File(deep, "moved1"));
+		dirs.add(new File(deep, "moved2"));
+
+		createDirectories(dirs);
+		createFiles(dirs, 32, 416 * KB);
+	}
+
+	private void createLinux(File dir) throws IOException {
+		List<File> dirs = new ArrayList<File>();
+		List<Integer> levels = new ArrayList<Integer>();
+		dirs.add(dir);
+		levels.add(1);
+
+		// 1263 directories, not deep enough to be relocated
+		for (int i = 0; i < 1263; i++) {
+			int parent;
+			do {
+				parent = random.nextInt(dirs.size());
+			} while (levels.get(parent) >= 7);
+			String name = i < DIR_NAMES.length ? DIR_NAMES[i] : DIR_NAMES[random.nextInt(DIR_NAMES.length)] + "-" + i;
+			dirs.add(new File(dirs.get(parent), name));
+			levels.add(levels.get(parent) + 1);
+		}
+
+		createDirectories(dirs);
+		createFiles(dirs, 21261, 478 * MB);
+	}
+
+	private void createDirectories(List<File> dirs) throws IOException {
+		for (int i = 0; i < dirs.size(); i++) {
+			File dir = dirs.get(i);
+			if (!dir.isDirectory() && !dir.mkdirs()) {
+				throw new IOException("Cannot create directory: " + dir);
+			}
+		}
+	}
+
+	private void createFiles(List<File> dirs, int count, long total) throws IOException {
+		long mean = total / count;
+		long left = total;
+		for (int i = 0; i < count; i++) {
+			File dir = dirs.get(i < dirs.size() ? i : random.nextInt(dirs.size()));
+			String name = FILE_NAMES[random.nextInt(FILE_NAMES.length)] + "_" + i + EXTENSIONS[random.nextInt(EXTENSIONS.length)];
+
+			// Many small and few large files, the last one takes the rest
+			double r = random.nextDouble();
+			long size = i==count-1 ? left : Math.min(left, (long) (3 * mean * r * r));
+			createFile(new File(dir, name), size);
+			left -= size;
+		}
+	}
+
+	private void createFile(File file, long size) throws IOException {
+		file.getParentFile().mkdirs();
+		OutputStream out = new FileOutputStream(file);
+		try {
+			int offset = random.nextInt(block.length);
+			while (size > 0) {
+				int length = (int) Math.min(size, block.length - offset);
+				out.write(block, offset, length);
+				size -= length;
+				offset = 0;
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void delete(File file) throws IOException {
+		File[] children = file.listFiles();
+		if (children!=null) {
+			for (int i = 0; i < children.length; i++) {
+				delete(children[i]);
+			}
+		}
+		if (file.exists() && !file.delete()) {
+			throw new IOException("Cannot delete: " + file);
+		}
+	}
+}
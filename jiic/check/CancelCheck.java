@@ -0,0 +1,170 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.BuildProgress;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ProgressListener;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.CreateISO;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
+
+/**
+ * Checks that a build cancelled while writing the file contents stops all
+ * of its threads and releases the image file, and that building the same
+ * image again afterwards gives the regular result.<br>
+ * Usage: CancelCheck [work directory]
+ */
+public class CancelCheck {
+	private static File dir, tree;
+	private static byte[] expected;
+
+	/**
+	 * Cancels the build as soon as the first file has been written
+	 */
+	private static class Canceller implements ProgressListener {
+		private CreateISO iso;
+
+		Canceller(CreateISO iso) {
+			this.iso = iso;
+		}
+
+		public void progress(BuildProgress progress) {
+			if (progress.getFilesDone() > 0) {
+				iso.cancel();
+			}
+		}
+	}
+
+	/**
+	 * Keeps the last report, no more files or bytes may be done than in total
+	 */
+	private static class LastProgress implements ProgressListener {
+		private String name;
+		private BuildProgress last = null;
+
+		LastProgress(String name) {
+			this.name = name;
+		}
+
+		public synchronized void progress(BuildProgress progress) {
+			ImageCheck.assertTrue(name + ": more done than in total: " + progress,
+					progress.getFilesDone() <= progress.getFilesTotal() && progress.getBytesDone() <= progress.getBytesTotal());
+			last = progress;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		dir = new File(args[0]);
+		tree = ImageCheck.createTree(new File(dir, "tree"));
+		// Enough files that writing them takes much longer than a progress interval
+		File bulk = new File(tree, "bulk");
+		bulk.mkdir();
+		for (int i = 0; i < 300; i++) {
+			ImageCheck.write(new File(bulk, "file" + i), 32768 + i);
+		}
+		expected = ImageCheck.build(new File(dir, "file.iso"), tree);
+
+		ImageCheck.Output[] outputs = {ImageCheck.FILE, ImageCheck.PARALLEL, ImageCheck.PIPELINED, ImageCheck.MAPPED};
+		File image = new File(dir, "cancelled.iso");
+		for (int i = 0; i < outputs.length; i++) {
+			check(outputs[i], image);
+			checkRebuild(outputs[i], image);
+		}
+	}
+
+	private static void check(ImageCheck.Output output, File image) throws Exception {
+		String name = output.getName();
+		CreateISO iso = ImageCheck.createISO(output.create(image), tree);
+		iso.setProgressInterval(1);
+		iso.addProgressListener(new Canceller(iso));
+		try {
+			iso.process(ImageCheck.iso9660Config(), ImageCheck.rockRidgeConfig(), ImageCheck.jolietConfig(), null);
+			throw new AssertionError(name + ": build was not cancelled");
+		} catch (HandlerException e) {
+			ImageCheck.assertTrue(name + ": failed instead of cancelled: " + e, "Build cancelled".equals(e.getMessage()));
+		}
+
+		waitForThreads(name);
+		int descriptors = openDescriptors(image);
+		ImageCheck.assertTrue(name + ": image still open " + descriptors + " times", descriptors <= 0);
+		ImageCheck.assertTrue(name + ": cannot delete cancelled image", image.delete());
+		System.out.println(name + ": cancelled, " + (descriptors < 0 ? "threads" : "threads and image") + " released");
+	}
+
+	private static void checkRebuild(ImageCheck.Output output, File image) throws Exception {
+		String name = output.getName();
+		// A request made before the build is discarded
+		CreateISO iso = ImageCheck.createISO(output.create(image), tree);
+		iso.cancel();
+		LastProgress progress = new LastProgress(name);
+		iso.setProgressInterval(1);
+		iso.addProgressListener(progress);
+		iso.process(ImageCheck.iso9660Config(), ImageCheck.rockRidgeConfig(), ImageCheck.jolietConfig(), null);
+		ImageCheck.assertSameImage(name + " after cancelling", expected, Files.readAllBytes(image.toPath()));
+		// The final report is made once all contents have been written
+		ImageCheck.assertTrue(name + ": incomplete final report: " + progress.last, progress.last.isComplete());
+	}
+
+	private static void waitForThreads(String name) throws InterruptedException {
+		for (int i = 0; i < 100; i++) {
+			String thread = findThread();
+			if (thread == null) {
+				return;
+			}
+			if (i == 99) {
+				throw new AssertionError(name + ": thread still running: " + thread);
+			}
+			Thread.sleep(10);
+		}
+	}
+
+	private static String findThread() {
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.isAlive() && thread.getName().startsWith("ISO ")) {
+				return thread.getName();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns how often this process has a file open, -1 if unknown
+	 */
+	private static int openDescriptors(File file) throws IOException {
+		File[] descriptors = new File("/proc/self/fd").listFiles();
+		if (descriptors == null) {
+			return -1;
+		}
+		int count = 0;
+		String path = file.getCanonicalPath();
+		for (int i = 0; i < descriptors.length; i++) {
+			try {
+				if (descriptors[i].getCanonicalPath().equals(path)) {
+					count++;
+				}
+			} catch (IOException e) {
+				// Closed in the meantime
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,124 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+import java.io.File;
+import java.nio.file.Files;
+
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.CompactHierarchy;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660RootDirectory;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.ISO9660Config;
+import de.tu_darmstadt.informatik.rbg.hatlak.joliet.impl.JolietConfig;
+
+/**
+ * Checks that an image built from a CompactHierarchy matches the image
+ * built from the object hierarchy of the same tree, also with metadata
+ * files and shared contents, and that entries added by name are read from
+ * the source directory of their parent.<br>
+ * Usage: CompactCheck [work directory]
+ */
+public class CompactCheck {
+	private static File dir, tree;
+
+	public static void main(String[] args) throws Exception {
+		dir = new File(args[0]);
+		tree = ImageCheck.createTree(new File(dir, "tree"));
+
+		checkImage();
+		checkSharedContents();
+		checkAddedByName();
+	}
+
+	private static void checkImage() throws Exception {
+		byte[] expected = ImageCheck.build(new File(dir, "expected.iso"), tree);
+		CompactHierarchy hierarchy = new CompactHierarchy();
+		hierarchy.addContentsRecursively(CompactHierarchy.ROOT, tree);
+		ImageCheck.assertSameImage("CompactHierarchy", expected, build("compact.iso", hierarchy));
+	}
+
+	private static void checkSharedContents() throws Exception {
+		File copy = new File(tree, "directory_with_long_name_3/copy_of_large.bin");
+		Files.copy(new File(tree, "large.bin").toPath(), copy.toPath());
+		File abstractFile = new File(dir, "abstract.txt");
+		ImageCheck.write(abstractFile, 100);
+
+		ISO9660RootDirectory root = new ISO9660RootDirectory();
+		root.addContentsRecursively(tree);
+		byte[] expected = ImageCheck.FILE.build(new File(dir, "expected_shared.iso"), root,
+				sharingConfig(abstractFile), jolietConfig(abstractFile));
+		CompactHierarchy hierarchy = new CompactHierarchy();
+		hierarchy.addContentsRecursively(CompactHierarchy.ROOT, tree);
+		byte[] compact = ImageCheck.FILE.build(new File(dir, "compact_shared.iso"), hierarchy.createRoot(),
+				sharingConfig(abstractFile), jolietConfig(abstractFile));
+		ImageCheck.assertSameImage("CompactHierarchy, metadata file and deduplication", expected, compact);
+		copy.delete();
+	}
+
+	private static ISO9660Config sharingConfig(File abstractFile) throws Exception {
+		ISO9660Config iso9660Config = ImageCheck.iso9660Config();
+		iso9660Config.deduplicateContents(true);
+		iso9660Config.setAbstractFile(abstractFile);
+		return iso9660Config;
+	}
+
+	private static JolietConfig jolietConfig(File abstractFile) throws Exception {
+		// Added to the root by the Joliet handler, which comes first
+		JolietConfig jolietConfig = ImageCheck.jolietConfig();
+		jolietConfig.setAbstractFile(abstractFile);
+		return jolietConfig;
+	}
+
+	private static void checkAddedByName() throws Exception {
+		CompactHierarchy hierarchy = new CompactHierarchy();
+		hierarchy.addContentsRecursively(CompactHierarchy.ROOT, tree);
+		int parent = find(hierarchy, "directory_with_long_name_3");
+
+		File file = new File(tree, "directory_with_long_name_3/added_by_name.txt");
+		ImageCheck.write(file, 5000);
+		int entry = hierarchy.addFile(parent, file.getName(), file.length(), file.lastModified(), 0);
+		ImageCheck.assertTrue("Source of an entry added by name: " + hierarchy.getFile(entry),
+				hierarchy.getFile(entry).equals(file.getAbsoluteFile()));
+
+		// Below a directory added by name
+		File subdir = new File(tree, "directory_with_long_name_3/added_directory");
+		subdir.mkdir();
+		file = new File(subdir, "nested.txt");
+		ImageCheck.write(file, 3000);
+		parent = hierarchy.addDirectory(parent, subdir.getName(), subdir.lastModified(), 0);
+		entry = hierarchy.addFile(parent, file.getName(), file.length(), file.lastModified(), 0);
+		ImageCheck.assertTrue("Source of a nested entry added by name: " + hierarchy.getFile(entry),
+				hierarchy.getFile(entry).equals(file.getAbsoluteFile()));
+
+		ImageCheck.assertContents("Entries added by name", build("byname.iso", hierarchy), tree);
+		System.out.println("Entries added by name: read from the source directory");
+	}
+
+	private static int find(CompactHierarchy hierarchy, String name) {
+		for (int i = 0; i < hierarchy.size(); i++) {
+			if (hierarchy.getParent(i) == CompactHierarchy.ROOT && hierarchy.getName(i).equals(name)) {
+				return i;
+			}
+		}
+		throw new AssertionError("Entry not found: " + name);
+	}
+
+	private static byte[] build(String name, CompactHierarchy hierarchy) throws Exception {
+		return ImageCheck.FILE.build(new File(dir, name), hierarchy.createRoot(), ImageCheck.iso9660Config(), ImageCheck.jolietConfig());
+	}
+}
@@ -0,0 +1,504 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ConfigException;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660RootDirectory;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.CreateISO;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.ISO9660Config;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.ISOImageChannelHandler;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.ISOImageFileHandler;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.ISOImageMappedHandler;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.ISOImageStreamHandler;
+import de.tu_darmstadt.informatik.rbg.hatlak.joliet.impl.JolietConfig;
+import de.tu_darmstadt.informatik.rbg.hatlak.rockridge.impl.RockRidgeConfig;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.StreamHandler;
+
+/**
+ * Helpers for the checks that build small images in different modes and
+ * compare them with the output of ISOImageFileHandler. The output modes
+ * are shared as Output constants, so each check only lists the modes it
+ * compares. Images are compared
+ * without the build time (recording dates, volume descriptor dates and
+ * Rock Ridge time stamps), which differs between two builds.<br>
+ * Run on its own, it checks that two builds of the same tree match.<br>
+ * Usage: ImageCheck [work directory]
+ */
+public class ImageCheck {
+	private static final int SECTOR = 2048;
+
+	/**
+	 * Directory record of the primary hierarchy
+	 */
+	static class Record {
+		String path;
+		int location, length;
+		int links = -1;
+	}
+
+	/**
+	 * Output mode: creates the output handler writing an image file and
+	 * builds the image with it
+	 */
+	static abstract class Output {
+		private String name;
+
+		Output(String name) {
+			this.name = name;
+		}
+
+		String getName() {
+			return name;
+		}
+
+		/**
+		 * Creates the output handler
+		 * 
+		 * @param image Image file
+		 * @return Output handler
+		 * @throws IOException Problems opening the image file
+		 */
+		abstract StreamHandler create(File image) throws IOException;
+
+		/**
+		 * Builds an image of a tree with ISO 9660, Rock Ridge and Joliet
+		 * 
+		 * @param image Image file
+		 * @param tree Directory to add
+		 * @param iso9660Config ISO 9660 configuration
+		 * @param jolietConfig Joliet configuration
+		 * @return Image contents
+		 * @throws Exception Problems building the image
+		 */
+		byte[] build(File image, File tree, ISO9660Config iso9660Config, JolietConfig jolietConfig) throws Exception {
+			ISO9660RootDirectory root = new ISO9660RootDirectory();
+			root.addContentsRecursively(tree);
+			return build(image, root, iso9660Config, jolietConfig);
+		}
+
+		/**
+		 * Builds an image of a hierarchy with ISO 9660, Rock Ridge and Joliet
+		 * 
+		 * @param image Image file
+		 * @param root Root of the hierarchy
+		 * @param iso9660Config ISO 9660 configuration
+		 * @param jolietConfig Joliet configuration
+		 * @return Image contents
+		 * @throws Exception Problems building the image
+		 */
+		byte[] build(File image, ISO9660RootDirectory root, ISO9660Config iso9660Config, JolietConfig jolietConfig) throws Exception {
+			process(new CreateISO(create(image), root), iso9660Config, jolietConfig);
+			return Files.readAllBytes(image.toPath());
+		}
+
+		void process(CreateISO iso, ISO9660Config iso9660Config, JolietConfig jolietConfig) throws HandlerException {
+			iso.process(iso9660Config, rockRidgeConfig(), jolietConfig, null);
+		}
+	}
+
+	static final Output FILE = new Output("ISOImageFileHandler") {
+		StreamHandler create(File image) throws IOException {
+			return new ISOImageFileHandler(image);
+		}
+	};
+
+	static final Output CHANNEL = new Output("ISOImageChannelHandler") {
+		StreamHandler create(File image) throws IOException {
+			return new ISOImageChannelHandler(image);
+		}
+	};
+
+	static final Output PARALLEL = parallel("Parallel contents", 0);
+
+	static final Output PIPELINED = new Output("Pipelined ISOImageFileHandler") {
+		StreamHandler create(File image) throws IOException {
+			ISOImageFileHandler streamHandler = new ISOImageFileHandler(image);
+			streamHandler.setWriteBuffers(2);
+			return streamHandler;
+		}
+	};
+
+	static final Output MAPPED = new Output("ISOImageMappedHandler") {
+		StreamHandler create(File image) throws IOException {
+			return new ISOImageMappedHandler(image);
+		}
+	};
+
+	static final Output BUFFERED = new Output("Buffered") {
+		StreamHandler create(File image) throws IOException {
+			return new ISOImageFileHandler(image);
+		}
+
+		void process(CreateISO iso, ISO9660Config iso9660Config, JolietConfig jolietConfig) throws HandlerException {
+			iso.processBuffered(iso9660Config, rockRidgeConfig(), jolietConfig, null);
+		}
+	};
+
+	static final Output STREAM = new Output("ISOImageStreamHandler") {
+		StreamHandler create(File image) throws IOException {
+			final OutputStream out = new FileOutputStream(image);
+			return new ISOImageStreamHandler(out) {
+				public void endDocument() throws HandlerException {
+					super.endDocument();
+					try {
+						out.close();
+					} catch (IOException e) {
+						throw new HandlerException(e);
+					}
+				}
+			};
+		}
+
+		void process(CreateISO iso, ISO9660Config iso9660Config, JolietConfig jolietConfig) throws HandlerException {
+			iso.processBuffered(iso9660Config, rockRidgeConfig(), jolietConfig, null);
+		}
+	};
+
+	/**
+	 * Output mode copying the file contents with 4 threads
+	 * 
+	 * @param name Name of the check
+	 * @param contentBudget Bytes of contents copied at a time, 0 for the default
+	 * @return Output mode
+	 */
+	static Output parallel(String name, final long contentBudget) {
+		return new Output(name) {
+			StreamHandler create(File image) throws IOException {
+				ISOImageChannelHandler streamHandler = new ISOImageChannelHandler(image);
+				streamHandler.setContentThreads(4);
+				if (contentBudget > 0) {
+					streamHandler.setContentBudget(contentBudget);
+				}
+				return streamHandler;
+			}
+		};
+	}
+
+	public static void main(String[] args) throws Exception {
+		File dir = new File(args[0]);
+		File tree = createTree(new File(dir, "tree"));
+
+		byte[] first = build(new File(dir, "first.iso"), tree);
+		byte[] second = build(new File(dir, "second.iso"), tree);
+		assertSameImage("Repeated build", first, second);
+	}
+
+	/**
+	 * Creates a tree of files and directories that exercises renaming,
+	 * directory relocation and files that do not fill their last sector
+	 * 
+	 * @param dir Directory to create
+	 * @return Directory
+	 * @throws IOException Problems writing the files
+	 */
+	static File createTree(File dir) throws IOException {
+		dir.mkdirs();
+		write(new File(dir, "empty"), 0);
+		write(new File(dir, "one.txt"), 1);
+		write(new File(dir, "sector.bin"), SECTOR);
+		write(new File(dir, "sector_and_one.bin"), SECTOR + 1);
+		write(new File(dir, "large.bin"), 70000);
+		for (int i = 0; i < 20; i++) {
+			write(new File(dir, "long_file_name_" + i + ".txt"), 100 + i);
+		}
+		for (int i = 0; i < 10; i++) {
+			File sub = new File(dir, "directory_with_long_name_" + i);
+			sub.mkdir();
+			for (int j = 0; j < 10; j++) {
+				write(new File(sub, "file_" + j + ".data"), i * 1000 + j);
+			}
+		}
+		File deep = new File(dir, "a/b/c/d/e/f/g/h/i/j");
+		deep.mkdirs();
+		write(new File(deep, "deep.txt"), 10);
+		return dir;
+	}
+
+	/**
+	 * Writes a file with pseudo-random contents determined by its name
+	 * 
+	 * @param file File
+	 * @param length Length
+	 * @throws IOException Problems writing the file
+	 */
+	static void write(File file, int length) throws IOException {
+		byte[] data = new byte[length];
+		new Random(file.getName().hashCode()).nextBytes(data);
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(data);
+		} finally {
+			out.close();
+		}
+	}
+
+	static ISO9660Config iso9660Config() throws ConfigException {
+		ISO9660Config iso9660Config = new ISO9660Config();
+		iso9660Config.setVolumeID("Check");
+		iso9660Config.setPublisher("JIIC");
+		return iso9660Config;
+	}
+
+	static RockRidgeConfig rockRidgeConfig() {
+		RockRidgeConfig rrConfig = new RockRidgeConfig();
+		rrConfig.setMkisofsCompatibility(false);
+		rrConfig.hideMovedDirectoriesStore(true);
+		return rrConfig;
+	}
+
+	static JolietConfig jolietConfig() throws ConfigException {
+		JolietConfig jolietConfig = new JolietConfig();
+		jolietConfig.setVolumeID("Check");
+		jolietConfig.setPublisher("JIIC");
+		return jolietConfig;
+	}
+
+	/**
+	 * Creates a build of a tree
+	 * 
+	 * @param streamHandler Output handler
+	 * @param tree Directory to add
+	 * @return Build
+	 * @throws Exception Problems adding the tree
+	 */
+	static CreateISO createISO(StreamHandler streamHandler, File tree) throws Exception {
+		ISO9660RootDirectory root = new ISO9660RootDirectory();
+		root.addContentsRecursively(tree);
+		return new CreateISO(streamHandler, root);
+	}
+
+	/**
+	 * Builds the reference image of a tree with ISOImageFileHandler
+	 * 
+	 * @param image Image file
+	 * @param tree Directory to add
+	 * @return Image contents
+	 * @throws Exception Problems building the image
+	 */
+	static byte[] build(File image, File tree) throws Exception {
+		return FILE.build(image, tree, iso9660Config(), jolietConfig());
+	}
+
+	/**
+	 * Builds a tree in several output modes and compares each image with
+	 * the expected one
+	 * 
+	 * @param dir Work directory
+	 * @param tree Directory to add
+	 * @param expected Expected image
+	 * @param outputs Output modes
+	 * @throws Exception Problems building an image or images differ
+	 */
+	static void assertSameImages(File dir, File tree, byte[] expected, Output... outputs) throws Exception {
+		for (int i = 0; i < outputs.length; i++) {
+			File image = new File(dir, "output" + i + ".iso");
+			assertSameImage(outputs[i].getName(), expected, outputs[i].build(image, tree, iso9660Config(), jolietConfig()));
+		}
+	}
+
+	/**
+	 * Compares two images without their build time
+	 * 
+	 * @param name Name of the check
+	 * @param expected Expected image
+	 * @param actual Actual image
+	 */
+	static void assertSameImage(String name, byte[] expected, byte[] actual) {
+		expected = normalize(expected);
+		actual = normalize(actual);
+		if (expected.length != actual.length) {
+			throw new AssertionError(name + ": image length " + actual.length + " instead of " + expected.length);
+		}
+		for (int i = 0; i < expected.length; i++) {
+			if (expected[i] != actual[i]) {
+				throw new AssertionError(name + ": images differ at offset " + i + " (sector " + i / SECTOR + ")");
+			}
+		}
+		System.out.println(name + ": identical");
+	}
+
+	/**
+	 * Compares the extents of all files in the primary hierarchy with the
+	 * source files at the same path in a tree
+	 * 
+	 * @param name Name of the check
+	 * @param image Image
+	 * @param tree Directory the image was built from
+	 * @throws IOException Problems reading a source file
+	 */
+	static void assertContents(String name, byte[] image, File tree) throws IOException {
+		int files = 0;
+		for (Record record : records(image).values()) {
+			File source = new File(tree, record.path);
+			if (!source.isFile()) {
+				// Directory or relocated
+				continue;
+			}
+			byte[] contents = Files.readAllBytes(source.toPath());
+			int start = record.location * SECTOR;
+			assertTrue(name + ": wrong length of " + record.path, record.length == contents.length);
+			assertTrue(name + ": wrong contents of " + record.path,
+					Arrays.equals(contents, Arrays.copyOfRange(image, start, start + contents.length)));
+			files++;
+		}
+		assertTrue(name + ": no files found", files > 0);
+	}
+
+	static void assertTrue(String message, boolean condition) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+	/**
+	 * Returns a copy of an image with all times that depend on the build
+	 * time set to zero
+	 * 
+	 * @param image Image
+	 * @return Normalized copy
+	 */
+	static byte[] normalize(byte[] image) {
+		byte[] copy = image.clone();
+		walkVolumes(copy, null);
+		return copy;
+	}
+
+	/**
+	 * Returns the directory records of the primary hierarchy by path,
+	 * using the Rock Ridge names if there are any
+	 * 
+	 * @param image Image
+	 * @return Records
+	 */
+	static Map<String, Record> records(byte[] image) {
+		Map<String, Record> records = new TreeMap<String, Record>();
+		walkVolumes(image.clone(), records);
+		return records;
+	}
+
+	private static void walkVolumes(byte[] image, Map<String, Record> records) {
+		for (int sector = 16; (sector + 1) * SECTOR <= image.length; sector++) {
+			int start = sector * SECTOR;
+			int type = image[start] & 0xFF;
+			if (type == 255) {
+				break;
+			}
+			if (type == 1 || type == 2) {
+				// Volume creation, modification, expiration and effective dates
+				Arrays.fill(image, start + 813, start + 881, (byte) 0);
+				int root = start + 156;
+				clearRecordingDate(image, root);
+				walk(image, readInt(image, root + 2), readInt(image, root + 10), "",
+						type == 1 ? records : null, new HashSet<Integer>());
+			}
+		}
+	}
+
+	private static void walk(byte[] image, int location, int length, String path, Map<String, Record> records, Set<Integer> visited) {
+		if (!visited.add(location)) {
+			return;
+		}
+		int offset = location * SECTOR, end = offset + length;
+		while (offset < end) {
+			int recordLength = image[offset] & 0xFF;
+			if (recordLength == 0) {
+				// Records do not cross sector boundaries
+				offset = (offset / SECTOR + 1) * SECTOR;
+				continue;
+			}
+			clearRecordingDate(image, offset);
+
+			int nameLength = image[offset + 32] & 0xFF;
+			boolean self = nameLength == 1 && (image[offset + 33] == 0 || image[offset + 33] == 1);
+			Record record = new Record();
+			record.location = readInt(image, offset + 2);
+			record.length = readInt(image, offset + 10);
+			String name = new String(image, offset + 33, nameLength, StandardCharsets.ISO_8859_1);
+			int versionIndex = name.indexOf(';');
+			if (versionIndex >= 0) {
+				name = name.substring(0, versionIndex);
+			}
+			int systemUse = offset + 33 + nameLength + (nameLength % 2 == 0 ? 1 : 0);
+			StringBuilder alternateName = new StringBuilder();
+			walkSystemUse(image, systemUse, offset + recordLength, record, alternateName);
+			if (alternateName.length() > 0) {
+				name = alternateName.toString();
+			}
+
+			if (!self) {
+				record.path = path + "/" + name;
+				if (records != null) {
+					records.put(record.path, record);
+				}
+				if ((image[offset + 25] & 2) != 0) {
+					walk(image, record.location, record.length, record.path, records, visited);
+				}
+			}
+			offset += recordLength;
+		}
+	}
+
+	private static void walkSystemUse(byte[] image, int offset, int end, Record record, StringBuilder alternateName) {
+		while (offset + 4 <= end) {
+			String signature = new String(image, offset, 2, StandardCharsets.ISO_8859_1);
+			int length = image[offset + 2] & 0xFF;
+			if (length < 4 || signature.equals("ST")) {
+				break;
+			}
+			if (signature.equals("TF")) {
+				Arrays.fill(image, offset + 5, offset + length, (byte) 0);
+			} else
+			if (signature.equals("PX")) {
+				record.links = readInt(image, offset + 12);
+			} else
+			if (signature.equals("NM")) {
+				alternateName.append(new String(image, offset + 5, length - 5, StandardCharsets.ISO_8859_1));
+			} else
+			if (signature.equals("CE")) {
+				int continuation = readInt(image, offset + 4) * SECTOR + readInt(image, offset + 12);
+				walkSystemUse(image, continuation, continuation + readInt(image, offset + 20), record, alternateName);
+			}
+			offset += length;
+		}
+	}
+
+	private static void clearRecordingDate(byte[] image, int record) {
+		Arrays.fill(image, record + 18, record + 25, (byte) 0);
+	}
+
+	// Little endian half of a both-endian word
+	private static int readInt(byte[] image, int offset) {
+		return (image[offset] & 0xFF) | (image[offset + 1] & 0xFF) << 8
+				| (image[offset + 2] & 0xFF) << 16 | (image[offset + 3] & 0xFF) << 24;
+	}
+}
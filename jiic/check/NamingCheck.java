@@ -0,0 +1,117 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Set;
+
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.FileAttributes;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660Directory;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660File;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660RootDirectory;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.ISO9660Config;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.ISOImageFileHandler;
+import de.tu_darmstadt.informatik.rbg.hatlak.joliet.impl.JolietConfig;
+import de.tu_darmstadt.informatik.rbg.hatlak.rockridge.impl.POSIXFileMode;
+
+/**
+ * Checks that applying the naming conventions in parallel gives the same
+ * names as applying them sequentially, however the directories are
+ * scheduled, and that the names of a directory do not depend on the
+ * directories processed before, and that the namespaces of a hierarchy
+ * are renamed independently.<br>
+ * Usage: NamingCheck [work directory]
+ */
+public class NamingCheck {
+	private static final int RUNS = 5;
+
+	public static void main(String[] args) throws Exception {
+		File dir = new File(args[0]);
+		File tree = ImageCheck.createTree(new File(dir, "tree"));
+		// Many directories of names that only differ after the first characters
+		for (int i = 0; i < 40; i++) {
+			File sub = new File(tree, "conflicting_directory_name_" + i);
+			sub.mkdir();
+			for (int j = 0; j < 40; j++) {
+				String name = j % 2 == 0 ? "conflicting_file_name_" : "Conflicting file name with more than sixty-four characters, number ";
+				ImageCheck.write(new File(sub, name + j + ".txt"), j);
+			}
+		}
+
+		byte[] expected = build(new File(dir, "sequential.iso"), tree, 1);
+		for (int run = 0; run < RUNS; run++) {
+			byte[] actual = build(new File(dir, "parallel.iso"), tree, 4);
+			ImageCheck.assertSameImage("Parallel naming, run " + (run + 1), expected, actual);
+		}
+		checkLevel2Directories(dir);
+		checkNamespaces();
+	}
+
+	private static void checkNamespaces() throws Exception {
+		ISO9660RootDirectory root = new ISO9660RootDirectory();
+		ISO9660Directory sub = root.addDirectory("sub");
+		sub.addFile(new ISO9660File(new File("file.txt"), new FileAttributes(1, 0, false)));
+		ISO9660RootDirectory first = root.createNamespace();
+		ISO9660RootDirectory second = root.createNamespace();
+
+		ISO9660Directory firstSub = first.getDirectories().get(0);
+		ISO9660File firstFile = firstSub.getFiles().get(0);
+		firstFile.setName("RENAMED.TXT");
+		firstFile.setVersion(2);
+		firstFile.setFileMode(new POSIXFileMode(0755));
+		firstSub.setFileMode(new POSIXFileMode(0700));
+
+		ISO9660File secondFile = second.getIndexedFile(firstFile.getIndex());
+		ISO9660File file = sub.getFiles().get(0);
+		ImageCheck.assertTrue("Namespaces: matched by index", secondFile!=null && second.getIndexedDirectory(firstSub.getIndex())==second.getDirectories().get(0));
+		ImageCheck.assertTrue("Namespaces: names " + secondFile.getFullName() + ", " + file.getFullName(),
+				secondFile.getFullName().equals("file.txt;1") && file.getFullName().equals("file.txt;1"));
+		ImageCheck.assertTrue("Namespaces: file modes", secondFile.getFileMode()==null && file.getFileMode()==null
+				&& second.getDirectories().get(0).getFileMode()==null && sub.getFileMode()==null);
+		ImageCheck.assertTrue("Namespaces: renamed " + firstFile.getFullName(), firstSub.getFiles().get(0).getFullName().equals("RENAMED.TXT;2"));
+		System.out.println("Namespaces: names and file modes independent");
+	}
+
+	private static void checkLevel2Directories(File dir) throws Exception {
+		// An 8+3 metadata file processed last in the root used to limit the
+		// following directory names to 8 characters at level 2 as well
+		File tree = new File(dir, "level2");
+		new File(tree, "a/directory_with_a_long_name").mkdirs();
+		File copyright = new File(dir, "zz_copyright.txt");
+		ImageCheck.write(copyright, 10);
+		ISO9660Config iso9660Config = ImageCheck.iso9660Config();
+		iso9660Config.setInterchangeLevel(2);
+		iso9660Config.setCopyrightFile(copyright);
+
+		File image = new File(dir, "level2.iso");
+		ImageCheck.createISO(new ISOImageFileHandler(image), tree).process(iso9660Config, null, null, null);
+		Set<String> paths = ImageCheck.records(Files.readAllBytes(image.toPath())).keySet();
+		ImageCheck.assertTrue("Level 2 directory names: " + paths, paths.contains("/A/DIRECTORY_WITH_A_LONG_NAME"));
+		System.out.println("Level 2 directory names: independent of the preceding file");
+	}
+
+	private static byte[] build(File image, File tree, int namingThreads) throws Exception {
+		ISO9660Config iso9660Config = ImageCheck.iso9660Config();
+		iso9660Config.setNamingThreads(namingThreads);
+		JolietConfig jolietConfig = ImageCheck.jolietConfig();
+		jolietConfig.setNamingThreads(namingThreads);
+		return ImageCheck.FILE.build(image, tree, iso9660Config, jolietConfig);
+	}
+}
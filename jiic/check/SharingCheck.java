@@ -0,0 +1,107 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.ISO9660Config;
+
+/**
+ * Checks that files with shared contents are stored only once and that
+ * all files can still be read back from the image.<br>
+ * Usage: SharingCheck [work directory]
+ */
+public class SharingCheck {
+	private static File dir, tree;
+
+	public static void main(String[] args) throws Exception {
+		dir = new File(args[0]);
+		tree = ImageCheck.createTree(new File(dir, "tree"));
+
+		checkDeduplication();
+		checkHardlinks();
+	}
+
+	private static void checkDeduplication() throws Exception {
+		// Same contents under different names, neither hard links nor same path
+		File copy = new File(tree, "directory_with_long_name_3/copy_of_large.bin");
+		Files.copy(new File(tree, "large.bin").toPath(), copy.toPath());
+
+		byte[] plain = build("plain.iso", ImageCheck.iso9660Config());
+		ISO9660Config iso9660Config = ImageCheck.iso9660Config();
+		iso9660Config.deduplicateContents(true);
+		byte[] deduplicated = build("deduplicated.iso", iso9660Config);
+
+		Map<String, ImageCheck.Record> records = ImageCheck.records(deduplicated);
+		ImageCheck.Record original = records.get("/large.bin");
+		ImageCheck.Record duplicate = records.get("/directory_with_long_name_3/copy_of_large.bin");
+		ImageCheck.assertTrue("Deduplicated copy has its own extent", original.location == duplicate.location);
+		ImageCheck.assertTrue("Deduplicated copy counted as a link", original.links == 1 && duplicate.links == 1);
+		ImageCheck.assertTrue("Deduplicated image is not smaller", plain.length > deduplicated.length);
+		ImageCheck.assertContents("Deduplicated image", deduplicated, tree);
+
+		records = ImageCheck.records(plain);
+		ImageCheck.assertTrue("Copy shares an extent without deduplication",
+				records.get("/large.bin").location != records.get("/directory_with_long_name_3/copy_of_large.bin").location);
+		System.out.println("Deduplication: shared extent");
+	}
+
+	private static void checkHardlinks() throws Exception {
+		File sector = new File(tree, "sector.bin");
+		File link = new File(tree, "directory_with_long_name_5/link_to_sector.bin");
+		// Links outside of the image do not count
+		File outside = new File(dir, "outside_link.bin");
+		try {
+			Files.createLink(link.toPath(), sector.toPath());
+			Files.createLink(outside.toPath(), sector.toPath());
+		} catch (IOException e) {
+			System.out.println("Hard links: skipped, not supported (" + e + ")");
+			return;
+		} catch (UnsupportedOperationException e) {
+			System.out.println("Hard links: skipped, not supported");
+			return;
+		}
+
+		ISO9660Config iso9660Config = ImageCheck.iso9660Config();
+		iso9660Config.detectHardlinks(true);
+		byte[] detected = build("hardlinks.iso", iso9660Config);
+		Map<String, ImageCheck.Record> records = ImageCheck.records(detected);
+		ImageCheck.Record original = records.get("/sector.bin");
+		ImageCheck.Record linked = records.get("/directory_with_long_name_5/link_to_sector.bin");
+		ImageCheck.assertTrue("Hard link has its own extent", original.location == linked.location);
+		ImageCheck.assertTrue("Link count " + original.links + " instead of 2", original.links == 2 && linked.links == 2);
+		ImageCheck.assertTrue("Link count of a file without links", records.get("/one.txt").links == 1);
+		ImageCheck.assertContents("Hard link image", detected, tree);
+
+		records = ImageCheck.records(build("nohardlinks.iso", ImageCheck.iso9660Config()));
+		original = records.get("/sector.bin");
+		linked = records.get("/directory_with_long_name_5/link_to_sector.bin");
+		ImageCheck.assertTrue("Hard link shares an extent without detection", original.location != linked.location);
+		ImageCheck.assertTrue("Link count of separate extents", original.links == 1 && linked.links == 1);
+		System.out.println("Hard links: shared extent, 2 links");
+	}
+
+	private static byte[] build(String name, ISO9660Config iso9660Config) throws Exception {
+		File image = new File(dir, name);
+		return ImageCheck.FILE.build(image, tree, iso9660Config, ImageCheck.jolietConfig());
+	}
+}
@@ -0,0 +1,106 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.ISOImageMappedHandler;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.ISOImageVirtualHandler;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.VirtualISOImage;
+
+/**
+ * Checks that all output handlers write the same image as
+ * ISOImageFileHandler.<br>
+ * Usage: SinkCheck [work directory]
+ */
+public class SinkCheck {
+	private static File dir, tree;
+	private static byte[] expected;
+
+	public static void main(String[] args) throws Exception {
+		dir = new File(args[0]);
+		tree = ImageCheck.createTree(new File(dir, "tree"));
+		expected = ImageCheck.build(new File(dir, "file.iso"), tree);
+
+		ImageCheck.assertSameImages(dir, tree, expected, ImageCheck.CHANNEL, ImageCheck.BUFFERED,
+				ImageCheck.STREAM, ImageCheck.PARALLEL,
+				// Less than the largest file, so copies have to wait for each other
+				ImageCheck.parallel("Parallel contents, small budget", 65536),
+				ImageCheck.PIPELINED, ImageCheck.MAPPED);
+		checkVirtual();
+		checkMappings();
+	}
+
+	private static void checkVirtual() throws Exception {
+		ISOImageVirtualHandler streamHandler = new ISOImageVirtualHandler();
+		ImageCheck.createISO(streamHandler, tree).process(
+				ImageCheck.iso9660Config(), ImageCheck.rockRidgeConfig(), ImageCheck.jolietConfig(), null);
+		VirtualISOImage channel = streamHandler.getImage();
+		try {
+			ImageCheck.assertTrue("Virtual image size", channel.size() == expected.length);
+			byte[] actual = new byte[(int) channel.size()];
+			// Read backwards in chunks that do not match sectors or segments
+			int chunk = 3000;
+			for (int end = actual.length; end > 0; end -= chunk) {
+				int start = Math.max(0, end - chunk);
+				ByteBuffer buffer = ByteBuffer.wrap(actual, start, end - start);
+				channel.position(start);
+				while (buffer.hasRemaining()) {
+					ImageCheck.assertTrue("Virtual image ends early", channel.read(buffer) > 0);
+				}
+			}
+			channel.position(actual.length);
+			ImageCheck.assertTrue("Read beyond the end of the virtual image", channel.read(ByteBuffer.allocate(1)) == -1);
+			ImageCheck.assertSameImage("ISOImageVirtualHandler", expected, actual);
+
+			// Sequential reads return the same
+			byte[] sequential = new byte[actual.length];
+			channel.position(0);
+			ByteBuffer buffer = ByteBuffer.wrap(sequential);
+			while (channel.read(buffer) > 0) {
+			}
+			ImageCheck.assertTrue("Sequential and positional reads differ", Arrays.equals(actual, sequential));
+		} finally {
+			channel.close();
+		}
+	}
+
+	private static void checkMappings() throws Exception {
+		// Metadata of several mappings, with fixups across their boundaries
+		File largeTree = new File(dir, "large_tree");
+		for (int i = 0; i < 30; i++) {
+			File sub = new File(largeTree, "directory_" + i);
+			sub.mkdirs();
+			for (int j = 0; j < 300; j++) {
+				ImageCheck.write(new File(sub, "file_with_a_long_name_" + j), j % 3);
+			}
+		}
+		byte[] largeExpected = ImageCheck.build(new File(dir, "large.iso"), largeTree);
+		File image = new File(dir, "large_mapped.iso");
+		ISOImageMappedHandler streamHandler = new ISOImageMappedHandler(image);
+		ImageCheck.createISO(streamHandler, largeTree).process(
+				ImageCheck.iso9660Config(), ImageCheck.rockRidgeConfig(), ImageCheck.jolietConfig(), null);
+		byte[] actual = Files.readAllBytes(image.toPath());
+		ImageCheck.assertTrue("Metadata fits into one mapping", streamHandler.getMapCount() > 1);
+		ImageCheck.assertSameImage("ISOImageMappedHandler, " + streamHandler.getMapCount() + " mappings", largeExpected, actual);
+	}
+}
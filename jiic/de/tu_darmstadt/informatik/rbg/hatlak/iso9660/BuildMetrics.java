@@ -0,0 +1,80 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package de.tu_darmstadt.informatik.rbg.hatlak.iso9660;
+
+/**
+ * Listener for the measurements taken while an image is built (see
+ * CreateISO.addBuildMetrics(BuildMetrics)). Times are in nanoseconds, CPU
+ * times are those of the building thread (-1 if not supported), i.e.
+ * without naming or content copying threads.
+ */
+public interface BuildMetrics {
+	/**
+	 * A phase of the build starts
+	 * 
+	 * @param phase Phase: "Scan" (adding files, reported by ISOTask),
+	 * "Setup" (handler chain, relocation and naming conventions), the
+	 * ISO9660Element IDs SA, VDS, BIA, PTA, DRA, BDA and FCA, or "End"
+	 * (remaining Fixups, closing the image)
+	 */
+	public void startPhase(String phase);
+
+	/**
+	 * A phase of the build has ended
+	 * 
+	 * @param phase Phase (see startPhase(String))
+	 * @param wallTime Elapsed time
+	 * @param cpuTime CPU time of the building thread, -1 if not supported
+	 */
+	public void endPhase(String phase, long wallTime, long cpuTime);
+
+	/**
+	 * Data passed into a handler of the chain during the build
+	 * 
+	 * @param handler Handler: "ISO 9660", "El Torito", "Joliet" or
+	 * "Output" (sector padding in front of the output handler)
+	 * @param dataCalls Number of data() calls
+	 * @param bytes Number of bytes passed by data() calls
+	 * @param fixups Number of fixup() calls
+	 * @param fixupWrites Number of data() calls on Fixups
+	 */
+	public void handler(String handler, long dataCalls, long bytes, long fixups, long fixupWrites);
+
+	/**
+	 * The output handler has written the image (only reported by output
+	 * handlers that count their seeks, see impl.MeteredOutput)
+	 * 
+	 * @param output Class name of the output handler
+	 * @param seeks Number of positional writes needed to patch data
+	 * already written
+	 * @param stalls Number of times the building thread waited for the
+	 * threads writing the image
+	 * @param stallTime Time the building thread waited
+	 */
+	public void output(String output, long seeks, long stalls, long stallTime);
+
+	/**
+	 * Naming conventions have been applied to a namespace
+	 * 
+	 * @param namespace ID of the naming conventions, e.g. "Joliet"
+	 * @param renames Number of files and directories renamed
+	 */
+	public void renames(String namespace, int renames);
+}
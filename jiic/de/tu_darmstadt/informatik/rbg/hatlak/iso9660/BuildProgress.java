@@ -0,0 +1,123 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package de.tu_darmstadt.informatik.rbg.hatlak.iso9660;
+
+/**
+ * State of a build as reported to ProgressListeners. Files and bytes are
+ * those of the file contents: files sharing their contents with another
+ * file count only once, the metadata of the image is not included.
+ */
+public class BuildProgress {
+	private long filesDone, filesTotal, bytesDone, bytesTotal;
+	private long throughput, remainingTime;
+
+	/**
+	 * Create progress
+	 * 
+	 * @param filesDone Number of files written
+	 * @param filesTotal Number of files to be written
+	 * @param bytesDone Number of bytes written
+	 * @param bytesTotal Number of bytes to be written
+	 * @param throughput Current throughput in bytes per second
+	 * @param remainingTime Estimated time left in milliseconds, -1 if unknown
+	 */
+	public BuildProgress(long filesDone, long filesTotal, long bytesDone, long bytesTotal, long throughput, long remainingTime) {
+		this.filesDone = filesDone;
+		this.filesTotal = filesTotal;
+		this.bytesDone = bytesDone;
+		this.bytesTotal = bytesTotal;
+		this.throughput = throughput;
+		this.remainingTime = remainingTime;
+	}
+
+	/**
+	 * Returns the number of files whose contents have been written
+	 * 
+	 * @return Files done
+	 */
+	public long getFilesDone() {
+		return filesDone;
+	}
+
+	/**
+	 * Returns the number of files whose contents are written in total
+	 * 
+	 * @return Files total
+	 */
+	public long getFilesTotal() {
+		return filesTotal;
+	}
+
+	/**
+	 * Returns the number of content bytes written
+	 * 
+	 * @return Bytes done
+	 */
+	public long getBytesDone() {
+		return bytesDone;
+	}
+
+	/**
+	 * Returns the number of content bytes written in total
+	 * 
+	 * @return Bytes total
+	 */
+	public long getBytesTotal() {
+		return bytesTotal;
+	}
+
+	/**
+	 * Returns the throughput over the last progress intervals
+	 * 
+	 * @return Bytes per second
+	 */
+	public long getThroughput() {
+		return throughput;
+	}
+
+	/**
+	 * Returns the estimated time until all contents have been written
+	 * 
+	 * @return Milliseconds, -1 if unknown
+	 */
+	public long getRemainingTime() {
+		return remainingTime;
+	}
+
+	/**
+	 * Returns whether all contents have been written
+	 * 
+	 * @return Whether the build is complete
+	 */
+	public boolean isComplete() {
+		return filesDone==filesTotal && bytesDone==bytesTotal;
+	}
+
+	@Override
+	public String toString() {
+		String result = filesDone + "/" + filesTotal + " files, "
+			+ (bytesDone >> 20) + "/" + (bytesTotal >> 20) + " MB, "
+			+ (throughput >> 20) + " MB/s";
+		if (remainingTime >= 0) {
+			result += ", " + (remainingTime + 999) / 1000 + " s left";
+		}
+		return result;
+	}
+}
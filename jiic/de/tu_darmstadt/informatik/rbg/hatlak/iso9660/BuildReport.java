@@ -0,0 +1,258 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package de.tu_darmstadt.informatik.rbg.hatlak.iso9660;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects the measurements of a build (see BuildMetrics) as a report.
+ * Measurements reported more than once, e.g. by several builds, are added
+ * up. toString() formats the report as tables.
+ */
+public class BuildReport implements BuildMetrics {
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+	// Wall and CPU time per phase
+	private Map<String, long[]> phases = new LinkedHashMap<String, long[]>();
+	// data() calls, bytes, Fixups and Fixup writes per handler
+	private Map<String, long[]> handlers = new LinkedHashMap<String, long[]>();
+	private Map<String, Integer> renames = new LinkedHashMap<String, Integer>();
+	// Seeks, stalls and stall time per output handler
+	private Map<String, long[]> outputs = new LinkedHashMap<String, long[]>();
+
+	public void startPhase(String phase) {
+		// Only complete phases are reported
+	}
+
+	public void endPhase(String phase, long wallTime, long cpuTime) {
+		long[] times = get(phases, phase, 2);
+		times[0] += wallTime;
+		times[1] = times[1] < 0 || cpuTime < 0 ? -1 : times[1] + cpuTime;
+	}
+
+	public void handler(String handler, long dataCalls, long bytes, long fixups, long fixupWrites) {
+		long[] counts = get(handlers, handler, 4);
+		counts[0] += dataCalls;
+		counts[1] += bytes;
+		counts[2] += fixups;
+		counts[3] += fixupWrites;
+	}
+
+	public void output(String output, long seeks, long stalls, long stallTime) {
+		long[] counts = get(outputs, output, 3);
+		counts[0] += seeks;
+		counts[1] += stalls;
+		counts[2] += stallTime;
+	}
+
+	public void renames(String namespace, int renames) {
+		Integer count = this.renames.get(namespace);
+		this.renames.put(namespace, count==null ? renames : count + renames);
+	}
+
+	private static long[] get(Map<String, long[]> map, String key, int length) {
+		long[] values = map.get(key);
+		if (values==null) {
+			values = new long[length];
+			map.put(key, values);
+		}
+		return values;
+	}
+
+	/**
+	 * Returns the phases measured in the order they ended first
+	 * 
+	 * @return Phases
+	 */
+	public Set<String> getPhases() {
+		return phases.keySet();
+	}
+
+	/**
+	 * Returns the elapsed time of a phase
+	 * 
+	 * @param phase Phase
+	 * @return Wall time in nanoseconds
+	 */
+	public long getWallTime(String phase) {
+		return phases.containsKey(phase) ? phases.get(phase)[0] : 0;
+	}
+
+	/**
+	 * Returns the CPU time of the building thread in a phase
+	 * 
+	 * @param phase Phase
+	 * @return CPU time in nanoseconds, -1 if not supported
+	 */
+	public long getCPUTime(String phase) {
+		return phases.containsKey(phase) ? phases.get(phase)[1] : 0;
+	}
+
+	/**
+	 * Returns the handlers measured from the first to the last of the
+	 * chain
+	 * 
+	 * @return Handlers
+	 */
+	public Set<String> getHandlers() {
+		return handlers.keySet();
+	}
+
+	/**
+	 * Returns the number of data() calls of a handler
+	 * 
+	 * @param handler Handler
+	 * @return Number of data() calls
+	 */
+	public long getDataCalls(String handler) {
+		return handlers.containsKey(handler) ? handlers.get(handler)[0] : 0;
+	}
+
+	/**
+	 * Returns the number of bytes passed to a handler by data() calls
+	 * 
+	 * @param handler Handler
+	 * @return Number of bytes
+	 */
+	public long getBytes(String handler) {
+		return handlers.containsKey(handler) ? handlers.get(handler)[1] : 0;
+	}
+
+	/**
+	 * Returns the number of Fixups created by a handler
+	 * 
+	 * @param handler Handler
+	 * @return Number of Fixups
+	 */
+	public long getFixups(String handler) {
+		return handlers.containsKey(handler) ? handlers.get(handler)[2] : 0;
+	}
+
+	/**
+	 * Returns the number of data() calls on Fixups of a handler
+	 * 
+	 * @param handler Handler
+	 * @return Number of Fixup writes
+	 */
+	public long getFixupWrites(String handler) {
+		return handlers.containsKey(handler) ? handlers.get(handler)[3] : 0;
+	}
+
+	/**
+	 * Returns the output handlers that reported their seeks and stalls
+	 * 
+	 * @return Class names of the output handlers
+	 */
+	public Set<String> getOutputs() {
+		return outputs.keySet();
+	}
+
+	/**
+	 * Returns the number of seeks of an output handler
+	 * 
+	 * @param output Class name of the output handler
+	 * @return Number of positional writes needed to patch the image
+	 */
+	public long getSeeks(String output) {
+		return outputs.containsKey(output) ? outputs.get(output)[0] : 0;
+	}
+
+	/**
+	 * Returns the number of times the building thread waited for the
+	 * threads of an output handler writing the image
+	 * 
+	 * @param output Class name of the output handler
+	 * @return Number of stalls
+	 */
+	public long getStalls(String output) {
+		return outputs.containsKey(output) ? outputs.get(output)[1] : 0;
+	}
+
+	/**
+	 * Returns the time the building thread waited for the threads of an
+	 * output handler writing the image
+	 * 
+	 * @param output Class name of the output handler
+	 * @return Stall time in nanoseconds
+	 */
+	public long getStallTime(String output) {
+		return outputs.containsKey(output) ? outputs.get(output)[2] : 0;
+	}
+
+	/**
+	 * Returns the namespaces naming conventions were applied to
+	 * 
+	 * @return IDs of the naming conventions
+	 */
+	public Set<String> getNamespaces() {
+		return renames.keySet();
+	}
+
+	/**
+	 * Returns the number of files and directories renamed in a namespace
+	 * 
+	 * @param namespace ID of the naming conventions
+	 * @return Number of renames
+	 */
+	public int getRenames(String namespace) {
+		return renames.containsKey(namespace) ? renames.get(namespace) : 0;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder buf = new StringBuilder();
+		buf.append(String.format("%-10s %12s %12s", "Phase", "Wall [ms]", "CPU [ms]")).append(LINE_SEPARATOR);
+		Iterator<String> it = phases.keySet().iterator();
+		while (it.hasNext()) {
+			String phase = it.next();
+			long cpuTime = getCPUTime(phase);
+			buf.append(String.format("%-10s %12.1f %12s", phase, getWallTime(phase) / 1e6,
+					cpuTime < 0 ? "-" : String.format("%.1f", cpuTime / 1e6))).append(LINE_SEPARATOR);
+		}
+
+		buf.append(String.format("%-10s %12s %15s %12s %12s", "Handler", "data()", "Bytes", "Fixups", "Fixup data()")).append(LINE_SEPARATOR);
+		it = handlers.keySet().iterator();
+		while (it.hasNext()) {
+			String handler = it.next();
+			buf.append(String.format("%-10s %12d %15d %12d %12d", handler, getDataCalls(handler),
+					getBytes(handler), getFixups(handler), getFixupWrites(handler))).append(LINE_SEPARATOR);
+		}
+
+		if (!outputs.isEmpty()) {
+			buf.append(String.format("%-24s %12s %12s %12s", "Output", "Seeks", "Stalls", "Stall [ms]")).append(LINE_SEPARATOR);
+			it = outputs.keySet().iterator();
+			while (it.hasNext()) {
+				String output = it.next();
+				buf.append(String.format("%-24s %12d %12d %12.1f", output, getSeeks(output),
+						getStalls(output), getStallTime(output) / 1e6)).append(LINE_SEPARATOR);
+			}
+		}
+
+		buf.append(String.format("%-10s %12s", "Namespace", "Renamed")).append(LINE_SEPARATOR);
+		it = renames.keySet().iterator();
+		while (it.hasNext()) {
+			String namespace = it.next();
+			buf.append(String.format("%-10s %12d", namespace, getRenames(namespace))).append(LINE_SEPARATOR);
+		}
+		return buf.toString();
+	}
+}
@@ -0,0 +1,509 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package de.tu_darmstadt.informatik.rbg.hatlak.iso9660;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.BitSet;
+
+import de.tu_darmstadt.informatik.rbg.hatlak.rockridge.impl.POSIXFileMode;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
+
+/**
+ * Compact directory hierarchy for very large images: all entries are kept
+ * in primitive arrays (parent index, length, modification time, mode and
+ * an offset into a shared UTF-8 name pool) instead of one ISO9660File or
+ * ISO9660Directory object each. The hierarchy returned by createRoot()
+ * only has an object per directory, its files and those of its namespaces
+ * are read from these arrays.<br>
+ * Entry 0 is the root directory. Entries are always added after their
+ * parent, so a parent's index is smaller than those of its children.
+ */
+public class CompactHierarchy {
+	public static final int ROOT = 0;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final byte FLAG_DIRECTORY = 1;
+	
+	private int count = 0;
+	private int[] parents;
+	private long[] lengths;
+	private long[] lastModified;
+	private int[] modes;
+	private int[] nameOffsets;
+	private int[] nameLengths;
+	private int[] sources;
+	private byte[] flags;
+	
+	// Shared name pool
+	private byte[] names;
+	private int namesLength = 0;
+	
+	// Source directories (one per scanned directory)
+	private String[] sourceDirs = new String[16];
+	private int sourceDirCount = 0;
+	// Directory the contents of the root have been read from, if any
+	private File rootSource = null;
+	
+	// Children of entry i: children[childOffsets[i]] to children[childOffsets[i+1]-1]
+	private int[] childOffsets;
+	private int[] children;
+	
+	public CompactHierarchy() {
+		this(1024);
+	}
+	
+	/**
+	 * Create hierarchy
+	 * 
+	 * @param capacity Expected number of entries
+	 */
+	public CompactHierarchy(int capacity) {
+		capacity = Math.max(capacity, 1);
+		parents = new int[capacity];
+		lengths = new long[capacity];
+		lastModified = new long[capacity];
+		modes = new int[capacity];
+		nameOffsets = new int[capacity];
+		nameLengths = new int[capacity];
+		sources = new int[capacity];
+		flags = new byte[capacity];
+		names = new byte[capacity * 16];
+		
+		// Root directory
+		add(ROOT, "", true, 0, System.currentTimeMillis(), 0, -1);
+	}
+	
+	/**
+	 * Add directory
+	 * 
+	 * @param parent Index of the parent directory
+	 * @param name Directory name
+	 * @param lastModified Date of last modification
+	 * @param mode POSIX file mode (0: default)
+	 * @return Index of the added directory
+	 */
+	public int addDirectory(int parent, String name, long lastModified, int mode) {
+		return add(parent, name, true, 0, lastModified, mode, -1);
+	}
+
+	/**
+	 * Add file
+	 * 
+	 * @param parent Index of the parent directory
+	 * @param name File name
+	 * @param length File length
+	 * @param lastModified Date of last modification
+	 * @param mode POSIX file mode (0: default)
+	 * @return Index of the added file
+	 */
+	public int addFile(int parent, String name, long length, long lastModified, int mode) {
+		return add(parent, name, false, length, lastModified, mode, -1);
+	}
+	
+	/**
+	 * Add file or directory recursively
+	 * 
+	 * @param parent Index of the parent directory
+	 * @param file File or directory to be added recursively
+	 * @return Index of the added entry
+	 */
+	public int addRecursively(int parent, File file) {
+		int source = addSourceDir(file.getAbsoluteFile().getParent());
+		return addRecursively(parent, file, source);
+	}
+	
+	/**
+	 * Add contents of directory recursively
+	 * 
+	 * @param parent Index of the parent directory
+	 * @param dir Directory the contents of which are to be added recursively
+	 * @throws HandlerException Not a directory
+	 */
+	public void addContentsRecursively(int parent, File dir) throws HandlerException {
+		if (!dir.isDirectory()) {
+			throw new HandlerException("Not a directory: " + dir);
+		}
+		if (parent == ROOT && rootSource == null) {
+			rootSource = dir.getAbsoluteFile();
+		}
+		addContents(parent, dir);
+	}
+	
+	private int addRecursively(int parent, File file, int source) {
+		if (!file.isDirectory()) {
+			return add(parent, file.getName(), false, file.length(), file.lastModified(), 0, source);
+		}
+		
+		int dir = add(parent, file.getName(), true, 0, file.lastModified(), 0, source);
+		addContents(dir, file);
+		return dir;
+	}
+	
+	private void addContents(int parent, File dir) {
+		File[] files = dir.listFiles();
+		if (files != null && files.length > 0) {
+			int source = addSourceDir(dir.getAbsolutePath());
+			for (int i = 0; i < files.length; i++) {
+				addRecursively(parent, files[i], source);
+			}
+		}
+	}
+	
+	private int addSourceDir(String path) {
+		if (sourceDirCount == sourceDirs.length) {
+			String[] newSourceDirs = new String[sourceDirCount * 2];
+			System.arraycopy(sourceDirs, 0, newSourceDirs, 0, sourceDirCount);
+			sourceDirs = newSourceDirs;
+		}
+		sourceDirs[sourceDirCount] = path;
+		return sourceDirCount++;
+	}
+	
+	private int add(int parent, String name, boolean directory, long length, long time, int mode, int source) {
+		if (parent < 0 || parent >= count && count > 0 || count > 0 && (flags[parent] & FLAG_DIRECTORY) == 0) {
+			throw new IllegalArgumentException("Invalid parent directory: " + parent);
+		}
+		if (count == parents.length) {
+			grow(count * 2);
+		}
+		
+		byte[] bytes = name.getBytes(UTF8);
+		if (namesLength + bytes.length > names.length) {
+			byte[] newNames = new byte[Math.max(names.length * 2, namesLength + bytes.length)];
+			System.arraycopy(names, 0, newNames, 0, namesLength);
+			names = newNames;
+		}
+		System.arraycopy(bytes, 0, names, namesLength, bytes.length);
+		
+		parents[count] = parent;
+		lengths[count] = length;
+		lastModified[count] = time;
+		modes[count] = mode;
+		nameOffsets[count] = namesLength;
+		nameLengths[count] = bytes.length;
+		sources[count] = source;
+		flags[count] = directory ? FLAG_DIRECTORY : 0;
+		namesLength += bytes.length;
+		
+		return count++;
+	}
+	
+	private void grow(int size) {
+		int[] newParents = new int[size];
+		System.arraycopy(parents, 0, newParents, 0, count);
+		parents = newParents;
+		long[] newLengths = new long[size];
+		System.arraycopy(lengths, 0, newLengths, 0, count);
+		lengths = newLengths;
+		long[] newLastModified = new long[size];
+		System.arraycopy(lastModified, 0, newLastModified, 0, count);
+		lastModified = newLastModified;
+		int[] newModes = new int[size];
+		System.arraycopy(modes, 0, newModes, 0, count);
+		modes = newModes;
+		int[] newNameOffsets = new int[size];
+		System.arraycopy(nameOffsets, 0, newNameOffsets, 0, count);
+		nameOffsets = newNameOffsets;
+		int[] newNameLengths = new int[size];
+		System.arraycopy(nameLengths, 0, newNameLengths, 0, count);
+		nameLengths = newNameLengths;
+		int[] newSources = new int[size];
+		System.arraycopy(sources, 0, newSources, 0, count);
+		sources = newSources;
+		byte[] newFlags = new byte[size];
+		System.arraycopy(flags, 0, newFlags, 0, count);
+		flags = newFlags;
+	}
+	
+	/**
+	 * Returns the number of entries, including the root directory
+	 * 
+	 * @return Number of entries
+	 */
+	public int size() {
+		return count;
+	}
+	
+	public int getParent(int entry) {
+		return parents[entry];
+	}
+	
+	public String getName(int entry) {
+		return new String(names, nameOffsets[entry], nameLengths[entry], UTF8);
+	}
+	
+	public boolean isDirectory(int entry) {
+		return (flags[entry] & FLAG_DIRECTORY) != 0;
+	}
+	
+	public long length(int entry) {
+		return lengths[entry];
+	}
+	
+	public long lastModified(int entry) {
+		return lastModified[entry];
+	}
+	
+	public int getFileMode(int entry) {
+		return modes[entry];
+	}
+	
+	public void setFileMode(int entry, int mode) {
+		modes[entry] = mode;
+	}
+	
+	/**
+	 * Returns the file or directory an entry was read from. Entries added
+	 * by name are located in the source directory of their parent (the
+	 * directory the contents of the root have been read from for the root).
+	 * 
+	 * @param entry Entry index
+	 * @return Source file (null for the root if its contents have not been read from a directory)
+	 */
+	public File getFile(int entry) {
+		if (entry == ROOT) {
+			return rootSource;
+		}
+		int source = sources[entry];
+		if (source < 0) {
+			return new File(getFile(parents[entry]), getName(entry));
+		}
+		return new File(sourceDirs[source], getName(entry));
+	}
+	
+	/**
+	 * Creates the directory hierarchy. Its directories are objects, but its
+	 * files are kept by index in the arrays of this hierarchy, which they
+	 * are read from when accessed (see ISO9660RootDirectory.createNamespace()):
+	 * no ISO9660File object is kept per entry, neither by the hierarchy
+	 * returned nor by its namespaces. Files added to it later on are kept
+	 * as usual.
+	 * 
+	 * @return Root directory
+	 */
+	public ISO9660RootDirectory createRoot() {
+		indexChildren();
+		Namespace namespace = new Namespace(new Table(this));
+		ISO9660RootDirectory root = new ISO9660RootDirectory(namespace);
+		root.setLastModified(lastModified[ROOT]);
+		addContents(ROOT, root, namespace);
+		return root;
+	}
+	
+	private void indexChildren() {
+		if (childOffsets != null && childOffsets.length == count + 1) {
+			// Up to date
+			return;
+		}
+		
+		// Counting sort by parent, keeps the order in which entries were added
+		int[] offsets = new int[count + 1];
+		for (int i = 1; i < count; i++) {
+			offsets[parents[i] + 1]++;
+		}
+		for (int i = 0; i < count; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		int[] next = new int[count];
+		System.arraycopy(offsets, 0, next, 0, count);
+		int[] sorted = new int[count];
+		for (int i = 1; i < count; i++) {
+			sorted[next[parents[i]]++] = i;
+		}
+		childOffsets = offsets;
+		children = sorted;
+	}
+	
+	/**
+	 * Adds the files and subdirectories of a directory entry recursively
+	 * 
+	 * @param dir Index of the directory
+	 * @param target Directory
+	 * @param namespace Namespace of the files
+	 */
+	private void addContents(int dir, ISO9660Directory target, Namespace namespace) {
+		for (int i = childOffsets[dir]; i < childOffsets[dir + 1]; i++) {
+			int entry = children[i];
+			if (isDirectory(entry)) {
+				ISO9660Directory subdir = new ISO9660Directory(getName(entry));
+				subdir.setLastModified(lastModified[entry]);
+				subdir.setFileMode(modes[entry] != 0 ? new POSIXFileMode(modes[entry]) : null);
+				target.addDirectory(subdir);
+				subdir.setNamespace(namespace, childOffsets[entry + 1] - childOffsets[entry]);
+				addContents(entry, subdir, namespace);
+			} else {
+				// File index is the entry index
+				target.addFile(new NamespaceFile(namespace, entry));
+			}
+		}
+	}
+	
+	/**
+	 * Files of the hierarchy by entry index, read from its arrays. Content
+	 * IDs, link counts and compared flags are only allocated once set.
+	 */
+	private static class Table extends FileTable {
+		private CompactHierarchy hierarchy;
+		private int count;
+		private Object[] contentIDs;
+		private int[] links;
+		private BitSet compared;
+		
+		Table(CompactHierarchy hierarchy) {
+			super(hierarchy.count);
+			this.hierarchy = hierarchy;
+			this.count = hierarchy.count;
+		}
+		
+		@Override
+		String getFilename(int index) {
+			if (index >= count) {
+				return super.getFilename(index);
+			}
+			String name = hierarchy.getName(index);
+			int dot = ISO9660File.getExtensionDelimiter(name);
+			return dot >= 0 ? name.substring(0, dot) : name;
+		}
+		
+		@Override
+		String getExtension(int index) {
+			if (index >= count) {
+				return super.getExtension(index);
+			}
+			String name = hierarchy.getName(index);
+			int dot = ISO9660File.getExtensionDelimiter(name);
+			return dot >= 0 ? name.substring(dot + 1) : "";
+		}
+		
+		@Override
+		int getVersion(int index) {
+			return index >= count ? super.getVersion(index) : 1;
+		}
+		
+		@Override
+		POSIXFileMode getFileMode(int index) {
+			if (index >= count) {
+				return super.getFileMode(index);
+			}
+			int mode = hierarchy.modes[index];
+			return mode != 0 ? new POSIXFileMode(mode) : null;
+		}
+		
+		@Override
+		File getFile(int index) {
+			return index >= count ? super.getFile(index) : hierarchy.getFile(index);
+		}
+		
+		@Override
+		FileAttributes getAttributes(int index) {
+			if (index >= count) {
+				return super.getAttributes(index);
+			}
+			return new FileAttributes(hierarchy.lengths[index], hierarchy.lastModified[index], false);
+		}
+		
+		@Override
+		Object getID(int index) {
+			return index >= count ? super.getID(index) : new Integer(index);
+		}
+		
+		@Override
+		Object getContentID(int index) {
+			if (index >= count) {
+				return super.getContentID(index);
+			}
+			if (contentIDs != null && contentIDs[index] != null) {
+				return contentIDs[index];
+			}
+			// As for a file object
+			return new Integer(getFile(index).hashCode());
+		}
+		
+		@Override
+		void setContentID(int index, Object contentID) {
+			if (index >= count) {
+				super.setContentID(index, contentID);
+				return;
+			}
+			if (contentIDs == null) {
+				contentIDs = new Object[count];
+			}
+			contentIDs[index] = contentID;
+		}
+		
+		@Override
+		int getLinks(int index) {
+			if (index >= count) {
+				return super.getLinks(index);
+			}
+			return links != null && links[index] != 0 ? links[index] : 1;
+		}
+		
+		@Override
+		void setLinks(int index, int links) {
+			if (index >= count) {
+				super.setLinks(index, links);
+				return;
+			}
+			if (this.links == null) {
+				this.links = new int[count];
+			}
+			this.links[index] = links;
+		}
+		
+		@Override
+		boolean contentsCompared(int index) {
+			if (index >= count) {
+				return super.contentsCompared(index);
+			}
+			return compared != null && compared.get(index);
+		}
+		
+		@Override
+		void setContentsCompared(int index) {
+			if (index >= count) {
+				super.setContentsCompared(index);
+				return;
+			}
+			if (compared == null) {
+				compared = new BitSet(count);
+			}
+			compared.set(index);
+		}
+		
+		/**
+		 * Returns a new file object starting out with the state of an entry
+		 * (which it does not share, unlike the copy of a file object)
+		 */
+		@Override
+		ISO9660File copy(int index) {
+			if (index >= count) {
+				return super.copy(index);
+			}
+			ISO9660File copy = new ISO9660File(getFile(index), hierarchy.getName(index), getAttributes(index));
+			copy.setFileMode(getFileMode(index));
+			if (contentIDs != null && contentIDs[index] != null) {
+				copy.setContentID(contentIDs[index]);
+			}
+			copy.setLinks(getLinks(index));
+			return copy;
+		}
+	}
+}
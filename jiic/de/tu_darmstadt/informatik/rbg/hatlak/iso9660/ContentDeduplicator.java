@@ -0,0 +1,247 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package de.tu_darmstadt.informatik.rbg.hatlak.iso9660;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
+
+/**
+ * Finds files with identical contents so that they can share a single
+ * extent. Candidates are grouped by length, then by a digest of their
+ * first bytes and finally by a digest of their complete contents; the
+ * digests are computed in parallel. Files found to be identical are given
+ * the content ID of the first of them (in File Contents Area order).
+ */
+public class ContentDeduplicator {
+	private static final int PREFIX_LENGTH = 64 * 1024;
+	private static final String DIGEST_ALGORITHM = "SHA-256";
+	private int parallelism;
+
+	/**
+	 * Create deduplicator using one thread per available processor
+	 */
+	public ContentDeduplicator() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Create deduplicator
+	 * 
+	 * @param parallelism Number of hashing threads
+	 */
+	public ContentDeduplicator(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Invalid parallelism: " + parallelism);
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Assign shared content IDs to files with identical contents
+	 * 
+	 * @param root Root of the hierarchy
+	 * @return Number of files that share their contents with an earlier file
+	 * @throws HandlerException Problems reading the files
+	 */
+	public int deduplicate(ISO9660RootDirectory root) throws HandlerException {
+		// Group distinct contents by length
+		Map<Long, List<List<ISO9660File>>> lengths = new LinkedHashMap<Long, List<List<ISO9660File>>>();
+		Map<Object, List<ISO9660File>> contents = new LinkedHashMap<Object, List<ISO9660File>>();
+		add(root, lengths, contents);
+		Iterator<ISO9660Directory> it = root.sortedIterator();
+		while (it.hasNext()) {
+			add(it.next(), lengths, contents);
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		try {
+			int shared = 0;
+			Iterator<List<List<ISO9660File>>> git = lengths.values().iterator();
+			while (git.hasNext()) {
+				List<List<ISO9660File>> group = git.next();
+				if (group.size() < 2 || compared(group)) {
+					continue;
+				}
+				long length = group.get(0).get(0).length();
+				List<List<List<ISO9660File>>> candidates = split(executor, group, PREFIX_LENGTH);
+				for (int i = 0; i < candidates.size(); i++) {
+					if (length <= PREFIX_LENGTH) {
+						// Prefix digest already covers the whole contents
+						shared += share(candidates.get(i));
+					} else {
+						List<List<List<ISO9660File>>> identical = split(executor, candidates.get(i), length);
+						for (int j = 0; j < identical.size(); j++) {
+							shared += share(identical.get(j));
+						}
+					}
+				}
+				setCompared(group);
+			}
+			return shared;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private void add(ISO9660Directory dir, Map<Long, List<List<ISO9660File>>> lengths, Map<Object, List<ISO9660File>> contents) {
+		Iterator<ISO9660File> it = dir.getFiles().iterator();
+		while (it.hasNext()) {
+			ISO9660File file = it.next();
+			if (file.length() == 0) {
+				continue;
+			}
+			List<ISO9660File> files = contents.get(file.getContentID());
+			if (files == null) {
+				files = new ArrayList<ISO9660File>();
+				contents.put(file.getContentID(), files);
+				
+				Long length = Long.valueOf(file.length());
+				List<List<ISO9660File>> group = lengths.get(length);
+				if (group == null) {
+					group = new ArrayList<List<ISO9660File>>();
+					lengths.put(length, group);
+				}
+				group.add(files);
+			}
+			files.add(file);
+		}
+	}
+
+	private List<List<List<ISO9660File>>> split(ExecutorService executor, List<List<ISO9660File>> group, final long length) throws HandlerException {
+		List<Future<ByteBuffer>> digests = new ArrayList<Future<ByteBuffer>>(group.size());
+		for (int i = 0; i < group.size(); i++) {
+			final ISO9660File file = group.get(i).get(0);
+			digests.add(executor.submit(new Callable<ByteBuffer>() {
+				public ByteBuffer call() throws IOException {
+					return digest(file, length);
+				}
+			}));
+		}
+
+		Map<ByteBuffer, List<List<ISO9660File>>> subgroups = new LinkedHashMap<ByteBuffer, List<List<ISO9660File>>>();
+		for (int i = 0; i < group.size(); i++) {
+			ByteBuffer digest;
+			try {
+				digest = digests.get(i).get();
+			} catch (InterruptedException e) {
+				throw new HandlerException(e);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				if (cause instanceof Exception) {
+					throw new HandlerException((Exception) cause);
+				}
+				throw new HandlerException(e);
+			}
+			List<List<ISO9660File>> subgroup = subgroups.get(digest);
+			if (subgroup == null) {
+				subgroup = new ArrayList<List<ISO9660File>>();
+				subgroups.put(digest, subgroup);
+			}
+			subgroup.add(group.get(i));
+		}
+
+		List<List<List<ISO9660File>>> result = new ArrayList<List<List<ISO9660File>>>();
+		Iterator<List<List<ISO9660File>>> it = subgroups.values().iterator();
+		while (it.hasNext()) {
+			List<List<ISO9660File>> subgroup = it.next();
+			if (subgroup.size() > 1) {
+				result.add(subgroup);
+			}
+		}
+		return result;
+	}
+
+	private int share(List<List<ISO9660File>> identical) {
+		Object contentID = identical.get(0).get(0).getContentID();
+		int shared = 0;
+		for (int i = 1; i < identical.size(); i++) {
+			List<ISO9660File> files = identical.get(i);
+			for (int j = 0; j < files.size(); j++) {
+				files.get(j).setContentID(contentID);
+			}
+			shared += files.size();
+		}
+		return shared;
+	}
+
+	private boolean compared(List<List<ISO9660File>> group) {
+		// Groups already compared by an earlier run (e.g. when planning the layout)
+		for (int i = 0; i < group.size(); i++) {
+			if (!group.get(i).get(0).contentsCompared()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void setCompared(List<List<ISO9660File>> group) {
+		for (int i = 0; i < group.size(); i++) {
+			List<ISO9660File> files = group.get(i);
+			for (int j = 0; j < files.size(); j++) {
+				files.get(j).setContentsCompared();
+			}
+		}
+	}
+
+	private static ByteBuffer digest(ISO9660File file, long length) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+		
+		FileInputStream inputStream = new FileInputStream(file.getFile());
+		try {
+			byte[] buffer = new byte[(int) Math.min(length, PREFIX_LENGTH)];
+			long rest = length;
+			while (rest > 0) {
+				int read = inputStream.read(buffer, 0, (int) Math.min(rest, buffer.length));
+				if (read == -1) {
+					break;
+				}
+				digest.update(buffer, 0, read);
+				rest -= read;
+			}
+		} finally {
+			inputStream.close();
+		}
+		return ByteBuffer.wrap(digest.digest());
+	}
+}
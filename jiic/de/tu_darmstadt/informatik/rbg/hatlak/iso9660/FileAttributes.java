@@ -0,0 +1,147 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package de.tu_darmstadt.informatik.rbg.hatlak.iso9660;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the file system attributes of a file, taken once
+ * when the file is added so that layout and writing agree on its size.
+ * The link count is only known where the "unix" attribute view is
+ * supported (otherwise 1). Together with the file key, which identifies
+ * the file by device and inode there, it is used to detect hard links.
+ */
+public final class FileAttributes {
+	private static final String UNIX_ATTRIBUTES = "unix:size,lastModifiedTime,isDirectory,fileKey,nlink";
+	
+	private long length, lastModified;
+	private boolean directory;
+	private int links;
+	private Object fileKey;
+
+	/**
+	 * Create snapshot from known values
+	 * 
+	 * @param length File length
+	 * @param lastModified Date of last modification
+	 * @param directory Whether the file is a directory
+	 */
+	public FileAttributes(long length, long lastModified, boolean directory) {
+		this(length, lastModified, directory, null, 1);
+	}
+	
+	private FileAttributes(long length, long lastModified, boolean directory, Object fileKey, int links) {
+		this.length = length;
+		this.lastModified = lastModified;
+		this.directory = directory;
+		this.fileKey = fileKey;
+		this.links = links;
+	}
+	
+	/**
+	 * Read attributes of a file (following symbolic links)
+	 * 
+	 * @param file File
+	 * @return Snapshot
+	 * @throws IOException File does not exist or cannot be read
+	 */
+	public static FileAttributes read(File file) throws IOException {
+		try {
+			return read(file.toPath());
+		} catch (InvalidPathException e) {
+			// Name not representable in the file system, cannot exist
+			throw new FileNotFoundException(file.getPath());
+		}
+	}
+
+	/**
+	 * Read attributes of a file (following symbolic links)
+	 * 
+	 * @param path Path of the file
+	 * @return Snapshot
+	 * @throws IOException File does not exist or cannot be read
+	 */
+	public static FileAttributes read(Path path) throws IOException {
+		if (path.getFileSystem().supportedFileAttributeViews().contains("unix")) {
+			return unix(Files.readAttributes(path, UNIX_ATTRIBUTES));
+		}
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		return new FileAttributes(attributes.size(), attributes.lastModifiedTime().toMillis(),
+				attributes.isDirectory(), attributes.fileKey(), 1);
+	}
+
+	private static FileAttributes unix(Map<String, Object> attributes) {
+		return new FileAttributes(
+				((Long) attributes.get("size")).longValue(),
+				((FileTime) attributes.get("lastModifiedTime")).toMillis(),
+				((Boolean) attributes.get("isDirectory")).booleanValue(),
+				attributes.get("fileKey"),
+				((Integer) attributes.get("nlink")).intValue());
+	}
+	
+	/**
+	 * Returns file length
+	 * 
+	 * @return File length
+	 */
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * Returns date of last modification
+	 * 
+	 * @return Date of last modification
+	 */
+	public long lastModified() {
+		return lastModified;
+	}
+
+	public boolean isDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Returns the file system's key identifying the file
+	 * 
+	 * @return File key or null if not available
+	 */
+	public Object getFileKey() {
+		return fileKey;
+	}
+
+	/**
+	 * Returns number of hard links
+	 * 
+	 * @return Link count (1 if not available)
+	 */
+	public int getLinks() {
+		return links;
+	}
+}
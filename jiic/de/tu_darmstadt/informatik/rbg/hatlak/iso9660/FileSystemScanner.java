@@ -0,0 +1,260 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package de.tu_darmstadt.informatik.rbg.hatlak.iso9660;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
+
+/**
+ * Scans directory trees on a fork/join pool. Every entry is stat'ed once
+ * (FileAttributes), subtrees are listed in parallel into detached
+ * nodes and afterwards attached to the hierarchy on the calling thread
+ * in listing order, so the result equals that of a serial scan. Files
+ * selected otherwise, e.g. by an Ant FileSet, can be stat'ed in parallel
+ * by readAttributes().
+ */
+public class FileSystemScanner {
+	private int parallelism;
+
+	/**
+	 * Create scanner using one thread per available processor
+	 */
+	public FileSystemScanner() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Create scanner
+	 *
+	 * @param parallelism Number of scanning threads
+	 */
+	public FileSystemScanner(int parallelism) {
+		setParallelism(parallelism);
+	}
+
+	/**
+	 * Set number of scanning threads
+	 *
+	 * @param parallelism Number of scanning threads (at least 1)
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Invalid parallelism: " + parallelism);
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Returns number of scanning threads
+	 *
+	 * @return Number of scanning threads
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Add file or directory recursively
+	 *
+	 * @param parent Directory to add to
+	 * @param file File or directory to be added recursively
+	 * @throws HandlerException Problems reading the file system
+	 */
+	public void addRecursively(ISO9660Directory parent, File file) throws HandlerException {
+		Node node = root(file);
+		if (node.isDirectory()) {
+			scan(node);
+		}
+		attach(parent, node);
+	}
+
+	/**
+	 * Add contents of directory recursively
+	 *
+	 * @param parent Directory to add to
+	 * @param file Directory the contents of which are to be added recursively
+	 * @throws HandlerException Problems reading the file system
+	 */
+	public void addContentsRecursively(ISO9660Directory parent, File file) throws HandlerException {
+		Node node = root(file);
+		if (!node.isDirectory()) {
+			throw new HandlerException("Not a directory: " + file);
+		}
+		scan(node);
+		attachChildren(parent, node);
+	}
+
+	/**
+	 * Read the attributes of files in parallel
+	 *
+	 * @param files Files
+	 * @return Attributes in the order of the files
+	 * @throws HandlerException Problems reading the file system
+	 */
+	public FileAttributes[] readAttributes(File[] files) throws HandlerException {
+		FileAttributes[] attributes = new FileAttributes[files.length];
+		invoke(new ReadTask(files, attributes, 0, files.length));
+		return attributes;
+	}
+
+	private void scan(Node node) throws HandlerException {
+		invoke(new ScanTask(node));
+	}
+
+	private void invoke(ForkJoinTask<?> task) throws HandlerException {
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.invoke(task);
+		} catch (ScanException e) {
+			// The pool may rethrow a copy wrapping the original exception
+			Throwable cause = e.getCause();
+			while (!(cause instanceof IOException)) {
+				cause = cause.getCause();
+			}
+			throw new HandlerException((IOException) cause);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private Node root(File file) throws HandlerException {
+		try {
+			return new Node(file.toPath(), file.getName(), FileAttributes.read(file));
+		} catch (IOException e) {
+			throw new HandlerException(e);
+		}
+	}
+
+	private void attach(ISO9660Directory parent, Node node) {
+		if (node.isDirectory()) {
+			ISO9660Directory dir = new ISO9660Directory(node.name);
+			dir.setLastModified(node.attributes.lastModified());
+			parent.addDirectory(dir);
+			attachChildren(dir, node);
+		} else {
+			parent.addFile(new ISO9660File(node.path.toFile(), node.name, node.attributes));
+		}
+	}
+
+	private void attachChildren(ISO9660Directory dir, Node node) {
+		for (int i = 0; i < node.children.size(); i++) {
+			attach(dir, node.children.get(i));
+		}
+	}
+
+	private static class Node {
+		private Path path;
+		private String name;
+		private FileAttributes attributes;
+		private List<Node> children;
+
+		Node(Path path, String name, FileAttributes attributes) {
+			this.path = path;
+			this.name = name;
+			this.attributes = attributes;
+		}
+
+		boolean isDirectory() {
+			return attributes.isDirectory();
+		}
+	}
+
+	private static class ScanTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private Node node;
+
+		ScanTask(Node node) {
+			this.node = node;
+		}
+
+		@Override
+		protected void compute() {
+			List<ScanTask> tasks = new ArrayList<ScanTask>();
+			node.children = new ArrayList<Node>();
+			try {
+				DirectoryStream<Path> stream = Files.newDirectoryStream(node.path);
+				try {
+					for (Path path : stream) {
+						Node child = new Node(path, path.getFileName().toString(), FileAttributes.read(path));
+						node.children.add(child);
+						if (child.isDirectory()) {
+							tasks.add(new ScanTask(child));
+						}
+					}
+				} finally {
+					stream.close();
+				}
+			} catch (IOException e) {
+				throw new ScanException(e);
+			}
+			invokeAll(tasks);
+		}
+	}
+
+	private static class ReadTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private static final int THRESHOLD = 64;
+		private File[] files;
+		private FileAttributes[] attributes;
+		private int from, to;
+
+		ReadTask(File[] files, FileAttributes[] attributes, int from, int to) {
+			this.files = files;
+			this.attributes = attributes;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > THRESHOLD) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new ReadTask(files, attributes, from, middle),
+						new ReadTask(files, attributes, middle, to));
+				return;
+			}
+			try {
+				for (int i = from; i < to; i++) {
+					attributes[i] = FileAttributes.read(files[i]);
+				}
+			} catch (IOException e) {
+				throw new ScanException(e);
+			}
+		}
+	}
+
+	private static class ScanException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		ScanException(IOException cause) {
+			super(cause);
+		}
+	}
+}
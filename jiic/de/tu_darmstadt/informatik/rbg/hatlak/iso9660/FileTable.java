@@ -0,0 +1,165 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package de.tu_darmstadt.informatik.rbg.hatlak.iso9660;
+
+import java.io.File;
+
+import de.tu_darmstadt.informatik.rbg.hatlak.rockridge.impl.POSIXFileMode;
+
+/**
+ * Files and directories of a hierarchy by index, shared by all of its
+ * namespaces (see Namespace). A file or directory is indexed once, when
+ * the first namespace containing it is created, and keeps its index.<br>
+ * For each file, the table holds the state shared by all namespaces
+ * (underlying file, attributes, content ID, link count) and the names
+ * and file mode a namespace starts out with. A subclass may keep the
+ * first files of the table itself (see CompactHierarchy), file objects
+ * are indexed after those.
+ */
+class FileTable {
+	private ISO9660File[] files;
+	// Number of files kept by a subclass
+	private int first;
+	private int fileCount, dirCount = 0;
+	
+	FileTable() {
+		this(0);
+	}
+	
+	/**
+	 * Create table
+	 * 
+	 * @param first Number of files kept by the subclass
+	 */
+	FileTable(int first) {
+		this.files = new ISO9660File[16];
+		this.first = first;
+		this.fileCount = first;
+	}
+	
+	/**
+	 * Returns the index of a file, indexing it if necessary
+	 * 
+	 * @param file File
+	 * @return File index
+	 */
+	int index(ISO9660File file) {
+		int index = file.getIndex();
+		if (index >= first && index < fileCount && files[index - first] == file) {
+			return index;
+		}
+		if (fileCount - first == files.length) {
+			ISO9660File[] newFiles = new ISO9660File[files.length * 2];
+			System.arraycopy(files, 0, newFiles, 0, files.length);
+			files = newFiles;
+		}
+		files[fileCount - first] = file;
+		file.setIndex(fileCount);
+		return fileCount++;
+	}
+	
+	/**
+	 * Returns the index of a directory, indexing it if necessary. Copies
+	 * of a directory in different namespaces share its index.
+	 * 
+	 * @param dir Directory
+	 * @return Directory index
+	 */
+	int index(ISO9660Directory dir) {
+		if (dir.getIndex() < 0) {
+			dir.setIndex(dirCount++);
+		}
+		return dir.getIndex();
+	}
+	
+	int getFileCount() {
+		return fileCount;
+	}
+	
+	int getDirCount() {
+		return dirCount;
+	}
+	
+	String getFilename(int index) {
+		return files[index - first].filename();
+	}
+	
+	String getExtension(int index) {
+		return files[index - first].extension();
+	}
+	
+	int getVersion(int index) {
+		return files[index - first].getVersion();
+	}
+	
+	POSIXFileMode getFileMode(int index) {
+		return files[index - first].getFileMode();
+	}
+	
+	File getFile(int index) {
+		return files[index - first].getFile();
+	}
+	
+	FileAttributes getAttributes(int index) {
+		return files[index - first].getAttributes();
+	}
+	
+	Object getID(int index) {
+		return files[index - first].getID();
+	}
+	
+	Object getContentID(int index) {
+		return files[index - first].getContentID();
+	}
+	
+	void setContentID(int index, Object contentID) {
+		files[index - first].setContentID(contentID);
+	}
+	
+	int getLinks(int index) {
+		return files[index - first].getLinks();
+	}
+	
+	void setLinks(int index, int links) {
+		files[index - first].setLinks(links);
+	}
+	
+	boolean contentsCompared(int index) {
+		return files[index - first].contentsCompared();
+	}
+	
+	void setContentsCompared(int index) {
+		files[index - first].setContentsCompared();
+	}
+	
+	/**
+	 * Returns a new file, not indexed and without parent directory,
+	 * sharing the state of an indexed file
+	 * 
+	 * @param index File index
+	 * @return New file
+	 */
+	ISO9660File copy(int index) {
+		ISO9660File copy = files[index - first].clone();
+		copy.setParentDirectory(null);
+		return copy;
+	}
+}
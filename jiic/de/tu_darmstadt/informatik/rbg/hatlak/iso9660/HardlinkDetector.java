@@ -0,0 +1,94 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package de.tu_darmstadt.informatik.rbg.hatlak.iso9660;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds hard links among the files of a hierarchy by means of the file
+ * keys (device and inode) read when the files were added and gives all
+ * links to the same file the content ID of the first of them (in File
+ * Contents Area order), so that the contents are stored only once. Each
+ * link records the number of links in the hierarchy (Rock Ridge PX).
+ */
+public class HardlinkDetector {
+	private Map<Object, List<ISO9660File>> groups;
+
+	/**
+	 * Assign shared content IDs to hard links
+	 * 
+	 * @param root Root of the hierarchy
+	 * @return Number of files that are links to an earlier file
+	 */
+	public int detect(ISO9660RootDirectory root) {
+		groups = new LinkedHashMap<Object, List<ISO9660File>>();
+		detect((ISO9660Directory) root);
+		Iterator<ISO9660Directory> it = root.sortedIterator();
+		while (it.hasNext()) {
+			detect(it.next());
+		}
+		
+		int shared = 0;
+		Iterator<List<ISO9660File>> git = groups.values().iterator();
+		while (git.hasNext()) {
+			List<ISO9660File> group = git.next();
+			if (group.size() < 2) {
+				continue;
+			}
+			Object contentID = group.get(0).getContentID();
+			for (int i = 0; i < group.size(); i++) {
+				ISO9660File file = group.get(i);
+				if (!contentID.equals(file.getContentID())) {
+					file.setContentID(contentID);
+					shared++;
+				}
+				if (file.length() > 0) {
+					// Every empty file has its own location
+					file.setLinks(group.size());
+				}
+			}
+		}
+		groups = null;
+		return shared;
+	}
+
+	private void detect(ISO9660Directory dir) {
+		Iterator<ISO9660File> it = dir.getFiles().iterator();
+		while (it.hasNext()) {
+			ISO9660File file = it.next();
+			FileAttributes attributes = file.getAttributes();
+			if (attributes.getLinks() < 2 || attributes.getFileKey() == null) {
+				continue;
+			}
+			
+			List<ISO9660File> group = groups.get(attributes.getFileKey());
+			if (group == null) {
+				group = new ArrayList<ISO9660File>(2);
+				groups.put(attributes.getFileKey(), group);
+			}
+			group.add(file);
+		}
+	}
+}
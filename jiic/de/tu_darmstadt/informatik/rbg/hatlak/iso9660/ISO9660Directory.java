@@ -22,8 +22,10 @@ package de.tu_darmstadt.informatik.rbg.hatlak.iso9660;
 import java.io.File;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import de.tu_darmstadt.informatik.rbg.hatlak.rockridge.impl.POSIXFileMode;
 import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
@@ -34,11 +36,15 @@ public class ISO9660Directory implements ISO9660HierarchyObject {
 	private int level;
 	private List<ISO9660File> files;
 	private List<ISO9660Directory> directories;
+	// Subdirectories and files in sorted order, null if outdated
+	private List<ISO9660HierarchyObject> contents;
+	private Map<String, ISO9660Directory> directoryIndex;
 	private ISO9660Directory parent;
 	private ISO9660RootDirectory root;
 	private long lastModified;
 	private boolean sorted;
 	private Object id;
+	private int index = -1;
 	ISO9660DirectoryIterator sortedIterator, unsortedIterator;
 	private POSIXFileMode filemode;
 	
@@ -85,6 +91,7 @@ public class ISO9660Directory implements ISO9660HierarchyObject {
 		if (parent!=this) {
 			// Force sort of parent only if is contains this directory
 			parent.forceSort();
+			parent.directoryIndex = null;
 		}
 	}
 	
@@ -144,6 +151,32 @@ public class ISO9660Directory implements ISO9660HierarchyObject {
 		}
 		return directories;
 	}
+
+	/**
+	 * Returns a List of the directory's subdirectories and files in the
+	 * order of their Directory Records, kept until the directory changes
+	 * 
+	 * @return List containing ISO9660Directory and ISO9660File objects
+	 */
+	public List<ISO9660HierarchyObject> getContents() {
+		if (!sorted) {
+			sort();
+		}
+		if (contents==null) {
+			// Subdirectories first on equal names
+			List<ISO9660HierarchyObject> contents = new ArrayList<ISO9660HierarchyObject>(directories.size() + files.size());
+			contents.addAll(directories);
+			contents.addAll(files);
+			Collections.sort(contents);
+			if (files instanceof NamespaceFileList) {
+				// Kept as file indices rather than file views
+				this.contents = ((NamespaceFileList) files).contents(contents);
+			} else {
+				this.contents = Collections.unmodifiableList(contents);
+			}
+		}
+		return contents;
+	}
 	
 	public void setFileMode(POSIXFileMode filemode) {
 		this.filemode = filemode;
@@ -227,6 +260,9 @@ public class ISO9660Directory implements ISO9660HierarchyObject {
 		dir.setParentDirectory(this);
 		dir.setRoot(root);
 		directories.add(dir);
+		if (directoryIndex!=null && !directoryIndex.containsKey(dir.getName())) {
+			directoryIndex.put(dir.getName(), dir);
+		}
 		sorted = false;
 		return dir;
 	}
@@ -298,19 +334,48 @@ public class ISO9660Directory implements ISO9660HierarchyObject {
 	 * @throws HandlerException
 	 */
 	private ISO9660Directory checkDirectory(String name, POSIXFileMode filemode) throws HandlerException {
-		Iterator<ISO9660Directory> it = directories.iterator();
-		while (it.hasNext()) {
-			ISO9660Directory dir = it.next();
-			if (dir.getName().equals(name)) {
-				return dir;
-			}
+		ISO9660Directory dir = getDirectory(name);
+		if (dir!=null) {
+			return dir;
 		}
 		// Not listed -> create a new one and add it to the hierarchy
-		ISO9660Directory dir = addDirectory(name);
+		dir = addDirectory(name);
 		dir.setFileMode(filemode);
 		return dir;
 	}
 	
+	/**
+	 * Returns the subdirectory with the given name (the first one added
+	 * if there are several)
+	 * 
+	 * @param name Name of the subdirectory
+	 * @return Subdirectory or null if not found
+	 */
+	public ISO9660Directory getDirectory(String name) {
+		if (directoryIndex==null) {
+			// Build name index lazily
+			directoryIndex = new HashMap<String, ISO9660Directory>(directories.size() * 2);
+			for (int i = directories.size() - 1; i >= 0; i--) {
+				ISO9660Directory dir = directories.get(i);
+				directoryIndex.put(dir.getName(), dir);
+			}
+		}
+		return directoryIndex.get(name);
+	}
+	
+	/**
+	 * Keeps the files of this directory in a namespace, i.e. as file
+	 * indices (see CompactHierarchy). The directory must not contain any
+	 * files yet.
+	 * 
+	 * @param namespace Namespace
+	 * @param capacity Expected number of files
+	 */
+	void setNamespace(Namespace namespace, int capacity) {
+		namespace.add(this);
+		files = new NamespaceFileList(namespace, this, capacity);
+	}
+	
 	/**
 	 * Force a sort of this directory's files and subdirectories
 	 */
@@ -318,9 +383,25 @@ public class ISO9660Directory implements ISO9660HierarchyObject {
 		sorted = false;
 	}
 	
+	/**
+	 * Force a sort of this directory's contents only (a name compares
+	 * differently, but the order of its files and subdirectories is kept)
+	 */
+	void resetContents() {
+		contents = null;
+	}
+	
 	private void sort() {
-		Collections.sort(files);
+		if (files instanceof NamespaceFileList) {
+			((NamespaceFileList) files).sort();
+		} else {
+			Collections.sort(files);
+		}
 		Collections.sort(directories);
+		// Sorting changes which duplicate name is found first
+		directoryIndex = null;
+		// Replaced rather than modified, it may still be iterated
+		contents = null;
 		sorted = true;
 	}
 	
@@ -328,10 +409,20 @@ public class ISO9660Directory implements ISO9660HierarchyObject {
 	 * Add file
 	 * 
 	 * @param file File to be added
+	 * @return Added file, a copy if the file is part of another namespace
 	 */
 	public ISO9660File addFile(ISO9660File file) {
-		file.setParentDirectory(this);
-		files.add(file);
+		if (files instanceof NamespaceFileList) {
+			// Adopted by the namespace of this directory
+			files.add(file);
+			file = files.get(files.size() - 1);
+		} else {
+			if (file instanceof NamespaceFile) {
+				file = file.clone();
+			}
+			file.setParentDirectory(this);
+			files.add(file);
+		}
 		sorted = false;
 		return file;
 	}
@@ -398,6 +489,28 @@ public class ISO9660Directory implements ISO9660HierarchyObject {
 		addRecursively(file, false, this);
 	}
 
+	/**
+	 * Add file or directory recursively, scanning subtrees in parallel
+	 * 
+	 * @param file File or directory to be added recursively
+	 * @param parallelism Number of scanning threads
+	 * @throws HandlerException Problems reading the file system
+	 */
+	public void addRecursively(File file, int parallelism) throws HandlerException {
+		new FileSystemScanner(parallelism).addRecursively(this, file);
+	}
+	
+	/**
+	 * Add contents of directory recursively, scanning subtrees in parallel
+	 * 
+	 * @param file Directory the contents of which are to be added recursively
+	 * @param parallelism Number of scanning threads
+	 * @throws HandlerException Problems reading the file system
+	 */
+	public void addContentsRecursively(File file, int parallelism) throws HandlerException {
+		new FileSystemScanner(parallelism).addContentsRecursively(this, file);
+	}
+
 	private void addRecursively(File file, boolean addItself, ISO9660Directory parent) throws HandlerException {
 		if (!file.isDirectory() && addItself) {
 			// Add file
@@ -428,11 +541,11 @@ public class ISO9660Directory implements ISO9660HierarchyObject {
 		} else
 		if (object instanceof ISO9660Directory) {
 			ISO9660Directory dir = (ISO9660Directory) object;
-			return getName().toUpperCase().compareTo(dir.getName().toUpperCase());
+			return ISO9660File.compareNames(getName(), dir.getName(), true);
 		} else
 		if (object instanceof ISO9660File) {
 			ISO9660File file = (ISO9660File) object;
-			return getName().toUpperCase().compareTo(file.getFullName().toUpperCase());
+			return -file.compareFullName(getName(), true);
 		} else {
 			throw new ClassCastException();
 		}		
@@ -447,6 +560,10 @@ public class ISO9660Directory implements ISO9660HierarchyObject {
 		return lastModified;
 	}
 
+	void setLastModified(long lastModified) {
+		this.lastModified = lastModified;
+	}
+
 	public boolean isDirectory() {
 		return true;
 	}
@@ -489,21 +606,33 @@ public class ISO9660Directory implements ISO9660HierarchyObject {
 		return id;
 	}
 
+	/**
+	 * Returns the index of this directory within its hierarchy, which is
+	 * the same in all namespaces of the hierarchy (see
+	 * ISO9660RootDirectory.createNamespace())
+	 * 
+	 * @return Directory index or -1 if not indexed
+	 */
+	public int getIndex() {
+		return index;
+	}
+	
+	void setIndex(int index) {
+		this.index = index;
+	}
+
+	/**
+	 * Returns a copy of this directory and its contents. The copies have
+	 * their own names, file modes, dates of last modification and parent
+	 * directories, starting out with those of the originals, and are not
+	 * indexed.
+	 * 
+	 * @return Copy of this directory
+	 */
 	@Override
 	public Object clone() {
-		ISO9660Directory clone = null;
-		try {
-			clone = (ISO9660Directory) super.clone();
-		} catch (CloneNotSupportedException e) {
-			e.printStackTrace();
-		}
-
-		clone.level = level;
-		clone.directories = new ArrayList<ISO9660Directory>();
-		clone.files = new ArrayList<ISO9660File>();
-		clone.id = id;
-		clone.sortedIterator = null;
-		clone.sorted = false;
+		ISO9660Directory clone = copy();
+		clone.index = -1;
 
 		Iterator<ISO9660Directory> dit = directories.iterator();
 		while (dit.hasNext()) {
@@ -511,12 +640,10 @@ public class ISO9660Directory implements ISO9660HierarchyObject {
 			ISO9660Directory subdirClone = (ISO9660Directory) subdir.clone();
 			subdirClone.setParentDirectory(clone);
 			subdirClone.setLevel(level + 1);
-			subdirClone.id = subdir.id;
-			subdirClone.sortedIterator = null;
-			subdirClone.sorted = false;
 			clone.directories.add(subdirClone);
 		}
 
+		clone.files = new ArrayList<ISO9660File>(files.size());
 		Iterator<ISO9660File> fit = files.iterator();
 		while (fit.hasNext()) {
 			ISO9660File file = fit.next();
@@ -527,6 +654,76 @@ public class ISO9660Directory implements ISO9660HierarchyObject {
 
 		return clone;
 	}
+
+	/**
+	 * Indexes this directory, its files and subdirectories (see FileTable)
+	 * 
+	 * @param table Table of the hierarchy
+	 */
+	void index(FileTable table) {
+		table.index(this);
+		if (!(files instanceof NamespaceFileList)) {
+			// Files of a namespace are indexed already
+			Iterator<ISO9660File> fit = files.iterator();
+			while (fit.hasNext()) {
+				table.index(fit.next());
+			}
+		}
+		Iterator<ISO9660Directory> dit = directories.iterator();
+		while (dit.hasNext()) {
+			dit.next().index(table);
+		}
+	}
+
+	/**
+	 * Returns a copy of this directory and its contents for a namespace
+	 * (see ISO9660RootDirectory.createNamespace()). The files are added to
+	 * the namespace by index, the directories keep their indices.
+	 * 
+	 * @param namespace Namespace
+	 * @return Copy of this indexed directory
+	 */
+	ISO9660Directory copy(Namespace namespace) {
+		ISO9660Directory copy = copy();
+		namespace.add(copy);
+
+		Iterator<ISO9660Directory> dit = directories.iterator();
+		while (dit.hasNext()) {
+			ISO9660Directory subdirCopy = dit.next().copy(namespace);
+			subdirCopy.setParentDirectory(copy);
+			subdirCopy.setLevel(level + 1);
+			copy.directories.add(subdirCopy);
+		}
+
+		NamespaceFileList files = new NamespaceFileList(namespace, copy, this.files.size());
+		if (this.files instanceof NamespaceFileList) {
+			files.addCopies((NamespaceFileList) this.files);
+		} else {
+			files.addAll(this.files);
+		}
+		copy.files = files;
+
+		return copy;
+	}
+
+	// Copy without contents
+	private ISO9660Directory copy() {
+		ISO9660Directory copy = null;
+		try {
+			copy = (ISO9660Directory) super.clone();
+		} catch (CloneNotSupportedException e) {
+			e.printStackTrace();
+		}
+
+		copy.directories = new ArrayList<ISO9660Directory>(directories.size());
+		copy.files = null;
+		copy.directoryIndex = null;
+		copy.contents = null;
+		copy.sortedIterator = null;
+		copy.unsortedIterator = null;
+		copy.sorted = false;
+		return copy;
+	}
 	
 	/**
 	 * Returns a directory iterator to traverse the directory hierarchy
@@ -20,7 +20,8 @@
 package de.tu_darmstadt.informatik.rbg.hatlak.iso9660;
 
 import java.io.File;
-import java.util.regex.Matcher;
+import java.io.IOException;
+import java.util.Locale;
 import java.util.regex.Pattern;
 
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.ISO9660Constants;
@@ -28,18 +29,24 @@ import de.tu_darmstadt.informatik.rbg.hatlak.rockridge.impl.POSIXFileMode;
 import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
 
 /**
+ * The attributes of the file (length, date of last modification, hard
+ * link identity) are read once when it is created from a File or path,
+ * see FileAttributes. A file that does not exist or cannot be read
+ * therefore fails with a HandlerException when it is created, not only
+ * when its contents are written.<br>
  * Note: this class has a natural ordering that is inconsistent with equals.
  */
 public class ISO9660File implements ISO9660HierarchyObject {
 	public static final Pattern FILEPATTERN = Pattern.compile("^([^.]+)\\.(.+)$");
 	private boolean enforceDotDelimiter = false;
 	private String filename, extension;
-	private int version;
+	private short version;
 	private boolean enforce8plus3;
 	private ISO9660Directory parent;
-	private Object id;
-	private File file;
 	private POSIXFileMode filemode;
+	private int index = -1;
+	// Shared by all copies of this file, see clone()
+	private Node node;
 
 	private String cachedName = null;
 
@@ -48,13 +55,12 @@ public class ISO9660File implements ISO9660HierarchyObject {
 	 * 
 	 * @param file File
 	 * @param version File version
-	 * @throws HandlerException Invalid File version or file is a directory
+	 * @throws HandlerException Invalid File version, file is a directory or cannot be read
 	 */
 	public ISO9660File(File file, int version) throws HandlerException {
-		this.file = file;
+		this.node = new Node(file, readAttributes(file));
 		setName(file.getName());
 		setVersion(version);
-		id = new Object();
 		enforce8plus3 = false;
 		
 		if (isDirectory()) {
@@ -67,13 +73,13 @@ public class ISO9660File implements ISO9660HierarchyObject {
 	 * 
 	 * @param pathname File
 	 * @param version File version
-	 * @throws HandlerException Invalid File version or file is a directory
+	 * @throws HandlerException Invalid File version, file is a directory or cannot be read
 	 */
 	public ISO9660File(String pathname, int version) throws HandlerException {
-		this.file = new File(pathname);
-		setName(this.file.getName());
+		File file = new File(pathname);
+		this.node = new Node(file, readAttributes(file));
+		setName(file.getName());
 		setVersion(version);
-		id = new Object();
 		enforce8plus3 = false;
 		
 		if (isDirectory()) {
@@ -81,6 +87,37 @@ public class ISO9660File implements ISO9660HierarchyObject {
 		}
 	}
 
+	/**
+	 * Create file from attributes already known, e.g. those of an archive
+	 * entry, without accessing the file system
+	 * 
+	 * @param file File
+	 * @param attributes Attributes of the file
+	 */
+	public ISO9660File(File file, FileAttributes attributes) {
+		this(file, file.getName(), attributes);
+	}
+
+	/**
+	 * Create file from attributes already read (without checking)
+	 * 
+	 * @param file File
+	 * @param name File name
+	 * @param attributes Attributes of the file
+	 */
+	ISO9660File(File file, String name, FileAttributes attributes) {
+		this.node = new Node(file, attributes);
+		setName(name);
+		this.version = 1;
+		enforce8plus3 = false;
+	}
+
+	/**
+	 * Create file whose state is kept elsewhere (see NamespaceFile)
+	 */
+	ISO9660File() {
+	}
+
 	/**
 	 * Create File
 	 * 
@@ -88,7 +125,7 @@ public class ISO9660File implements ISO9660HierarchyObject {
 	 * @throws HandlerException File is a directory
 	 */
 	public ISO9660File(ISO9660File file) throws HandlerException {
-		this(file.file);
+		this(file.getFile(), file.getFile().getName(), file.getAttributes());
 		setFileMode(file.getFileMode());
 	}
 	
@@ -96,7 +133,7 @@ public class ISO9660File implements ISO9660HierarchyObject {
 	 * Create File
 	 * 
 	 * @param file File
-	 * @throws HandlerException File is a directory
+	 * @throws HandlerException File is a directory or cannot be read
 	 */
 	public ISO9660File(File file) throws HandlerException {
 		this(file, 1);
@@ -106,22 +143,30 @@ public class ISO9660File implements ISO9660HierarchyObject {
 	 * Create File
 	 * 
 	 * @param pathname File
-	 * @throws HandlerException File is a directory
+	 * @throws HandlerException File is a directory or cannot be read
 	 */
 	public ISO9660File(String pathname) throws HandlerException {
 		this(pathname, 1);
 	}
 
+	private static FileAttributes readAttributes(File file) throws HandlerException {
+		try {
+			return FileAttributes.read(file);
+		} catch (IOException e) {
+			throw new HandlerException(e);
+		}
+	}
+
 	/**
 	 * Returns the name of the file (without dot)
 	 * 
 	 * @return File name
 	 */
 	public String getFilename() {
-		if (enforce8plus3) {
-			return filename.substring(0, 8);
+		if (enforces8plus3()) {
+			return filename().substring(0, 8);
 		}
-		return filename;
+		return filename();
 	}
 	
 	/**
@@ -130,9 +175,18 @@ public class ISO9660File implements ISO9660HierarchyObject {
 	 * @return File extension
 	 */
 	public String getExtension() {
-		if (enforce8plus3) {
-			return extension.substring(0, 3);
+		if (enforces8plus3()) {
+			return extension().substring(0, 3);
 		}
+		return extension();
+	}
+
+	// Filename and extension as set, i.e. not shortened to 8+3
+	String filename() {
+		return filename;
+	}
+
+	String extension() {
 		return extension;
 	}
 	
@@ -153,7 +207,7 @@ public class ISO9660File implements ISO9660HierarchyObject {
 	 * @param filename File name
 	 */
 	public void setFilename(String filename) {
-                this.cachedName = null;
+		this.cachedName = null;
 		this.filename = filename;
 		if (parent!=null) {
 			parent.forceSort();
@@ -166,7 +220,7 @@ public class ISO9660File implements ISO9660HierarchyObject {
 	 * @param extension File extension
 	 */
 	public void setExtension(String extension) {
-                this.cachedName = null;
+		this.cachedName = null;
 		this.extension = extension;
 		if (parent!=null) {
 			parent.forceSort();
@@ -174,11 +228,11 @@ public class ISO9660File implements ISO9660HierarchyObject {
 	}
 	
 	public void setName(String name) {
-                this.cachedName = null;
-		Matcher m = ISO9660File.FILEPATTERN.matcher(name);
-		if (m.matches()) {
-			filename = m.group(1);
-			extension = m.group(2);
+		this.cachedName = null;
+		int dot = ISO9660File.getExtensionDelimiter(name);
+		if (dot >= 0) {
+			filename = name.substring(0, dot);
+			extension = name.substring(dot + 1);
 		} else {
 			filename = name;
 			extension = "";
@@ -189,6 +243,28 @@ public class ISO9660File implements ISO9660HierarchyObject {
 		}
 	}
 	
+	/**
+	 * Returns the position of the dot that separates filename and extension
+	 * (equivalent to, but cheaper than matching FILEPATTERN)
+	 * 
+	 * @param name File name
+	 * @return Position of the first dot or -1 if the name has no extension
+	 */
+	public static int getExtensionDelimiter(String name) {
+		int dot = name.indexOf('.');
+		if (dot < 1 || dot == name.length() - 1) {
+			return -1;
+		}
+		for (int i = dot + 1; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (c=='\n' || c=='\r' || c=='\u0085' || c=='\u2028' || c=='\u2029') {
+				// Line terminators are not matched by "." in FILEPATTERN
+				return -1;
+			}
+		}
+		return dot;
+	}
+	
 	/**
 	 * Returns the full ISO 9660 filename, i.e. with file version
 	 * 
@@ -198,6 +274,181 @@ public class ISO9660File implements ISO9660HierarchyObject {
 		return new StringBuilder(100).append(getName()).append(";").append(getVersion()).toString();
 	}
 
+	private boolean hasDelimiter() {
+		return extension().length() > 0 || enforcesDotDelimiter();
+	}
+
+	private int nameLength() {
+		return hasDelimiter() ? filename().length() + 1 + extension().length() : filename().length();
+	}
+
+	private int fullNameLength() {
+		int length = nameLength() + 2;
+		for (int version = getVersion(); version >= 10; version /= 10) {
+			length++;
+		}
+		return length;
+	}
+
+	// Character of getFullName() without building it
+	private char fullNameCharAt(int index) {
+		String filename = filename();
+		if (index < filename.length()) {
+			return filename.charAt(index);
+		}
+		index -= filename.length();
+		if (hasDelimiter()) {
+			if (index == 0) {
+				return '.';
+			}
+			index--;
+			String extension = extension();
+			if (index < extension.length()) {
+				return extension.charAt(index);
+			}
+			index -= extension.length();
+		}
+		if (index == 0) {
+			return ';';
+		}
+		int digit = getVersion();
+		for (int i = fullNameLength() - nameLength() - 1 - index; i > 0; i--) {
+			digit /= 10;
+		}
+		return (char) ('0' + digit % 10);
+	}
+
+	private boolean nameEqualsIgnoreCase(ISO9660File file) {
+		int length = nameLength();
+		if (length != file.nameLength()) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			int test = compareASCII(fullNameCharAt(i), file.fullNameCharAt(i), false);
+			if (test == NOT_ASCII) {
+				return getName().equalsIgnoreCase(file.getName());
+			}
+			if (test != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Compares the full name of this file to another name like
+	 * getFullName().compareToIgnoreCase(name) or, in upper case, like
+	 * getFullName().toUpperCase().compareTo(name.toUpperCase()). The
+	 * full name is only built if a character is not ASCII.
+	 * 
+	 * @param name Name to compare to
+	 * @param upperCase Whether to compare the upper case names
+	 * @return Comparison result
+	 */
+	int compareFullName(String name, boolean upperCase) {
+		int length = fullNameLength();
+		if (!upperCase || isASCIIUpperCase()) {
+			int common = Math.min(length, name.length());
+			int i = 0;
+			for (; i < common; i++) {
+				int test = compareASCII(fullNameCharAt(i), name.charAt(i), upperCase);
+				if (test == NOT_ASCII) {
+					break;
+				}
+				if (test != 0) {
+					return test;
+				}
+			}
+			if (i == common && (!upperCase || isASCII(name, common) && isFullNameASCII(common))) {
+				// Upper case forms of other characters may be longer
+				return length - name.length();
+			}
+		}
+		if (upperCase) {
+			return getFullName().toUpperCase().compareTo(name.toUpperCase());
+		}
+		return getFullName().compareToIgnoreCase(name);
+	}
+
+	/**
+	 * Compares two names like name.compareToIgnoreCase(other) or, in
+	 * upper case, like name.toUpperCase().compareTo(other.toUpperCase()),
+	 * without converting ASCII names
+	 * 
+	 * @param name Name
+	 * @param other Name to compare to
+	 * @param upperCase Whether to compare the upper case names
+	 * @return Comparison result
+	 */
+	static int compareNames(String name, String other, boolean upperCase) {
+		if (!upperCase || isASCIIUpperCase()) {
+			int common = Math.min(name.length(), other.length());
+			int i = 0;
+			for (; i < common; i++) {
+				int test = compareASCII(name.charAt(i), other.charAt(i), upperCase);
+				if (test == NOT_ASCII) {
+					break;
+				}
+				if (test != 0) {
+					return test;
+				}
+			}
+			if (i == common && (!upperCase || isASCII(name, common) && isASCII(other, common))) {
+				// Upper case forms of other characters may be longer
+				return name.length() - other.length();
+			}
+		}
+		if (upperCase) {
+			return name.toUpperCase().compareTo(other.toUpperCase());
+		}
+		return name.compareToIgnoreCase(other);
+	}
+
+	private static final int NOT_ASCII = Integer.MIN_VALUE;
+
+	private static boolean isASCII(String name, int start) {
+		for (int i = start; i < name.length(); i++) {
+			if (name.charAt(i) >= 0x80) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean isFullNameASCII(int start) {
+		for (int i = start, length = fullNameLength(); i < length; i++) {
+			if (fullNameCharAt(i) >= 0x80) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Difference of the lower (upper) case ASCII characters, NOT_ASCII otherwise
+	private static int compareASCII(char c, char other, boolean upperCase) {
+		if (c >= 0x80 || other >= 0x80) {
+			return NOT_ASCII;
+		}
+		if (upperCase) {
+			return toUpperCase(c) - toUpperCase(other);
+		}
+		return toLowerCase(c) - toLowerCase(other);
+	}
+
+	private static char toUpperCase(char c) {
+		return c >= 'a' && c <= 'z' ? (char) (c - ('a' - 'A')) : c;
+	}
+
+	private static char toLowerCase(char c) {
+		return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+	}
+
+	// Whether String.toUpperCase() maps ASCII to ASCII in the default locale
+	private static boolean isASCIIUpperCase() {
+		String language = Locale.getDefault().getLanguage();
+		return !language.equals("tr") && !language.equals("az");
+	}
+
 	/**
 	 * Returns the file version
 	 * 
@@ -214,22 +465,26 @@ public class ISO9660File implements ISO9660HierarchyObject {
 	 * @throws HandlerException Invalid file version
 	 */
 	public void setVersion(int version) throws HandlerException {
-		if (version < 1 || version > ISO9660Constants.MAX_FILE_VERSION) {
-			throw new HandlerException("Invalid file version: " + version);
-		}
-		this.version = version;
+		checkVersion(version);
+		this.version = (short) version;
 
 		if (parent!=null) {
 			parent.forceSort();
 		}
 	}
 
+	static void checkVersion(int version) throws HandlerException {
+		if (version < 1 || version > ISO9660Constants.MAX_FILE_VERSION) {
+			throw new HandlerException("Invalid file version: " + version);
+		}
+	}
+
 	public void setFileMode(POSIXFileMode filemode) {
 		this.filemode = filemode;
 	}
 	
 	public POSIXFileMode getFileMode() {
-		return this.filemode;
+		return filemode;
 	}
 	
 	/**
@@ -248,6 +503,9 @@ public class ISO9660File implements ISO9660HierarchyObject {
 	 */
 	public void enforce8plus3(boolean force) {
 		this.enforce8plus3 = force;
+		if (parent!=null) {
+			parent.resetContents();
+		}
 	}
 
 	/**
@@ -265,8 +523,11 @@ public class ISO9660File implements ISO9660HierarchyObject {
 	 * @param force Whether to force this file's name to include the dot character
 	 */
 	public void enforceDotDelimiter(boolean force) {
-                this.cachedName = null;
+		this.cachedName = null;
 		this.enforceDotDelimiter = force;
+		if (parent!=null) {
+			parent.resetContents();
+		}
 	}
 
 	public int compareTo(ISO9660HierarchyObject object) throws ClassCastException, NullPointerException {
@@ -277,8 +538,9 @@ public class ISO9660File implements ISO9660HierarchyObject {
 		if (object instanceof ISO9660File) {
 			ISO9660File file = (ISO9660File) object;
 
-			if (getName().equalsIgnoreCase(file.getName())) {
+			if (nameEqualsIgnoreCase(file)) {
 				// Same name -> ensure descending version order (see ISO9660:9.3)
+				int version = getVersion();
 				if (version > file.getVersion()) {
 					// This version is greater -> This file comes first 
 					return -1;
@@ -289,18 +551,18 @@ public class ISO9660File implements ISO9660HierarchyObject {
 				} // else: versions are equal -> file will be renamed later
 			} // else: Compare filenames
 			
-                        int test = getFilename().compareToIgnoreCase(file.getFilename());
+			int test = compareNames(getFilename(), file.getFilename(), false);
 
 			if (test!=0) {
 				// Different filenames -> no need to check extension 
 				return test;
 			} // else: Compare extensions
 			
-                        return getExtension().compareToIgnoreCase(file.getExtension());
+			return compareNames(getExtension(), file.getExtension(), false);
 		} else
 		if (object instanceof ISO9660Directory) {
 			ISO9660Directory dir = (ISO9660Directory) object;
-                        return getFullName().compareToIgnoreCase(dir.getName());
+			return compareFullName(dir.getName(), false);
 		} else {
 			throw new ClassCastException();			
 		}		
@@ -308,15 +570,19 @@ public class ISO9660File implements ISO9660HierarchyObject {
 	
 	@Override
 	public boolean equals(Object toCompare) {
+		if (toCompare == this) {
+			return true;
+		}
 		if (toCompare instanceof ISO9660File) {
-			return ((ISO9660File) toCompare).getContentID().equals(getContentID());
+			// Same source file, shared contents are tracked by content ID
+			return ((ISO9660File) toCompare).getFile().equals(getFile());
 		}
 		return false;
 	}
 
 	@Override
 	public int hashCode() {
-		return file.hashCode();
+		return getFile().hashCode();
 	}
 
 	void setParentDirectory(ISO9660Directory parent) {
@@ -328,6 +594,7 @@ public class ISO9660File implements ISO9660HierarchyObject {
 	}
 	
 	public String getISOPath() throws NullPointerException {
+		ISO9660Directory parent = getParentDirectory();
 		if (parent==null) {
 			throw new NullPointerException("Cannot determine path without parent directory.");
 		}
@@ -337,7 +604,22 @@ public class ISO9660File implements ISO9660HierarchyObject {
 
 	public Object getID() {
 		// Identification of the ISO9660File, survives cloning
-		return id;
+		return node;
+	}
+
+	/**
+	 * Returns the index of this file within its hierarchy, which is the
+	 * same in all namespaces of the hierarchy (see
+	 * ISO9660RootDirectory.createNamespace())
+	 * 
+	 * @return File index or -1 if not indexed
+	 */
+	public int getIndex() {
+		return index;
+	}
+	
+	void setIndex(int index) {
+		this.index = index;
 	}
 	
 	/**
@@ -347,9 +629,44 @@ public class ISO9660File implements ISO9660HierarchyObject {
 	 */
 	public Object getContentID() {
 		// Identification of the underlying File, may be shared across ISO9660Files 
+		if (node.contentID!=null) {
+			return node.contentID;
+		}
 		return new Integer(hashCode());
 	}
 	
+	/**
+	 * Set content ID, e.g. to share the contents of identical files
+	 * (see ContentDeduplicator)
+	 * 
+	 * @param contentID Content ID
+	 */
+	public void setContentID(Object contentID) {
+		node.contentID = contentID;
+	}
+
+	/**
+	 * Returns the number of hard links to this file within the image
+	 * (see HardlinkDetector)
+	 * 
+	 * @return Link count, 1 if no hard links have been detected
+	 */
+	public int getLinks() {
+		return node.links;
+	}
+
+	void setLinks(int links) {
+		node.links = links;
+	}
+
+	boolean contentsCompared() {
+		return node.contentsCompared;
+	}
+	
+	void setContentsCompared() {
+		node.contentsCompared = true;
+	}
+	
 	public ISO9660RootDirectory getRoot() throws NullPointerException {
 		if (getParentDirectory()==null) {
 			throw new NullPointerException("Cannot determine root without parent directory.");
@@ -358,38 +675,96 @@ public class ISO9660File implements ISO9660HierarchyObject {
 	}
 	
 	public boolean isDirectory() {
-		return file.isDirectory();
+		return getAttributes().isDirectory();
 	}
 	
+	/**
+	 * Returns file length as of when the file was added
+	 * 
+	 * @return File length
+	 */
 	public long length() {
-		return file.length();
+		return getAttributes().length();
 	}
 	
+	/**
+	 * Returns date of last modification as of when the file was added
+	 * 
+	 * @return Date of last modification
+	 */
 	public long lastModified() {
-		return file.lastModified();
+		return getAttributes().lastModified();
+	}
+	
+	/**
+	 * Returns the attributes read when the file was added
+	 * 
+	 * @return Attribute snapshot
+	 */
+	public FileAttributes getAttributes() {
+		return node.attributes;
 	}
 	
 	public File getAbsoluteFile() {
-		return file.getAbsoluteFile();
+		return getFile().getAbsoluteFile();
 	}
 
 	public String getAbsolutePath() {
-		return file.getAbsolutePath();
+		return getFile().getAbsolutePath();
 	}
 	
 	public File getFile() {
-		return file;
+		return node.file;
 	}
 	
+	/**
+	 * Returns a copy of this file. The copy has its own names, file mode
+	 * and parent directory, starting out with those of this file, and is
+	 * not indexed; the underlying file, its attributes and content ID are
+	 * shared.
+	 * 
+	 * @return Copy of this file
+	 */
 	@Override
 	public ISO9660File clone() {
 		ISO9660File clone = null;
 		try {
 			clone = (ISO9660File) super.clone();
-			clone.id = id;
+			clone.index = -1;
 		} catch (CloneNotSupportedException e) {
 			e.printStackTrace();
 		}
 		return clone;
 	}
+
+	/**
+	 * Takes over the names, version and file mode of another file
+	 * 
+	 * @param file File to copy from
+	 */
+	void copyNames(ISO9660File file) {
+		this.filename = file.filename();
+		this.extension = file.extension();
+		this.version = (short) file.getVersion();
+		this.enforce8plus3 = file.enforces8plus3();
+		this.enforceDotDelimiter = file.enforcesDotDelimiter();
+		this.filemode = file.getFileMode();
+		this.cachedName = null;
+	}
+
+	/**
+	 * State of a file shared by all of its copies
+	 */
+	private static class Node {
+		private File file;
+		private FileAttributes attributes;
+		private Object contentID;
+		private boolean contentsCompared = false;
+		private int links = 1;
+
+		Node(File file, FileAttributes attributes) {
+			this.file = file;
+			this.attributes = attributes;
+		}
+	}
 }
@@ -20,7 +20,6 @@
 package de.tu_darmstadt.informatik.rbg.hatlak.iso9660;
 
 import java.io.File;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.ISO9660Constants;
@@ -117,10 +116,10 @@ public class ISO9660MovedDirectory implements ISO9660HierarchyObject {
 	}
 	
 	public void setName(String name) {
-		Matcher m = ISO9660File.FILEPATTERN.matcher(name);
-		if (m.matches()) {
-			filename = m.group(1);
-			extension = m.group(2);
+		int dot = ISO9660File.getExtensionDelimiter(name);
+		if (dot >= 0) {
+			filename = name.substring(0, dot);
+			extension = name.substring(dot + 1);
 		} else {
 			filename = name;
 			extension = "";
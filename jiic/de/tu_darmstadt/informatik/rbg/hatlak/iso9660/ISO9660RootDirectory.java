@@ -27,6 +27,10 @@ public class ISO9660RootDirectory extends ISO9660Directory {
 	 */
 	public static String MOVED_DIRECTORIES_STORE_NAME = "rr_moved";
 	private ISO9660Directory movedDirectoriesStore;
+	// Files and directories by index, shared by all namespaces
+	private FileTable table;
+	// Arrays of this namespace, null if this is not a namespace
+	private Namespace namespace;
 	
 	/**
 	 * Root of the directory hierarchy<br>
@@ -38,6 +42,19 @@ public class ISO9660RootDirectory extends ISO9660Directory {
 		setRoot(this);
 	}
 
+	/**
+	 * Create root of a namespace whose files are kept by its table (see
+	 * CompactHierarchy)
+	 * 
+	 * @param namespace Namespace
+	 */
+	ISO9660RootDirectory(Namespace namespace) {
+		this();
+		this.namespace = namespace;
+		this.table = namespace.getTable();
+		setNamespace(namespace, 16);
+	}
+
 	/**
 	 * Create and Add Moved Directories Store to Directory Hierarchy
 	 */
@@ -92,9 +109,85 @@ public class ISO9660RootDirectory extends ISO9660Directory {
 		return count;
 	}
 	
+	/**
+	 * Returns a copy of the directory hierarchy for a namespace, e.g. ISO
+	 * 9660, Joliet or Rock Ridge. Its directories are copies of those of
+	 * this hierarchy, but its files are kept as arrays of names, versions,
+	 * flags and file modes by file index, so that a namespace does not
+	 * copy the file objects. Names, version, flags and file mode start out
+	 * as those of this hierarchy and are changed per namespace; the
+	 * underlying file, its attributes, content ID and link count are
+	 * shared.<br>
+	 * Files and directories are indexed once, when the first namespace
+	 * containing them is created, and keep their index: the same file or
+	 * directory has the same index in all namespaces of this hierarchy
+	 * (see getIndexedFile() and getIndexedDirectory()).
+	 * 
+	 * @return Root of the namespace
+	 */
+	public ISO9660RootDirectory createNamespace() {
+		FileTable table = getTable();
+		index(table);
+		Namespace namespace = new Namespace(table);
+		ISO9660RootDirectory copy = (ISO9660RootDirectory) copy(namespace);
+		copy.namespace = namespace;
+		copy.table = table;
+		copy.setParentDirectory(copy);
+		copy.setRoot(copy);
+		if (movedDirectoriesStore!=null) {
+			copy.movedDirectoriesStore = namespace.getDirectory(movedDirectoriesStore.getIndex());
+		}
+		
+		// Update Root for subdirectories
+		Iterator<ISO9660Directory> it = copy.unsortedIterator();
+		while (it.hasNext()) {
+			ISO9660Directory dir = it.next();
+			dir.setRoot(copy);
+		}
+		
+		return copy;
+	}
+	
+	private FileTable getTable() {
+		if (table==null) {
+			table = new FileTable();
+		}
+		return table;
+	}
+	
+	/**
+	 * Returns the file with the given index of this namespace (see
+	 * createNamespace())
+	 * 
+	 * @param index File index
+	 * @return File or null if not part of this namespace
+	 */
+	public ISO9660File getIndexedFile(int index) {
+		return namespace!=null ? namespace.getFile(index) : null;
+	}
+	
+	/**
+	 * Returns the directory with the given index of this namespace (see
+	 * createNamespace())
+	 * 
+	 * @param index Directory index
+	 * @return Directory or null if not part of this namespace
+	 */
+	public ISO9660Directory getIndexedDirectory(int index) {
+		return namespace!=null ? namespace.getDirectory(index) : null;
+	}
+	
+	/**
+	 * Returns a copy of the directory hierarchy (see ISO9660Directory.clone()),
+	 * which is not a namespace of this hierarchy
+	 * 
+	 * @return Copy of the directory hierarchy
+	 */
 	@Override
 	public Object clone() {
 		ISO9660RootDirectory clone = (ISO9660RootDirectory) super.clone();
+		clone.namespace = null;
+		clone.table = null;
 		clone.setParentDirectory(clone);
 		clone.setRoot(clone);
 		
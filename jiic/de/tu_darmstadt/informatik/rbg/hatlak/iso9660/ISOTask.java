@@ -25,17 +25,21 @@ import java.util.Iterator;
 
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.Project;
 import org.apache.tools.ant.taskdefs.MatchingTask;
 import org.apache.tools.ant.types.FileSet;
 
 import de.tu_darmstadt.informatik.rbg.hatlak.eltorito.impl.ElToritoConfig;
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.CreateISO;
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.ISO9660Config;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.ISOImageChannelHandler;
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.ISOImageFileHandler;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.MeteredOutput;
 import de.tu_darmstadt.informatik.rbg.hatlak.joliet.impl.JolietConfig;
 import de.tu_darmstadt.informatik.rbg.hatlak.rockridge.impl.POSIXFileMode;
 import de.tu_darmstadt.informatik.rbg.hatlak.rockridge.impl.RockRidgeConfig;
 import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.StreamHandler;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -47,8 +51,10 @@ public class ISOTask extends MatchingTask {
 	private boolean allowASCII, restrictDirDepthTo8, forceDotDelimiter,
 		mkisofsCompatibility, forcePortableFilenameCharacterSet,
 		enableJoliet, enableRockRidge, hideMovedDirectoriesStore, verbose,
-		genBootInfoTable, padEnd, allowLongJolietNames;
-	private int interchangeLevel, bootImageSectorCount, bootImageLoadSegment;
+		genBootInfoTable, padEnd, allowLongJolietNames, deduplicate,
+		detectHardlinks, metrics, progress, channelOutput;
+	private int interchangeLevel, bootImageSectorCount, bootImageLoadSegment,
+		contentThreads, namingThreads, writeBuffers, scanThreads;
 
 	@Override
 	public void init() {
@@ -67,12 +73,21 @@ public class ISOTask extends MatchingTask {
 		enableRockRidge = true;
 		hideMovedDirectoriesStore = true;
 		verbose = false;
+		metrics = false;
+		progress = false;
+		channelOutput = false;
 		bootImageSectorCount = 1;
 		bootImageLoadSegment = ElToritoConfig.LOAD_SEGMENT_7C0;
 		bootImageEmulation = bootImagePlatformID = "";
 		genBootInfoTable = false;
 		padEnd = true;
 		allowLongJolietNames = false;
+		deduplicate = false;
+		detectHardlinks = false;
+		contentThreads = 1;
+		writeBuffers = 0;
+		scanThreads = 1;
+		namingThreads = 1;
 	}
 
 	@Override
@@ -91,10 +106,25 @@ public class ISOTask extends MatchingTask {
 			// Verbosity
 			NamingConventions.VERBOSE = verbose;
 			
+			// Measurements for the log and JFR, only taken if requested
+			BuildReport report = null;
+			List<BuildMetrics> buildMetrics = new ArrayList<BuildMetrics>();
+			if (verbose || metrics) {
+				report = new BuildReport();
+				buildMetrics.add(report);
+				BuildMetrics jfrMetrics = createJFRMetrics();
+				if (jfrMetrics!=null) {
+					buildMetrics.add(jfrMetrics);
+				}
+			}
+			
 			// Build directory hierarchy
 			ISO9660RootDirectory.MOVED_DIRECTORIES_STORE_NAME = movedDirectoriesStoreName;
 			ISO9660RootDirectory root = new ISO9660RootDirectory();
+			PhaseTimer timer = new PhaseTimer(buildMetrics);
+			timer.start("Scan");
 			createHierarchy(root);
+			timer.end();
 
 			File copyrightFileObj = null;
 			if (copyrightFile!=null) {
@@ -112,6 +142,9 @@ public class ISOTask extends MatchingTask {
 			iso9660Config.forceDotDelimiter(forceDotDelimiter);
 			iso9660Config.setInterchangeLevel(interchangeLevel);
 			iso9660Config.setPadEnd(padEnd);
+			iso9660Config.deduplicateContents(deduplicate);
+			iso9660Config.detectHardlinks(detectHardlinks);
+			iso9660Config.setNamingThreads(namingThreads);
 			if (copyrightFileObj!=null) {
 				iso9660Config.setCopyrightFile(copyrightFileObj);
 			}
@@ -137,6 +170,7 @@ public class ISOTask extends MatchingTask {
 				jolietConfig.setDataPreparer(dataPreparer);
 				jolietConfig.forceDotDelimiter(forceDotDelimiter);
 				jolietConfig.allowLongNames(allowLongJolietNames);
+				jolietConfig.setNamingThreads(namingThreads);
 				if (copyrightFileObj!=null) {
 					jolietConfig.setCopyrightFile(copyrightFileObj);
 				}
@@ -152,8 +186,46 @@ public class ISOTask extends MatchingTask {
 				elToritoConfig.setGenBootInfoTable(genBootInfoTable);
 			}
 	
-			CreateISO iso = new CreateISO(new ISOImageFileHandler(destFile), root);
-			iso.process(iso9660Config, rrConfig, jolietConfig, elToritoConfig);
+			StreamHandler streamHandler;
+			if (channelOutput || contentThreads > 1) {
+				// File contents are transferred by the channel, optionally in parallel
+				ISOImageChannelHandler channelHandler = new ISOImageChannelHandler(destFile);
+				channelHandler.setContentThreads(contentThreads);
+				streamHandler = channelHandler;
+			} else {
+				ISOImageFileHandler fileHandler = new ISOImageFileHandler(destFile);
+				fileHandler.setWriteBuffers(writeBuffers);
+				streamHandler = fileHandler;
+			}
+			CreateISO iso = new CreateISO(streamHandler, root);
+			Iterator<BuildMetrics> it = buildMetrics.iterator();
+			while (it.hasNext()) {
+				iso.addBuildMetrics(it.next());
+			}
+			ProgressLogger progressLogger = null;
+			if (progress) {
+				progressLogger = new ProgressLogger();
+				iso.addProgressListener(progressLogger);
+			}
+			try {
+				iso.process(iso9660Config, rrConfig, jolietConfig, elToritoConfig);
+			} finally {
+				if (progressLogger!=null) {
+					progressLogger.unregister();
+				}
+			}
+			if (report!=null) {
+				log(report.toString(), metrics ? Project.MSG_INFO : Project.MSG_VERBOSE);
+			}
+			if (streamHandler instanceof ISOImageChannelHandler) {
+				ISOImageChannelHandler channelHandler = (ISOImageChannelHandler) streamHandler;
+				log("Fixups: " + channelHandler.getBufferedPatchCount() + " patched in buffer, "
+						+ channelHandler.getJournaledPatchCount() + " journaled ("
+						+ channelHandler.getJournalWriteCount() + " writes)", Project.MSG_VERBOSE);
+			}
+			MeteredOutput output = (MeteredOutput) streamHandler;
+			log("Output: " + output.getSeekCount() + " seeks, " + output.getStallCount() + " stalls ("
+					+ output.getStallTime() / 1000000 + " ms)", Project.MSG_VERBOSE);
 			log("Successfully created ISO image " + destFile + ".");
 		} catch (ConfigException ce) {
 			throw new BuildException(ce);
@@ -163,6 +235,42 @@ public class ISOTask extends MatchingTask {
 		}
 	}
 	
+	/**
+	 * Logs the progress reports. Except for the final one, they are made by
+	 * the thread of the progress reporter, which is registered with the
+	 * project for this task.
+	 */
+	private class ProgressLogger implements ProgressListener {
+		private Thread owner = Thread.currentThread(), thread = null;
+
+		public synchronized void progress(BuildProgress progress) {
+			if (thread==null && Thread.currentThread()!=owner) {
+				thread = Thread.currentThread();
+				getProject().registerThreadTask(thread, ISOTask.this);
+			}
+			log(progress.toString());
+		}
+
+		synchronized void unregister() {
+			if (thread!=null) {
+				getProject().registerThreadTask(thread, null);
+				thread = null;
+			}
+		}
+	}
+
+	private static BuildMetrics createJFRMetrics() {
+		try {
+			return (BuildMetrics) Class.forName("de.tu_darmstadt.informatik.rbg.hatlak.iso9660.jfr.JFRBuildMetrics").getDeclaredConstructor().newInstance();
+		} catch (Exception e) {
+			// Not compiled (see build.xml)
+			return null;
+		} catch (LinkageError e) {
+			// No JFR before JDK 11
+			return null;
+		}
+	}
+	
 	private int getBootEmulation() {
 		if (bootImageEmulation.matches(".*1.*2.*")) {
 			// 1.2 MB diskette
@@ -250,6 +358,14 @@ public class ISOTask extends MatchingTask {
 
         // Add files
 		String[] files = ds.getIncludedFiles();
+		File[] sources = new File[files.length];
+		for (int i = 0; i < files.length; i++) {
+			sources[i] = new File(ds.getBasedir(), files[i]);
+		}
+		FileAttributes[] attributes = null;
+		if (scanThreads > 1) {
+			attributes = new FileSystemScanner(scanThreads).readAttributes(sources);
+		}
         for (int i = 0; i < files.length; i++) {
         	ISO9660Directory dir = root;
         	String path = checkPrefix(files[i], prefix);
@@ -257,7 +373,8 @@ public class ISOTask extends MatchingTask {
         		path = path.substring(0, path.lastIndexOf(File.separator));
             	dir = root.addPath(path, dirmode);
         	}
-            ISO9660File file = dir.addFile(new File(ds.getBasedir(), files[i]));
+            ISO9660File file = attributes==null ? dir.addFile(sources[i])
+            		: dir.addFile(new ISO9660File(sources[i], attributes[i]));
             file.setFileMode(filemode);
         }		
 	}
@@ -392,4 +509,40 @@ public class ISOTask extends MatchingTask {
 	public void setAllowLongJolietNames(boolean allow) {
 		this.allowLongJolietNames = allow;
 	}
+
+	public void setContentThreads(int contentThreads) {
+		this.contentThreads = contentThreads;
+	}
+
+	public void setNamingThreads(int namingThreads) {
+		this.namingThreads = namingThreads;
+	}
+
+	public void setDeduplicate(boolean deduplicate) {
+		this.deduplicate = deduplicate;
+	}
+
+	public void setDetectHardlinks(boolean detectHardlinks) {
+		this.detectHardlinks = detectHardlinks;
+	}
+
+	public void setScanThreads(int scanThreads) {
+		this.scanThreads = scanThreads;
+	}
+
+	public void setWriteBuffers(int writeBuffers) {
+		this.writeBuffers = writeBuffers;
+	}
+
+	public void setMetrics(boolean metrics) {
+		this.metrics = metrics;
+	}
+
+	public void setProgress(boolean progress) {
+		this.progress = progress;
+	}
+
+	public void setChannelOutput(boolean channelOutput) {
+		this.channelOutput = channelOutput;
+	}
 }
@@ -0,0 +1,135 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package de.tu_darmstadt.informatik.rbg.hatlak.iso9660;
+
+/**
+ * Replaces characters not allowed by a naming convention with an
+ * underscore, using a lookup table for the ASCII range. Characters are
+ * examined per code point, i.e. a surrogate pair counts as a single
+ * character. Instances are immutable and thus thread-safe.
+ */
+public final class NameNormalizer {
+	private static final char REPLACEMENT = '_';
+	private final boolean[] allowed = new boolean[128];
+	private final boolean allowNonASCII;
+
+	private NameNormalizer(String characters, boolean allow) {
+		for (int i = 0; i < allowed.length; i++) {
+			allowed[i] = !allow;
+		}
+		for (int i = 0; i < characters.length(); i++) {
+			allowed[characters.charAt(i)] = allow;
+		}
+		this.allowNonASCII = !allow;
+	}
+
+	/**
+	 * Create normalizer that only keeps the given ASCII characters
+	 * 
+	 * @param characters Allowed characters
+	 * @return Name normalizer
+	 */
+	public static NameNormalizer allowing(String characters) {
+		return new NameNormalizer(characters, true);
+	}
+
+	/**
+	 * Create normalizer that replaces the given ASCII characters only
+	 * 
+	 * @param characters Forbidden characters
+	 * @return Name normalizer
+	 */
+	public static NameNormalizer forbidding(String characters) {
+		return new NameNormalizer(characters, false);
+	}
+
+	/**
+	 * Returns whether a character is kept
+	 * 
+	 * @param codePoint Character
+	 * @return Whether the character is allowed
+	 */
+	public boolean isAllowed(int codePoint) {
+		if (codePoint < allowed.length) {
+			return allowed[codePoint];
+		}
+		return allowNonASCII;
+	}
+
+	/**
+	 * Replace all characters that are not allowed
+	 * 
+	 * @param name Name
+	 * @return Normalized name (the same String if nothing was replaced)
+	 */
+	public String normalize(String name) {
+		return normalize(name, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Replace all characters that are not allowed and shorten the result
+	 * 
+	 * @param name Name
+	 * @param maxLength Maximum length of the result
+	 * @return Normalized name (the same String if nothing was changed)
+	 */
+	public String normalize(String name, int maxLength) {
+		int length = name.length();
+		
+		// Skip the part that can be kept as is
+		int start = 0;
+		while (start < length && start < maxLength) {
+			char c = name.charAt(start);
+			if (c < allowed.length ? !allowed[c] : !allowNonASCII) {
+				break;
+			}
+			start++;
+		}
+		if (start == length) {
+			return name;
+		}
+		if (start == maxLength) {
+			return name.substring(0, maxLength);
+		}
+
+		char[] chars = new char[Math.min(length, maxLength)];
+		name.getChars(0, start, chars, 0);
+		int count = start;
+		int i = start;
+		while (i < length && count < chars.length) {
+			int codePoint = name.codePointAt(i);
+			int charCount = Character.charCount(codePoint);
+			if (isAllowed(codePoint)) {
+				if (charCount == 2 && count + 1 == chars.length) {
+					// Cut a surrogate pair like String.substring() does
+					chars[count++] = name.charAt(i);
+				} else {
+					name.getChars(i, i + charCount, chars, count);
+					count += charCount;
+				}
+			} else {
+				chars[count++] = REPLACEMENT;
+			}
+			i += charCount;
+		}
+		return new String(chars, 0, count);
+	}
+}
@@ -0,0 +1,259 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package de.tu_darmstadt.informatik.rbg.hatlak.iso9660;
+
+import java.util.Arrays;
+
+import de.tu_darmstadt.informatik.rbg.hatlak.rockridge.impl.POSIXFileMode;
+
+/**
+ * Copy of a directory hierarchy for one namespace, e.g. ISO 9660, Joliet
+ * or Rock Ridge (see ISO9660RootDirectory.createNamespace()). Its
+ * directories are ISO9660Directory objects; its files are kept in arrays
+ * by file index (see FileTable), so that a file costs a few array slots
+ * per namespace instead of an ISO9660File each. The files listed by a
+ * namespace directory are views of these arrays (see NamespaceFile).<br>
+ * The names, version, 8+3 and dot delimiter flags and file mode of a
+ * file belong to the namespace and start out as those of the file the
+ * namespace was created from. Everything else is shared by all
+ * namespaces of the hierarchy.<br>
+ * Different files may be renamed by different threads at the same time.
+ */
+class Namespace {
+	private static final byte ENFORCE_8PLUS3 = 1, ENFORCE_DOT_DELIMITER = 2, FILE_MODE = 4;
+	
+	private FileTable table;
+	// Names and versions (null and 0: those of the table)
+	private String[] filenames, extensions;
+	private short[] versions;
+	private byte[] flags;
+	// File modes (see FILE_MODE, null until a file mode is set)
+	private POSIXFileMode[] fileModes;
+	// Index of the parent directory, -1 if the file is not part of the namespace
+	private int[] parents;
+	private ISO9660Directory[] directories;
+	
+	/**
+	 * Create namespace for the files and directories indexed so far
+	 * 
+	 * @param table Table of the hierarchy
+	 */
+	Namespace(FileTable table) {
+		this.table = table;
+		int count = Math.max(table.getFileCount(), 1);
+		this.filenames = new String[count];
+		this.extensions = new String[count];
+		this.versions = new short[count];
+		this.flags = new byte[count];
+		this.parents = new int[count];
+		Arrays.fill(parents, -1);
+		this.directories = new ISO9660Directory[Math.max(table.getDirCount(), 1)];
+	}
+	
+	FileTable getTable() {
+		return table;
+	}
+	
+	private void ensureCapacity(int count) {
+		if (count <= parents.length) {
+			return;
+		}
+		int size = Math.max(count, parents.length + (parents.length >> 1));
+		filenames = Arrays.copyOf(filenames, size);
+		extensions = Arrays.copyOf(extensions, size);
+		versions = Arrays.copyOf(versions, size);
+		flags = Arrays.copyOf(flags, size);
+		if (fileModes != null) {
+			fileModes = Arrays.copyOf(fileModes, size);
+		}
+		int length = parents.length;
+		parents = Arrays.copyOf(parents, size);
+		Arrays.fill(parents, length, size, -1);
+	}
+	
+	/**
+	 * Adds a file, which is indexed if necessary
+	 * 
+	 * @param file File (of this or another namespace or a file object)
+	 * @return File index
+	 */
+	int add(ISO9660File file) {
+		if (file instanceof NamespaceFile) {
+			NamespaceFile view = (NamespaceFile) file;
+			Namespace namespace = view.getNamespace();
+			if (namespace == this) {
+				return view.getIndex();
+			}
+			if (namespace.table == table) {
+				copy(namespace, view.getIndex());
+				return view.getIndex();
+			}
+			// File of another hierarchy
+			file = view.clone();
+		}
+		int index = table.index(file);
+		ensureCapacity(index + 1);
+		filenames[index] = file.filename();
+		extensions[index] = file.extension();
+		versions[index] = (short) file.getVersion();
+		flags[index] = 0;
+		set(index, ENFORCE_8PLUS3, file.enforces8plus3());
+		set(index, ENFORCE_DOT_DELIMITER, file.enforcesDotDelimiter());
+		setFileMode(index, file.getFileMode());
+		return index;
+	}
+	
+	/**
+	 * Copies the names, version, flags and file mode of a file of another
+	 * namespace of the same hierarchy
+	 * 
+	 * @param namespace Other namespace
+	 * @param index File index
+	 */
+	void copy(Namespace namespace, int index) {
+		ensureCapacity(index + 1);
+		filenames[index] = namespace.filenames[index];
+		extensions[index] = namespace.extensions[index];
+		versions[index] = namespace.versions[index];
+		flags[index] = namespace.flags[index];
+		if ((flags[index] & FILE_MODE) != 0) {
+			setFileMode(index, namespace.getFileMode(index));
+		}
+	}
+	
+	/**
+	 * Adds a directory, which is indexed if necessary
+	 * 
+	 * @param dir Directory of this namespace
+	 */
+	void add(ISO9660Directory dir) {
+		int index = table.index(dir);
+		if (index >= directories.length) {
+			directories = Arrays.copyOf(directories, Math.max(index + 1, directories.length * 2));
+		}
+		directories[index] = dir;
+	}
+	
+	/**
+	 * Returns a view of a file
+	 * 
+	 * @param index File index
+	 * @return File or null if the file is not part of this namespace
+	 */
+	ISO9660File getFile(int index) {
+		if (index < 0 || index >= parents.length || parents[index] < 0) {
+			return null;
+		}
+		return new NamespaceFile(this, index);
+	}
+	
+	/**
+	 * Returns a directory
+	 * 
+	 * @param index Directory index
+	 * @return Directory or null if the directory is not part of this namespace
+	 */
+	ISO9660Directory getDirectory(int index) {
+		if (index < 0 || index >= directories.length) {
+			return null;
+		}
+		return directories[index];
+	}
+	
+	ISO9660Directory getParent(int index) {
+		int parent = parents[index];
+		return parent >= 0 ? directories[parent] : null;
+	}
+	
+	void setParent(int index, ISO9660Directory parent) {
+		if (parent == null) {
+			parents[index] = -1;
+		} else {
+			add(parent);
+			parents[index] = parent.getIndex();
+		}
+	}
+	
+	String getFilename(int index) {
+		String filename = filenames[index];
+		return filename != null ? filename : table.getFilename(index);
+	}
+	
+	String getExtension(int index) {
+		String extension = extensions[index];
+		return extension != null ? extension : table.getExtension(index);
+	}
+	
+	void setNames(int index, String filename, String extension) {
+		filenames[index] = filename;
+		extensions[index] = extension;
+	}
+	
+	int getVersion(int index) {
+		int version = versions[index];
+		return version != 0 ? version : table.getVersion(index);
+	}
+	
+	void setVersion(int index, int version) {
+		versions[index] = (short) version;
+	}
+	
+	boolean enforces8plus3(int index) {
+		return (flags[index] & ENFORCE_8PLUS3) != 0;
+	}
+	
+	void enforce8plus3(int index, boolean force) {
+		set(index, ENFORCE_8PLUS3, force);
+	}
+	
+	boolean enforcesDotDelimiter(int index) {
+		return (flags[index] & ENFORCE_DOT_DELIMITER) != 0;
+	}
+	
+	void enforceDotDelimiter(int index, boolean force) {
+		set(index, ENFORCE_DOT_DELIMITER, force);
+	}
+	
+	POSIXFileMode getFileMode(int index) {
+		if ((flags[index] & FILE_MODE) == 0) {
+			return table.getFileMode(index);
+		}
+		return fileModes != null ? fileModes[index] : null;
+	}
+	
+	void setFileMode(int index, POSIXFileMode filemode) {
+		if (filemode != null && fileModes == null) {
+			fileModes = new POSIXFileMode[parents.length];
+		}
+		if (fileModes != null) {
+			fileModes[index] = filemode;
+		}
+		set(index, FILE_MODE, true);
+	}
+	
+	private void set(int index, byte flag, boolean value) {
+		if (value) {
+			flags[index] |= flag;
+		} else {
+			flags[index] &= ~flag;
+		}
+	}
+}
@@ -0,0 +1,232 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package de.tu_darmstadt.informatik.rbg.hatlak.iso9660;
+
+import java.io.File;
+
+import de.tu_darmstadt.informatik.rbg.hatlak.rockridge.impl.POSIXFileMode;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
+
+/**
+ * File of a namespace: a view of the file with a given index, which
+ * reads and writes the arrays of the namespace (see Namespace). Views are
+ * created when needed, e.g. when the files of a directory are listed, and
+ * all views of a file see the same state.
+ */
+class NamespaceFile extends ISO9660File {
+	private Namespace namespace;
+	private int index;
+	
+	NamespaceFile(Namespace namespace, int index) {
+		this.namespace = namespace;
+		this.index = index;
+	}
+	
+	Namespace getNamespace() {
+		return namespace;
+	}
+	
+	/**
+	 * Turns this view into a view of another file of the namespace
+	 * 
+	 * @param index File index
+	 */
+	void setFileIndex(int index) {
+		this.index = index;
+	}
+	
+	@Override
+	String filename() {
+		return namespace.getFilename(index);
+	}
+	
+	@Override
+	String extension() {
+		return namespace.getExtension(index);
+	}
+	
+	@Override
+	public String getName() {
+		String extension = extension();
+		if (!extension.equals("") || enforcesDotDelimiter()) {
+			return new StringBuilder(100).append(filename()).append(".").append(extension).toString();
+		}
+		return filename();
+	}
+	
+	@Override
+	public void setFilename(String filename) {
+		namespace.setNames(index, filename, extension());
+		sortParent();
+	}
+	
+	@Override
+	public void setExtension(String extension) {
+		namespace.setNames(index, filename(), extension);
+		sortParent();
+	}
+	
+	@Override
+	public void setName(String name) {
+		int dot = ISO9660File.getExtensionDelimiter(name);
+		if (dot >= 0) {
+			namespace.setNames(index, name.substring(0, dot), name.substring(dot + 1));
+		} else {
+			namespace.setNames(index, name, "");
+		}
+		sortParent();
+	}
+	
+	private void sortParent() {
+		ISO9660Directory parent = getParentDirectory();
+		if (parent!=null) {
+			parent.forceSort();
+		}
+	}
+	
+	@Override
+	public int getVersion() {
+		return namespace.getVersion(index);
+	}
+	
+	@Override
+	public void setVersion(int version) throws HandlerException {
+		checkVersion(version);
+		namespace.setVersion(index, version);
+		sortParent();
+	}
+	
+	@Override
+	public POSIXFileMode getFileMode() {
+		return namespace.getFileMode(index);
+	}
+	
+	@Override
+	public void setFileMode(POSIXFileMode filemode) {
+		namespace.setFileMode(index, filemode);
+	}
+	
+	@Override
+	public boolean enforces8plus3() {
+		return namespace.enforces8plus3(index);
+	}
+	
+	@Override
+	public void enforce8plus3(boolean force) {
+		namespace.enforce8plus3(index, force);
+		ISO9660Directory parent = getParentDirectory();
+		if (parent!=null) {
+			parent.resetContents();
+		}
+	}
+	
+	@Override
+	public boolean enforcesDotDelimiter() {
+		return namespace.enforcesDotDelimiter(index);
+	}
+	
+	@Override
+	public void enforceDotDelimiter(boolean force) {
+		namespace.enforceDotDelimiter(index, force);
+		ISO9660Directory parent = getParentDirectory();
+		if (parent!=null) {
+			parent.resetContents();
+		}
+	}
+	
+	@Override
+	void setParentDirectory(ISO9660Directory parent) {
+		namespace.setParent(index, parent);
+	}
+	
+	@Override
+	public ISO9660Directory getParentDirectory() {
+		return namespace.getParent(index);
+	}
+	
+	@Override
+	public Object getID() {
+		return namespace.getTable().getID(index);
+	}
+	
+	@Override
+	public int getIndex() {
+		return index;
+	}
+	
+	@Override
+	void setIndex(int index) {
+		throw new UnsupportedOperationException("Index of a namespace file cannot be changed.");
+	}
+	
+	@Override
+	public Object getContentID() {
+		return namespace.getTable().getContentID(index);
+	}
+	
+	@Override
+	public void setContentID(Object contentID) {
+		namespace.getTable().setContentID(index, contentID);
+	}
+	
+	@Override
+	public int getLinks() {
+		return namespace.getTable().getLinks(index);
+	}
+	
+	@Override
+	void setLinks(int links) {
+		namespace.getTable().setLinks(index, links);
+	}
+	
+	@Override
+	boolean contentsCompared() {
+		return namespace.getTable().contentsCompared(index);
+	}
+	
+	@Override
+	void setContentsCompared() {
+		namespace.getTable().setContentsCompared(index);
+	}
+	
+	@Override
+	public FileAttributes getAttributes() {
+		return namespace.getTable().getAttributes(index);
+	}
+	
+	@Override
+	public File getFile() {
+		return namespace.getTable().getFile(index);
+	}
+	
+	/**
+	 * Returns a copy of this file that is not part of any namespace (see
+	 * ISO9660File.clone())
+	 * 
+	 * @return Copy of this file
+	 */
+	@Override
+	public ISO9660File clone() {
+		ISO9660File copy = namespace.getTable().copy(index);
+		copy.copyNames(this);
+		return copy;
+	}
+}
@@ -0,0 +1,239 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package de.tu_darmstadt.informatik.rbg.hatlak.iso9660;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Files of a namespace directory, kept as file indices (see Namespace).
+ * The files returned are views created on demand, files added become
+ * part of the namespace.
+ */
+class NamespaceFileList extends AbstractList<ISO9660File> implements RandomAccess {
+	// Runs up to this length are sorted by insertion
+	private static final int INSERTION_SORT_THRESHOLD = 8;
+	
+	private Namespace namespace;
+	private ISO9660Directory directory;
+	private int[] indices;
+	private int size = 0;
+	
+	/**
+	 * Create empty list
+	 * 
+	 * @param namespace Namespace
+	 * @param directory Directory of the namespace the files belong to
+	 * @param capacity Expected number of files
+	 */
+	NamespaceFileList(Namespace namespace, ISO9660Directory directory, int capacity) {
+		this.namespace = namespace;
+		this.directory = directory;
+		this.indices = new int[Math.max(capacity, 1)];
+	}
+	
+	@Override
+	public ISO9660File get(int i) {
+		checkIndex(i, size);
+		return new NamespaceFile(namespace, indices[i]);
+	}
+	
+	@Override
+	public int size() {
+		return size;
+	}
+	
+	@Override
+	public ISO9660File set(int i, ISO9660File file) {
+		checkIndex(i, size);
+		ISO9660File old = get(i);
+		// The file replaced keeps its parent, it may be set again (e.g. by sorting)
+		int index = namespace.add(file);
+		indices[i] = index;
+		namespace.setParent(index, directory);
+		return old;
+	}
+	
+	@Override
+	public void add(int i, ISO9660File file) {
+		checkIndex(i, size + 1);
+		int index = namespace.add(file);
+		if (size == indices.length) {
+			indices = Arrays.copyOf(indices, size * 2);
+		}
+		System.arraycopy(indices, i, indices, i + 1, size - i);
+		indices[i] = index;
+		size++;
+		modCount++;
+		namespace.setParent(index, directory);
+	}
+	
+	@Override
+	public ISO9660File remove(int i) {
+		ISO9660File old = get(i);
+		namespace.setParent(indices[i], null);
+		System.arraycopy(indices, i + 1, indices, i, size - i - 1);
+		size--;
+		modCount++;
+		return old;
+	}
+	
+	private static void checkIndex(int i, int size) {
+		if (i < 0 || i >= size) {
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+		}
+	}
+	
+	/**
+	 * Adds the files of a directory of another namespace of the same
+	 * hierarchy, with their names as in the other namespace
+	 * 
+	 * @param files Files of the other directory
+	 */
+	void addCopies(NamespaceFileList files) {
+		if (size + files.size > indices.length) {
+			indices = Arrays.copyOf(indices, size + files.size);
+		}
+		for (int i = 0; i < files.size; i++) {
+			int index = files.indices[i];
+			namespace.copy(files.namespace, index);
+			indices[size++] = index;
+			namespace.setParent(index, directory);
+		}
+		modCount++;
+	}
+	
+	/**
+	 * Sorts the files (stable, by ISO9660File.compareTo()) without
+	 * creating a view per file
+	 */
+	void sort() {
+		if (size > 1) {
+			NamespaceFile file = new NamespaceFile(namespace, 0);
+			NamespaceFile other = new NamespaceFile(namespace, 0);
+			sort(new int[size], 0, size, file, other);
+			modCount++;
+		}
+	}
+	
+	// Merge sort of indices[low] to indices[high-1]
+	private void sort(int[] work, int low, int high, NamespaceFile file, NamespaceFile other) {
+		if (high - low <= INSERTION_SORT_THRESHOLD) {
+			for (int i = low + 1; i < high; i++) {
+				int index = indices[i];
+				int j = i;
+				while (j > low && compare(indices[j - 1], index, file, other) > 0) {
+					indices[j] = indices[j - 1];
+					j--;
+				}
+				indices[j] = index;
+			}
+			return;
+		}
+		
+		int middle = (low + high) >>> 1;
+		sort(work, low, middle, file, other);
+		sort(work, middle, high, file, other);
+		if (compare(indices[middle - 1], indices[middle], file, other) <= 0) {
+			// Already in order
+			return;
+		}
+		
+		System.arraycopy(indices, low, work, low, high - low);
+		int i = low, j = middle;
+		for (int k = low; k < high; k++) {
+			if (j >= high || i < middle && compare(work[i], work[j], file, other) <= 0) {
+				indices[k] = work[i++];
+			} else {
+				indices[k] = work[j++];
+			}
+		}
+	}
+	
+	private static int compare(int index, int otherIndex, NamespaceFile file, NamespaceFile other) {
+		file.setFileIndex(index);
+		other.setFileIndex(otherIndex);
+		return file.compareTo(other);
+	}
+	
+	/**
+	 * Returns sorted contents of the directory as a list that keeps the
+	 * files as indices
+	 * 
+	 * @param contents Subdirectories and files of the directory in sorted order
+	 * @return Unmodifiable list of the contents
+	 */
+	List<ISO9660HierarchyObject> contents(List<ISO9660HierarchyObject> contents) {
+		return new Contents(namespace, contents);
+	}
+	
+	/**
+	 * Contents of a namespace directory: file indices and, as ~position,
+	 * subdirectories
+	 */
+	private static class Contents extends AbstractList<ISO9660HierarchyObject> implements RandomAccess {
+		private Namespace namespace;
+		private int[] entries;
+		private ISO9660Directory[] directories;
+		
+		Contents(Namespace namespace, List<ISO9660HierarchyObject> contents) {
+			this.namespace = namespace;
+			this.entries = new int[contents.size()];
+			int count = 0;
+			Iterator<ISO9660HierarchyObject> it = contents.iterator();
+			while (it.hasNext()) {
+				if (it.next() instanceof ISO9660Directory) {
+					count++;
+				}
+			}
+			this.directories = new ISO9660Directory[count];
+			
+			count = 0;
+			for (int i = 0; i < entries.length; i++) {
+				ISO9660HierarchyObject object = contents.get(i);
+				if (object instanceof ISO9660Directory) {
+					directories[count] = (ISO9660Directory) object;
+					entries[i] = ~count++;
+				} else {
+					entries[i] = ((ISO9660File) object).getIndex();
+				}
+			}
+		}
+		
+		@Override
+		public ISO9660HierarchyObject get(int i) {
+			checkIndex(i, entries.length);
+			int entry = entries[i];
+			if (entry < 0) {
+				return directories[~entry];
+			}
+			return new NamespaceFile(namespace, entry);
+		}
+		
+		@Override
+		public int size() {
+			return entries.length;
+		}
+	}
+}
@@ -19,21 +19,23 @@
 
 package de.tu_darmstadt.informatik.rbg.hatlak.iso9660;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
 
 public abstract class NamingConventions {
 	public static boolean VERBOSE = false;
 	private static Map<String,String> extensionMapper;
+	// Output of the directory being processed, if deferred (see NamingConventionsProcessor)
+	private static final ThreadLocal<StringBuilder> output = new ThreadLocal<StringBuilder>();
 	private String id;
+	// Directories of a namespace may be processed in parallel
+	private AtomicInteger renames = new AtomicInteger();
 	
 	public NamingConventions(String id) {
 		this.id = id;
@@ -44,6 +46,15 @@ public abstract class NamingConventions {
 	public String getID() {
 		return id;
 	}
+
+	/**
+	 * Returns the number of files and directories renamed so far
+	 * 
+	 * @return Number of renames
+	 */
+	public int getRenameCount() {
+		return renames.get();
+	}
 	
 	public static void addExtensionMapping(String extension, String mapping) {
 		if (extensionMapper==null) {
@@ -63,27 +74,66 @@ public abstract class NamingConventions {
 		return extensionMapper.get(extension);
 	}
 
+	/**
+	 * Print message to standard output or, while output is deferred,
+	 * to the output buffer of the current thread
+	 * 
+	 * @param message Message
+	 */
+	protected static void print(String message) {
+		StringBuilder buffer = output.get();
+		if (buffer!=null) {
+			buffer.append(message);
+		} else {
+			System.out.print(message);
+		}
+	}
+
+	/**
+	 * Print message line (see print(String))
+	 * 
+	 * @param message Message
+	 */
+	protected static void println(String message) {
+		print(message + System.getProperty("line.separator"));
+	}
+
+	/**
+	 * Defer output of the current thread
+	 * 
+	 * @param buffer Buffer collecting the output, null to print directly again
+	 */
+	static void deferOutput(StringBuilder buffer) {
+		if (buffer!=null) {
+			output.set(buffer);
+		} else {
+			output.remove();
+		}
+	}
+
 	public void startRenaming(ISO9660Directory dir) {
+		renames.incrementAndGet();
 		if (VERBOSE) {
-			System.out.print(id + ": Renamed directory " + dir.getISOPath());
+			print(id + ": Renamed directory " + dir.getISOPath());
 		}
 	}
 
 	public void startRenaming(ISO9660File file) {
+		renames.incrementAndGet();
 		if (VERBOSE) {
-			System.out.print(id + ": Renamed file " + file.getISOPath());
+			print(id + ": Renamed file " + file.getISOPath());
 		}
 	}
 
 	public void endRenaming(ISO9660Directory dir) {
 		if (VERBOSE) {
-			System.out.println(" to " + dir.getName());
+			println(" to " + dir.getName());
 		}
 	}
 
 	public void endRenaming(ISO9660File file) {
 		if (VERBOSE) {
-			System.out.println(" to " + file.getFullName());
+			println(" to " + file.getFullName());
 		}
 	}
 	
@@ -113,8 +163,14 @@ public abstract class NamingConventions {
 	}
 
 	public void incrementFilename(ISO9660Directory dir) throws HandlerException {
-		String filename = dir.getName();
-		
+		setFilename(dir, incrementedName(dir.getName()));
+	}
+			
+	public void incrementFilename(ISO9660File file) throws HandlerException {
+		setFilename(file, incrementedFilename(file, file.getFilename()));
+	}
+	
+	private String incrementedName(String filename) throws HandlerException {
 		if (filename.length() > 0) {
 			int[] pair = getNumericSuffix(filename);
 			int number = pair[0];
@@ -132,25 +188,22 @@ public abstract class NamingConventions {
 			} else {
 				// Filename does not end with a number -> append 2
 				// First try to append the number
-				ISO9660Directory copy = new ISO9660Directory(filename + "2");
-				apply(copy);
-				if (checkFilenameEquality(copy.getName(), filename)) {
+				String name = normalizeDirectoryName(filename + "2");
+				if (checkFilenameEquality(name, filename)) {
 					// Adding the number did not change the filename -> replace last character
 					filename = filename.substring(0, filename.length()) + "2";
 				} else {
-					filename = copy.getName();
+					filename = name;
 				}
 			}
 		} else {
 			filename = "2";
 		}
 
-		setFilename(dir, filename);
+		return filename;
 	}
-			
-	public void incrementFilename(ISO9660File file) throws HandlerException {
-		String filename = file.getFilename();
-		
+	
+	private String incrementedFilename(ISO9660File file, String filename) throws HandlerException {
 		if (filename.length() > 0) {
 			int[] pair = getNumericSuffix(filename);
 			int number = pair[0];
@@ -167,26 +220,27 @@ public abstract class NamingConventions {
 				filename += number;
 			} else {
 				// Filename does not end with a number -> append 2
-				// First try to append the number
-				ISO9660File copy = null;
-				try {
-					copy = new ISO9660File(file);
-				} catch (HandlerException e) {
-					e.printStackTrace(System.err);
+				// First try the name of the underlying file (as version 1)
+				String name = file.getFile().getName();
+				int dot = ISO9660File.getExtensionDelimiter(name);
+				String[] normalized;
+				if (dot >= 0) {
+					normalized = normalizeFilename(name.substring(0, dot), name.substring(dot + 1), 1, false);
+				} else {
+					normalized = normalizeFilename(name, "", 1, false);
 				}
-				apply(copy);
-				if (checkFilenameEquality(copy.getFilename(), filename)) {
+				if (checkFilenameEquality(normalized[0], filename)) {
 					// Adding the number did not change the filename -> replace last character
 					filename = filename.substring(0, filename.length()) + "2";
 				} else {
-					filename = copy.getFilename();
+					filename = normalized[0];
 				}
 			}
 		} else {
 			filename = "2";
 		}
 
-		setFilename(file, filename);
+		return filename;
 	}
 	
 	static private int[] getNumericSuffix(String filename){
@@ -211,41 +265,31 @@ public abstract class NamingConventions {
 	
 	public void processDirectory(ISO9660Directory dir) throws HandlerException {
 		Map<String, Set<Integer>> duplicates = new HashMap<String, Set<Integer>>();
+		Map<String, String> increments = new HashMap<String, String>();
 		
-		// Prepare files and directories to be processed in sorted order
-        List<ISO9660Directory> dirs = dir.getDirectories();
-        List<ISO9660File> files = dir.getFiles();
-
-		List<ISO9660HierarchyObject> contents = new ArrayList<ISO9660HierarchyObject>(dirs.size() + files.size());
-		contents.addAll(dirs);
-		contents.addAll(files);
-		Collections.sort(contents);
-
-		Iterator<ISO9660HierarchyObject> it = contents.iterator();
+		// Process files and directories in sorted order
+		Iterator<ISO9660HierarchyObject> it = dir.getContents().iterator();
 		while (it.hasNext()) {
-			boolean duplicate = false;
 			ISO9660HierarchyObject object = it.next();
 			if (object instanceof ISO9660Directory) {
 				ISO9660Directory subdir = (ISO9660Directory) object;
 				apply(subdir);
-				while (checkDuplicate(duplicates, subdir.getName(), -1)) {
-					incrementFilename(subdir);
-					duplicate = true;
-				}
-				if (!duplicate) {
+				if (checkDuplicate(duplicates, subdir.getName(), -1)) {
+					resolveDuplicate(duplicates, increments, subdir);
+				} else {
 					duplicates.clear();
+					increments.clear();
 				}
 				addDuplicate(duplicates, subdir.getName(), -1);
 				checkPathLength(subdir.getISOPath());
 			} else if (object instanceof ISO9660File){
 				ISO9660File file = (ISO9660File) object;
 				apply(file);
-				while (checkDuplicate(duplicates, file.getName(), file.getVersion())) {
-					incrementFilename(file);
-					duplicate = true;
-				}
-				if (!duplicate) {
+				if (checkDuplicate(duplicates, file.getName(), file.getVersion())) {
+					resolveDuplicate(duplicates, increments, file);
+				} else {
 					duplicates.clear();
+					increments.clear();
 				}
 				addDuplicate(duplicates, file.getName(), file.getVersion());
 				checkPathLength(file.getISOPath());
@@ -255,6 +299,65 @@ public abstract class NamingConventions {
 		}
 	}
 
+	/**
+	 * Increments the directory name until it is no duplicate any more.
+	 * The increments following a given first increment do not depend on
+	 * the directory, so the search resumes at the name last assigned after
+	 * the same first increment instead of checking all names before it
+	 * again (these are still taken, as duplicates only grow).
+	 * 
+	 * @param duplicates Names taken
+	 * @param increments Last name assigned per first increment
+	 * @param dir Duplicate directory
+	 * @throws HandlerException Invalid directory name
+	 */
+	private void resolveDuplicate(Map<String, Set<Integer>> duplicates, Map<String, String> increments, ISO9660Directory dir) throws HandlerException {
+		String first = incrementedName(dir.getName());
+		String key = "-1:" + first;
+		String filename = increments.get(key);
+		if (filename == null || !isResumable(filename, first)) {
+			filename = first;
+		}
+		while (checkDuplicate(duplicates, filename, -1)) {
+			filename = incrementedName(filename);
+		}
+		increments.put(key, filename);
+		setFilename(dir, filename);
+	}
+
+	/**
+	 * Increments the file name until it is no duplicate any more
+	 * (see resolveDuplicate(Map, Map, ISO9660Directory))
+	 * 
+	 * @param duplicates Names taken
+	 * @param increments Last file name assigned per first increment and version
+	 * @param file Duplicate file
+	 * @throws HandlerException Invalid file name
+	 */
+	private void resolveDuplicate(Map<String, Set<Integer>> duplicates, Map<String, String> increments, ISO9660File file) throws HandlerException {
+		startRenaming(file);
+		String first = incrementedFilename(file, file.getFilename());
+		file.setFilename(first);
+		// Truncated 8+3 file names depend on the file
+		String key = file.enforces8plus3() ? null : file.getVersion() + ":" + file.getName();
+		String filename = key != null ? increments.get(key) : null;
+		if (filename != null && isResumable(filename, first)) {
+			file.setFilename(filename);
+		}
+		while (checkDuplicate(duplicates, file.getName(), file.getVersion())) {
+			file.setFilename(incrementedFilename(file, file.getFilename()));
+		}
+		if (key != null) {
+			increments.put(key, file.getFilename());
+		}
+		endRenaming(file);
+	}
+
+	private static boolean isResumable(String filename, String first) {
+		// Names without a parsable number are incremented depending on the object
+		return filename.equals(first) || getNumericSuffix(filename)[0] >= 0;
+	}
+
 	public boolean checkDuplicate(Map<String, Set<Integer>> duplicates, String name, int version) {
 		return checkDuplicate(duplicates, name, version, true);
 	}
@@ -279,6 +382,27 @@ public abstract class NamingConventions {
 	public abstract void apply(ISO9660Directory dir) throws HandlerException;
 
 	public abstract void apply(ISO9660File file) throws HandlerException;
+
+	/**
+	 * Returns the name a directory would get by apply() (without side effects)
+	 * 
+	 * @param name Directory name
+	 * @return Directory name conforming to the naming conventions
+	 * @throws HandlerException Invalid directory name
+	 */
+	public abstract String normalizeDirectoryName(String name) throws HandlerException;
+
+	/**
+	 * Returns the name a file would get by apply() (without side effects)
+	 * 
+	 * @param filename File name (without dot)
+	 * @param extension File extension (without front dot)
+	 * @param version File version
+	 * @param enforce8plus3 Whether 8+3 file names are enforced for the file
+	 * @return File name and extension conforming to the naming conventions
+	 * @throws HandlerException Invalid file name
+	 */
+	public abstract String[] normalizeFilename(String filename, String extension, int version, boolean enforce8plus3) throws HandlerException;
 	
 	public abstract void checkPathLength(String isoPath);
 }
@@ -0,0 +1,266 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package de.tu_darmstadt.informatik.rbg.hatlak.iso9660;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
+
+/**
+ * Applies naming conventions to directory hierarchies (namespaces), i.e.
+ * the root directory first, then every directory of root.unsortedIterator()
+ * after its subdirectories. As renaming only changes the contents of the
+ * directory processed, subtrees are processed in parallel on a fork/join
+ * pool with the same result as a serial run. Namespaces added to the same
+ * processor are processed concurrently. The output (verbose renaming,
+ * path length warnings) is collected per directory and printed in serial
+ * order by finish().
+ */
+public class NamingConventionsProcessor {
+	private int parallelism;
+	private ForkJoinPool pool;
+	private List<Namespace> namespaces;
+	private List<NamingConventions> namingConventions;
+
+	/**
+	 * Create processor
+	 *
+	 * @param parallelism Number of threads, 1 to process each namespace
+	 * serially when added
+	 */
+	public NamingConventionsProcessor(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Invalid parallelism: " + parallelism);
+		}
+		this.parallelism = parallelism;
+		this.namespaces = new ArrayList<Namespace>();
+		this.namingConventions = new ArrayList<NamingConventions>();
+	}
+
+	/**
+	 * Returns number of threads
+	 *
+	 * @return Number of threads
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Returns the naming conventions of all namespaces added
+	 *
+	 * @return Naming conventions in the order they were added
+	 */
+	public List<NamingConventions> getNamingConventions() {
+		return namingConventions;
+	}
+
+	/**
+	 * Start applying naming conventions to a namespace
+	 *
+	 * @param namingConventions Naming conventions
+	 * @param root Root of the namespace
+	 * @throws HandlerException Problems renaming (serial processing only)
+	 */
+	public void add(NamingConventions namingConventions, ISO9660RootDirectory root) throws HandlerException {
+		this.namingConventions.add(namingConventions);
+		if (parallelism==1) {
+			namingConventions.processDirectory(root);
+			Iterator<ISO9660Directory> it = root.unsortedIterator();
+			while (it.hasNext()) {
+				namingConventions.processDirectory(it.next());
+			}
+			return;
+		}
+
+		if (pool==null) {
+			pool = new ForkJoinPool(parallelism);
+		}
+		Namespace namespace = new Namespace(namingConventions, root);
+		namespaces.add(namespace);
+		pool.execute(namespace);
+	}
+
+	/**
+	 * Wait for all namespaces added and print their output in the order
+	 * they were added
+	 *
+	 * @throws HandlerException Problems renaming
+	 */
+	public void finish() throws HandlerException {
+		try {
+			Iterator<Namespace> it = namespaces.iterator();
+			while (it.hasNext()) {
+				Namespace namespace = it.next();
+				try {
+					namespace.join();
+				} catch (NamingException e) {
+					// The pool may rethrow a copy wrapping the original exception
+					Throwable cause = e.getCause();
+					while (!(cause instanceof HandlerException)) {
+						cause = cause.getCause();
+					}
+					throw (HandlerException) cause;
+				}
+				namespace.print();
+			}
+		} finally {
+			shutdown();
+		}
+	}
+
+	/**
+	 * Stop processing without waiting for the namespaces added, e.g. if
+	 * the build failed before finish() could be called
+	 */
+	public void shutdown() {
+		namespaces.clear();
+		if (pool!=null) {
+			pool.shutdownNow();
+			pool = null;
+		}
+	}
+
+	private static void process(NamingConventions namingConventions, ISO9660Directory dir, StringBuilder output) {
+		NamingConventions.deferOutput(output);
+		try {
+			namingConventions.processDirectory(dir);
+		} catch (HandlerException e) {
+			throw new NamingException(e);
+		} finally {
+			NamingConventions.deferOutput(null);
+		}
+	}
+
+	private static class Namespace extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private NamingConventions namingConventions;
+		private ISO9660RootDirectory root;
+		private StringBuilder rootOutput;
+		private List<ISO9660Directory> dirs;
+		private Map<ISO9660Directory, DirectoryTask> tasks;
+		private List<StringBuilder> outputs;
+
+		Namespace(NamingConventions namingConventions, ISO9660RootDirectory root) {
+			this.namingConventions = namingConventions;
+			this.root = root;
+		}
+
+		@Override
+		protected void compute() {
+			rootOutput = new StringBuilder();
+			process(namingConventions, root, rootOutput);
+
+			dirs = new ArrayList<ISO9660Directory>();
+			Iterator<ISO9660Directory> it = root.unsortedIterator();
+			while (it.hasNext()) {
+				dirs.add(it.next());
+			}
+
+			outputs = new ArrayList<StringBuilder>(dirs.size());
+			if (buildTasks()) {
+				tasks.get(root).invoke();
+				for (int i = 0; i < dirs.size(); i++) {
+					outputs.add(tasks.get(dirs.get(i)).output);
+				}
+			} else {
+				// Not a tree (e.g. the same directory visited twice): serially
+				for (int i = 0; i < dirs.size(); i++) {
+					StringBuilder output = new StringBuilder();
+					process(namingConventions, dirs.get(i), output);
+					outputs.add(output);
+				}
+			}
+		}
+
+		private boolean buildTasks() {
+			tasks = new IdentityHashMap<ISO9660Directory, DirectoryTask>(dirs.size());
+			for (int i = 0; i < dirs.size(); i++) {
+				if (tasks.put(dirs.get(i), new DirectoryTask(namingConventions, dirs.get(i)))!=null) {
+					return false;
+				}
+			}
+
+			// Every directory visited but the root has to be visited as the subdirectory of exactly one other
+			Map<ISO9660Directory, ISO9660Directory> parents = new IdentityHashMap<ISO9660Directory, ISO9660Directory>(dirs.size());
+			for (int i = 0; i < dirs.size(); i++) {
+				ISO9660Directory dir = dirs.get(i);
+				DirectoryTask task = tasks.get(dir);
+				Iterator<ISO9660Directory> it = dir.getDirectories().iterator();
+				while (it.hasNext()) {
+					ISO9660Directory subdir = it.next();
+					DirectoryTask subtask = tasks.get(subdir);
+					if (subtask!=null) {
+						if (subdir==root || parents.put(subdir, dir)!=null) {
+							return false;
+						}
+						task.subtasks.add(subtask);
+					}
+				}
+			}
+			return tasks.containsKey(root) && parents.size()==dirs.size() - 1;
+		}
+
+		void print() {
+			System.out.print(rootOutput);
+			for (int i = 0; i < outputs.size(); i++) {
+				System.out.print(outputs.get(i));
+			}
+		}
+	}
+
+	private static class DirectoryTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private NamingConventions namingConventions;
+		private ISO9660Directory dir;
+		private List<DirectoryTask> subtasks;
+		private StringBuilder output;
+
+		DirectoryTask(NamingConventions namingConventions, ISO9660Directory dir) {
+			this.namingConventions = namingConventions;
+			this.dir = dir;
+			this.subtasks = new ArrayList<DirectoryTask>();
+		}
+
+		@Override
+		protected void compute() {
+			// Subdirectories first: renaming them here changes the paths they print
+			ForkJoinTask.invokeAll(subtasks);
+			output = new StringBuilder();
+			process(namingConventions, dir, output);
+		}
+	}
+
+	private static class NamingException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		NamingException(HandlerException cause) {
+			super(cause);
+		}
+	}
+}
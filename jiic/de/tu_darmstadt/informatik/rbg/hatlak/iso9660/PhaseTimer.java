@@ -0,0 +1,85 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package de.tu_darmstadt.informatik.rbg.hatlak.iso9660;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Measures the wall and CPU time of build phases and reports them to
+ * BuildMetrics listeners
+ */
+public class PhaseTimer {
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	private List<BuildMetrics> metrics;
+	private String phase;
+	private long wallTime, cpuTime;
+
+	/**
+	 * Create timer
+	 * 
+	 * @param metrics Listeners to report to
+	 */
+	public PhaseTimer(List<BuildMetrics> metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Start a phase
+	 * 
+	 * @param phase Phase (see BuildMetrics.startPhase(String))
+	 */
+	public void start(String phase) {
+		if (metrics.isEmpty()) {
+			return;
+		}
+		this.phase = phase;
+		Iterator<BuildMetrics> it = metrics.iterator();
+		while (it.hasNext()) {
+			it.next().startPhase(phase);
+		}
+		wallTime = System.nanoTime();
+		cpuTime = getCPUTime();
+	}
+
+	/**
+	 * End the phase started last
+	 */
+	public void end() {
+		if (metrics.isEmpty()) {
+			return;
+		}
+		long wallTime = System.nanoTime() - this.wallTime;
+		long cpuTime = this.cpuTime < 0 ? -1 : getCPUTime() - this.cpuTime;
+		Iterator<BuildMetrics> it = metrics.iterator();
+		while (it.hasNext()) {
+			it.next().endPhase(phase, wallTime, cpuTime);
+		}
+	}
+
+	private static long getCPUTime() {
+		if (!threads.isCurrentThreadCpuTimeSupported() || !threads.isThreadCpuTimeEnabled()) {
+			return -1;
+		}
+		return threads.getCurrentThreadCpuTime();
+	}
+}
@@ -0,0 +1,36 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package de.tu_darmstadt.informatik.rbg.hatlak.iso9660;
+
+/**
+ * Listener for the progress of writing the file contents of an image
+ * (see CreateISO.addProgressListener(ProgressListener)). It is called by
+ * a separate thread at most once per progress interval and once more when
+ * all contents have been written, so it must not take long and has to be
+ * thread-safe.
+ */
+public interface ProgressListener {
+	/**
+	 * Progress of the build
+	 * 
+	 * @param progress Current state
+	 */
+	public void progress(BuildProgress progress);
+}
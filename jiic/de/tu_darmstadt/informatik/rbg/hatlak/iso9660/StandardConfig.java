@@ -32,6 +32,7 @@ public abstract class StandardConfig {
 	Date createDate, modDate, expireDate, effectiveDate;
 	ISO9660File abstractFile, bibFile, copyrightFile;
 	int volSeqNo, volSetSize;
+	int namingThreads;
 
 	public StandardConfig() {
 		this.systemID = "";
@@ -46,6 +47,29 @@ public abstract class StandardConfig {
 		this.effectiveDate = createDate;
 		this.volSeqNo = 1;
 		this.volSetSize = 1;
+		this.namingThreads = 1;
+	}
+	
+	/**
+	 * Set number of threads applying the naming conventions
+	 * 
+	 * @param threads Number of threads (1: serially)
+	 * @throws ConfigException Less than one thread
+	 */
+	public void setNamingThreads(int threads) throws ConfigException {
+		if (threads < 1) {
+			throw new ConfigException(this, "Invalid number of naming threads: " + threads);
+		}
+		this.namingThreads = threads;
+	}
+	
+	/**
+	 * Returns number of threads applying the naming conventions
+	 * 
+	 * @return Number of threads
+	 */
+	public int getNamingThreads() {
+		return namingThreads;
 	}
 	
 	/**
@@ -19,7 +19,10 @@
 
 package de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl;
 
+import java.io.Closeable;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.*;
 
 import de.tu_darmstadt.informatik.rbg.hatlak.eltorito.impl.*;
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.*;
@@ -29,59 +32,247 @@ import de.tu_darmstadt.informatik.rbg.mhartle.sabre.*;
 
 public class CreateISO {
 	private ISO9660RootDirectory root;
-	private StreamHandler streamHandler;
+	private StreamHandler streamHandler, outputHandler;
+	private ISOImageVirtualHandler recorder = null;
+	private List<BuildMetrics> metrics;
+	private List<ProgressListener> progressListeners;
+	private ProgressReporter progress;
 
 	public CreateISO(StreamHandler streamHandler, ISO9660RootDirectory root) throws FileNotFoundException {
 		this.streamHandler = new LogicalSectorPaddingHandler(streamHandler, streamHandler);
+		this.outputHandler = streamHandler;
 		this.root = root;
+		this.metrics = new ArrayList<BuildMetrics>();
+		this.progressListeners = new ArrayList<ProgressListener>();
+		this.progress = new ProgressReporter(progressListeners);
+	}
+
+	/**
+	 * Add a listener for the measurements of the build (phase times,
+	 * data passed through the handler chain, renames). Without listeners
+	 * nothing is measured.
+	 * 
+	 * @param buildMetrics Listener
+	 */
+	public void addBuildMetrics(BuildMetrics buildMetrics) {
+		metrics.add(buildMetrics);
+	}
+
+	/**
+	 * Add a listener for the progress of writing the file contents. It is
+	 * called by a separate thread once per progress interval.
+	 * 
+	 * @param listener Listener
+	 */
+	public void addProgressListener(ProgressListener listener) {
+		progressListeners.add(listener);
+	}
+
+	/**
+	 * Set the minimum time between two progress reports (default: 1 s)
+	 * 
+	 * @param interval Interval in milliseconds
+	 */
+	public void setProgressInterval(long interval) {
+		progress.setInterval(interval);
+	}
+
+	/**
+	 * Cancel the build, e.g. from a ProgressListener or another thread.
+	 * process() stops after the current file or area by throwing a
+	 * HandlerException. Like after any failure, the output handler is
+	 * closed if it is Closeable and the incomplete image is left to the
+	 * caller. A request made before process() is called is discarded.
+	 */
+	public void cancel() {
+		progress.cancel();
+	}
+
+	/**
+	 * Buffers the image first, i.e. records it with ISOImageVirtualHandler
+	 * (metadata in memory, fixups applied there, file contents as
+	 * references), and then replays the recording to the output handler
+	 * in a single sequential pass. The output handler never receives any
+	 * fixups. Required for output handlers that cannot seek, e.g.
+	 * ISOImageStreamHandler. All metadata of the image is held in memory.
+	 */
+	public void processBuffered(ISO9660Config iso9660Config, RockRidgeConfig rrConfig, JolietConfig jolietConfig, ElToritoConfig elToritoConfig) throws HandlerException {
+		StreamHandler padding = streamHandler;
+		recorder = new ISOImageVirtualHandler();
+		streamHandler = new LogicalSectorPaddingHandler(recorder, recorder);
+		try {
+			process(iso9660Config, rrConfig, jolietConfig, elToritoConfig);
+		} finally {
+			streamHandler = padding;
+			recorder = null;
+		}
 	}
 
 	public void process(ISO9660Config iso9660Config, RockRidgeConfig rrConfig, JolietConfig jolietConfig, ElToritoConfig elToritoConfig) throws HandlerException {
 		if (iso9660Config==null) {
 			throw new NullPointerException("Cannot create ISO without ISO9660Config.");
 		}
+		progress.reset();
+		StreamHandler padding = streamHandler;
+		boolean complete = false;
+		try {
+			build(iso9660Config, rrConfig, jolietConfig, elToritoConfig);
+			complete = true;
+		} finally {
+			// Start the next build from the sector padding again
+			streamHandler = padding;
+			if (!complete) {
+				abort();
+			}
+		}
+	}
+
+	private void build(ISO9660Config iso9660Config, RockRidgeConfig rrConfig, JolietConfig jolietConfig, ElToritoConfig elToritoConfig) throws HandlerException {
+		PhaseTimer timer = new PhaseTimer(metrics);
+		timer.start("Setup");
 		((LogicalSectorPaddingHandler) streamHandler).setPadEnd(iso9660Config.getPadEnd());
+		// Content sharing has to be set up before the handlers copy the hierarchy
+		if (iso9660Config.hardlinksDetected()) {
+			new HardlinkDetector().detect(root);
+		}
+		if (iso9660Config.contentsDeduplicated()) {
+			new ContentDeduplicator().deduplicate(root);
+		}
 
 		// Last handler added processes data first
+		List<MeteredStreamHandler> meters = new ArrayList<MeteredStreamHandler>();
+		streamHandler = meter("Output", streamHandler, meters);
+		JolietHandler jolietHandler = null;
 		if (jolietConfig!=null) {
-			streamHandler = new JolietHandler(streamHandler, root, jolietConfig);
+			jolietHandler = new JolietHandler(streamHandler, root, jolietConfig);
+			streamHandler = meter("Joliet", jolietHandler, meters);
 		}
 		if (elToritoConfig!=null) {
-			streamHandler = new ElToritoHandler(streamHandler, elToritoConfig);
+			streamHandler = meter("El Torito", new ElToritoHandler(streamHandler, elToritoConfig), meters);
+		}
+		ISO9660Handler iso9660Handler = new ISO9660Handler(streamHandler, root, iso9660Config, rrConfig);
+		streamHandler = meter("ISO 9660", iso9660Handler, meters);
+		FileHandler fileHandler = new FileHandler(streamHandler, root);
+		fileHandler.setWriteContentsOnce(iso9660Config.hardlinksDetected() || iso9660Config.contentsDeduplicated());
+		boolean reporting = outputHandler instanceof ProgressReportingOutput;
+		if (reporting) {
+			((ProgressReportingOutput) outputHandler).setProgressReporter(progress);
+		}
+		if (recorder==null) {
+			// Otherwise the contents are only read when the recording is written
+			fileHandler.setProgressReporter(progress, !reporting);
 		}
-		streamHandler = new ISO9660Handler(streamHandler, root, iso9660Config, rrConfig);
-		streamHandler = new FileHandler(streamHandler, root);
+		streamHandler = fileHandler;
 
+		progress.checkCancelled();
 		streamHandler.startDocument();
+		timer.end();
 
+		// Naming conventions have been applied by now
+		reportRenames(iso9660Handler.getNamingConventions());
+		if (jolietHandler!=null) {
+			reportRenames(jolietHandler.getNamingConventions());
+		}
+
+		boolean complete = false;
+		try {
+			doAreas(timer);
+			complete = true;
+		} finally {
+			progress.stop(complete);
+		}
+
+		// Handlers from the first to the last of the chain
+		for (int i = meters.size() - 1; i >= 0; i--) {
+			Iterator<BuildMetrics> it = metrics.iterator();
+			while (it.hasNext()) {
+				meters.get(i).report(it.next());
+			}
+		}
+		if (outputHandler instanceof MeteredOutput) {
+			MeteredOutput output = (MeteredOutput) outputHandler;
+			Iterator<BuildMetrics> it = metrics.iterator();
+			while (it.hasNext()) {
+				it.next().output(outputHandler.getClass().getSimpleName(), output.getSeekCount(),
+						output.getStallCount(), output.getStallTime());
+			}
+		}
+	}
+
+	/**
+	 * Releases the image file and the threads of a failed build, if the
+	 * output handler supports it
+	 */
+	private void abort() {
+		if (outputHandler instanceof Closeable) {
+			try {
+				((Closeable) outputHandler).close();
+			} catch (IOException e) {
+				// The build has failed already
+			}
+		}
+	}
+
+	private void doAreas(PhaseTimer timer) throws HandlerException {
 		// System Area
-		streamHandler.startElement(new ISO9660Element("SA"));
-		streamHandler.endElement();
+		doArea("SA", timer);
 
 		// Volume Descriptor Set
-		streamHandler.startElement(new ISO9660Element("VDS"));
-		streamHandler.endElement();
+		doArea("VDS", timer);
 
 		// Boot Info Area
-		streamHandler.startElement(new ISO9660Element("BIA"));
-		streamHandler.endElement();
+		doArea("BIA", timer);
 
 		// Path Table Area
-		streamHandler.startElement(new ISO9660Element("PTA"));
-		streamHandler.endElement();
+		doArea("PTA", timer);
 
 		// Directory Records Area
-		streamHandler.startElement(new ISO9660Element("DRA"));
-		streamHandler.endElement();
+		doArea("DRA", timer);
 
 		// Boot Data Area
-		streamHandler.startElement(new ISO9660Element("BDA"));
-		streamHandler.endElement();
+		doArea("BDA", timer);
 
 		// File Contents Area
-		streamHandler.startElement(new ISO9660Element("FCA"));
-		streamHandler.endElement();
+		doArea("FCA", timer);
 
+		progress.checkCancelled();
+		timer.start("End");
 		streamHandler.endDocument();
+		timer.end();
+
+		if (recorder!=null) {
+			progress.checkCancelled();
+			timer.start("Write");
+			recorder.write(outputHandler, progress);
+			timer.end();
+		}
+	}
+
+	private void doArea(String id, PhaseTimer timer) throws HandlerException {
+		progress.checkCancelled();
+		timer.start(id);
+		streamHandler.startElement(new ISO9660Element(id));
+		streamHandler.endElement();
+		timer.end();
+	}
+
+	private StreamHandler meter(String name, StreamHandler streamHandler, List<MeteredStreamHandler> meters) {
+		if (metrics.isEmpty()) {
+			return streamHandler;
+		}
+		MeteredStreamHandler meter = new MeteredStreamHandler(name, streamHandler);
+		meters.add(meter);
+		return meter;
+	}
+
+	private void reportRenames(List<NamingConventions> namingConventions) {
+		Iterator<NamingConventions> it = namingConventions.iterator();
+		while (it.hasNext()) {
+			NamingConventions conventions = it.next();
+			Iterator<BuildMetrics> mit = metrics.iterator();
+			while (mit.hasNext()) {
+				mit.next().renames(conventions.getID(), conventions.getRenameCount());
+			}
+		}
 	}
-}
\ No newline at end of file
+}
@@ -19,26 +19,53 @@
 
 package de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl;
 
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660Directory;
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660File;
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660RootDirectory;
+import de.tu_darmstadt.informatik.rbg.hatlak.sabre.impl.FileChannelDataReference;
 import de.tu_darmstadt.informatik.rbg.mhartle.sabre.Element;
 import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
 import de.tu_darmstadt.informatik.rbg.mhartle.sabre.StreamHandler;
 import de.tu_darmstadt.informatik.rbg.mhartle.sabre.impl.ChainingStreamHandler;
-import de.tu_darmstadt.informatik.rbg.mhartle.sabre.impl.FileDataReference;
 
 public class FileHandler extends ChainingStreamHandler {
 	private ISO9660RootDirectory root;
+	private Set<Object> writtenContents;
+	private ProgressReporter progress = null;
+	private boolean countContents = false;
 	
 	public FileHandler(StreamHandler streamHandler, ISO9660RootDirectory root) {
 		super(streamHandler, streamHandler);
 		this.root = root;
 	}
 	
+	/**
+	 * Write the contents of files sharing a content ID only once
+	 * 
+	 * @param writeOnce Whether to skip contents already written
+	 */
+	public void setWriteContentsOnce(boolean writeOnce) {
+		this.writtenContents = writeOnce ? new HashSet<Object>() : null;
+	}
+	
+	/**
+	 * Report the contents to be written to a ProgressReporter, which may
+	 * also cancel the build
+	 * 
+	 * @param progress Progress reporter
+	 * @param countContents Whether to count the contents as written once handed on
+	 * (otherwise the output handler reports them, see ProgressReportingOutput)
+	 */
+	void setProgressReporter(ProgressReporter progress, boolean countContents) {
+		this.progress = progress;
+		this.countContents = countContents;
+	}
+	
 	@Override
 	public void startElement(Element element) throws HandlerException {
 		if (element instanceof ISO9660Element) {
@@ -55,6 +82,9 @@ public class FileHandler extends ChainingStreamHandler {
 	}
 	
 	private void doFCA() throws HandlerException {
+		if (progress!=null) {
+			startProgress();
+		}
 		doFCADirs(root);
 				
 		Iterator<ISO9660Directory> it = root.sortedIterator();
@@ -64,6 +94,26 @@ public class FileHandler extends ChainingStreamHandler {
 		}
 	}
 	
+	private void startProgress() {
+		// Same order and sharing of contents as doFCA()
+		Set<Object> contents = writtenContents!=null ? new HashSet<Object>() : null;
+		long files = 0, bytes = 0;
+		Iterator<ISO9660Directory> it = root.sortedIterator();
+		ISO9660Directory dir = root;
+		while (dir!=null) {
+			Iterator<ISO9660File> fit = dir.getFiles().iterator();
+			while (fit.hasNext()) {
+				ISO9660File file = fit.next();
+				if (contents==null || contents.add(file.getContentID())) {
+					files++;
+					bytes += file.length();
+				}
+			}
+			dir = it.hasNext() ? it.next() : null;
+		}
+		progress.start(files, bytes);
+	}
+	
 	private void doFCADirs(ISO9660Directory dir) throws HandlerException {
 		List<ISO9660File> files = dir.getFiles();
 		Iterator<ISO9660File> fit = files.iterator();
@@ -74,11 +124,26 @@ public class FileHandler extends ChainingStreamHandler {
 	}
 	
 	private void doFile(ISO9660File file) throws HandlerException {
+		if (writtenContents!=null && !writtenContents.add(file.getContentID())) {
+			// Contents already written, only the location has to be filled in
+			super.startElement(new SharedFileElement(file));
+			super.endElement();
+			return;
+		}
+		
 		super.startElement(new FileElement(file));
 
-		FileDataReference fdr = new FileDataReference(file.getFile());
+		FileChannelDataReference fdr = FileChannelDataReference.snapshot(file.getFile(), file.length(), file.lastModified());
 		data(fdr);
 
 		super.endElement();
+		
+		if (progress!=null) {
+			if (countContents) {
+				progress.fileDone(fdr.getLength());
+			} else {
+				progress.checkCancelled();
+			}
+		}
 	}
 }
@@ -0,0 +1,205 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import de.tu_darmstadt.informatik.rbg.hatlak.sabre.impl.ByteBufferDataReference;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.DataReference;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
+
+/**
+ * Journal of fixup patches that could not be applied in place.
+ * Patches are kept as (offset, bytes) pairs in primitive arrays
+ * and written in a single pass sorted by offset. Since every fixup
+ * covers its own region of the image, patches never overlap.
+ */
+class FixupJournal {
+	private long[] offsets = new long[1024];
+	private int[] starts = new int[1025];
+	private byte[] data = new byte[8192];
+	private int count = 0;
+
+	/**
+	 * Records a patch
+	 * 
+	 * @param offset Image offset to patch
+	 * @param bytes Patch data
+	 * @param length Number of bytes to use
+	 */
+	void add(long offset, byte[] bytes, int length) {
+		if (count == offsets.length) {
+			long[] newOffsets = new long[count * 2];
+			System.arraycopy(offsets, 0, newOffsets, 0, count);
+			offsets = newOffsets;
+			int[] newStarts = new int[count * 2 + 1];
+			System.arraycopy(starts, 0, newStarts, 0, count + 1);
+			starts = newStarts;
+		}
+		
+		int start = starts[count];
+		if (start + length > data.length) {
+			byte[] newData = new byte[Math.max(data.length * 2, start + length)];
+			System.arraycopy(data, 0, newData, 0, start);
+			data = newData;
+		}
+		
+		System.arraycopy(bytes, 0, data, start, length);
+		offsets[count] = offset;
+		starts[++count] = start + length;
+	}
+	
+	/**
+	 * Returns the number of recorded patches
+	 * 
+	 * @return Number of patches
+	 */
+	int size() {
+		return count;
+	}
+	
+	/**
+	 * Writes all recorded patches in ascending offset order, merging
+	 * adjacent patches into a single write, and clears the journal
+	 * 
+	 * @param channel Image file channel
+	 * @return Number of positional writes
+	 * @throws IOException Write failed
+	 */
+	int apply(FileChannel channel) throws IOException {
+		int[] order = new int[count];
+		for (int i = 0; i < count; i++) {
+			order[i] = i;
+		}
+		sort(order, new int[count], 0, count);
+		
+		int writes = 0;
+		int i = 0;
+		while (i < count) {
+			// Collect run of adjacent patches
+			long runStart = offsets[order[i]];
+			long runEnd = runStart;
+			int j = i;
+			int runLength = 0;
+			while (j < count && offsets[order[j]] == runEnd) {
+				int length = starts[order[j] + 1] - starts[order[j]];
+				runEnd += length;
+				runLength += length;
+				j++;
+			}
+			
+			ByteBuffer buffer = ByteBuffer.allocate(runLength);
+			for (int k = i; k < j; k++) {
+				int index = order[k];
+				buffer.put(data, starts[index], starts[index + 1] - starts[index]);
+			}
+			buffer.flip();
+			
+			long position = runStart;
+			while (buffer.hasRemaining()) {
+				position += channel.write(buffer, position);
+			}
+			
+			writes++;
+			i = j;
+		}
+		
+		count = 0;
+		return writes;
+	}
+	
+	/**
+	 * Merge sort of patch indices by offset
+	 */
+	private void sort(int[] order, int[] scratch, int from, int to) {
+		if (to - from < 2) {
+			return;
+		}
+		
+		int middle = (from + to) >>> 1;
+		sort(order, scratch, from, middle);
+		sort(order, scratch, middle, to);
+		
+		if (offsets[order[middle - 1]] <= offsets[order[middle]]) {
+			// Already in order
+			return;
+		}
+		
+		int left = from, right = middle, index = from;
+		while (left < middle && right < to) {
+			if (offsets[order[right]] < offsets[order[left]]) {
+				scratch[index++] = order[right++];
+			} else {
+				scratch[index++] = order[left++];
+			}
+		}
+		while (left < middle) {
+			scratch[index++] = order[left++];
+		}
+		while (right < to) {
+			scratch[index++] = order[right++];
+		}
+		System.arraycopy(scratch, from, order, from, to - from);
+	}
+	
+	/**
+	 * Reads the complete contents of a (small) data reference
+	 * 
+	 * @param reference Data reference
+	 * @return Referenced bytes
+	 * @throws HandlerException Length mismatch or read error
+	 */
+	static byte[] read(DataReference reference) throws HandlerException {
+		if (reference instanceof ByteBufferDataReference) {
+			ByteBuffer buffer = ((ByteBufferDataReference) reference).getBuffer();
+			byte[] bytes = new byte[buffer.remaining()];
+			buffer.get(bytes);
+			return bytes;
+		}
+		
+		InputStream inputStream = null;
+		try {
+			byte[] bytes = new byte[(int) reference.getLength()];
+			inputStream = reference.createInputStream();
+			int offset = 0;
+			while (offset < bytes.length) {
+				int read = inputStream.read(bytes, offset, bytes.length - offset);
+				if (read < 0) {
+					throw new HandlerException("Data reference length did not match input stream.");
+				}
+				offset += read;
+			}
+			return bytes;
+		} catch (IOException e) {
+			throw new HandlerException(e);
+		} finally {
+			try {
+				if (inputStream != null) {
+					inputStream.close();
+					inputStream = null;
+				}
+			} catch (IOException e) {
+			}
+		}
+	}
+}
@@ -32,11 +32,12 @@ public class ISO9660Config extends StandardConfig {
 	private static final Pattern ECMA6_D_CHARACTERS_PATTERN =
 			Pattern.compile("[^"+ISO9660Constants.ECMA6_D_CHARACTERS+"]");
 
-	private boolean restrictDirDepthTo8, allowASCII, padEnd;
+	private boolean restrictDirDepthTo8, allowASCII, padEnd, deduplicateContents, detectHardlinks;
 	
 	public ISO9660Config() {
 		super();
 		this.restrictDirDepthTo8 = true;
+		this.detectHardlinks = false;
 		this.allowASCII(false);
 	}
 
@@ -144,6 +145,42 @@ public class ISO9660Config extends StandardConfig {
 		super.setVolumeSetID(checkDString(volumeSetID));
 	}
 
+	/**
+	 * Store files with identical contents only once
+	 * 
+	 * @param deduplicate Whether to compare file contents and share extents
+	 */
+	public void deduplicateContents(boolean deduplicate) {
+		this.deduplicateContents = deduplicate;
+	}
+
+	/**
+	 * Returns whether files with identical contents are stored only once
+	 * 
+	 * @return Whether file contents are deduplicated
+	 */
+	public boolean contentsDeduplicated() {
+		return deduplicateContents;
+	}
+
+	/**
+	 * Store hard links to the same file only once (default: false)
+	 * 
+	 * @param detect Whether to compare file keys (device and inode)
+	 */
+	public void detectHardlinks(boolean detect) {
+		this.detectHardlinks = detect;
+	}
+
+	/**
+	 * Returns whether hard links to the same file are stored only once
+	 * 
+	 * @return Whether hard links are detected
+	 */
+	public boolean hardlinksDetected() {
+		return detectHardlinks;
+	}
+
 	public void setPadEnd(boolean padEnd) {
 		this.padEnd = padEnd;
 	}
@@ -19,15 +19,10 @@
 
 package de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl;
 
-import java.util.Date;
-import java.util.HashMap;
-
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660Directory;
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660File;
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660MovedDirectory;
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.LayoutHelper;
-import de.tu_darmstadt.informatik.rbg.hatlak.sabre.impl.BothShortDataReference;
-import de.tu_darmstadt.informatik.rbg.hatlak.sabre.impl.BothWordDataReference;
 import de.tu_darmstadt.informatik.rbg.mhartle.sabre.DataReference;
 import de.tu_darmstadt.informatik.rbg.mhartle.sabre.Fixup;
 import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
@@ -38,6 +33,9 @@ public class ISO9660DirectoryRecord {
 	private StreamHandler streamHandler;
 	private int volSeqNo;
 	private DataReference filenameDataReference;
+	private RecordEncoder encoder = null;
+	private long dataLength = -1;
+	private Fixup locationFixup = null, dataLengthFixup = null;
 	public boolean hide, isDirectory;
 	
 	/**
@@ -103,70 +101,121 @@ public class ISO9660DirectoryRecord {
 		this.hide = true;
 	}
 
-	public HashMap doDR() throws HandlerException {
-		HashMap memory = new HashMap();
-		int length = 0;
+	/**
+	 * Set encoder to be used instead of a private one
+	 * 
+	 * @param encoder Record encoder (reused by the caller)
+	 */
+	public void setEncoder(RecordEncoder encoder) {
+		this.encoder = encoder;
+	}
+	
+	/**
+	 * Set the Data Length if it is already known. It is then encoded
+	 * directly instead of as a Fixup.
+	 * 
+	 * @param dataLength Data Length
+	 */
+	public void setDataLength(long dataLength) {
+		this.dataLength = dataLength;
+	}
+	
+	/**
+	 * Encodes the Directory Record without writing it, so that System Use
+	 * Entries can be appended to the encoder before write() is called.
+	 * Fields that are not known yet are reserved as Fixups, see
+	 * getLocationFixup() and getDataLengthFixup().
+	 * 
+	 * @throws HandlerException Problems encoding the record
+	 */
+	public void encode() throws HandlerException {
+		if (encoder == null) {
+			encoder = new RecordEncoder();
+		}
 		
-		// Length of Directory Record (including System Use Area)
-		Fixup drLength = streamHandler.fixup(new ByteDataReference(0));
-		memory.put("drLengthFixup", drLength);
-		length += 1;
-
-		// Extended Attribute Record Length
-		Fixup extAttrRecordLengthFixup = streamHandler.fixup(new ByteDataReference(0));
-		memory.put("drExtAttrRecordLengthFixup", extAttrRecordLengthFixup);
-		length += 1;
+		// Length of Directory Record (including System Use Area),
+		// filled in by write()
+		encoder.putByte(0);
+		
+		// Extended Attribute Record Length (always 0)
+		encoder.putByte(0);
 
 		// Location of Extent
-		Fixup locationFixup = streamHandler.fixup(new BothWordDataReference(0));
-		memory.put("drLocationFixup", locationFixup);
-		length += 8;
-
+		locationFixup = encoder.putFixup(8);
+		
 		// Data Length
-		Fixup dataLengthFixup = streamHandler.fixup(new BothWordDataReference(0));
-		memory.put("drDataLengthFixup", dataLengthFixup);
-		length += 8;
+		if (dataLength < 0) {
+			dataLengthFixup = encoder.putFixup(8);
+		} else {
+			encoder.putBothWord(dataLength);
+		}
 		
 		// Recording Date and Time
-		Date now = new Date();
-		ISO9660ShortDateDataReference date = new ISO9660ShortDateDataReference(now);
-		streamHandler.data(date);
-		length += date.getLength();
+		encoder.putShortDate(System.currentTimeMillis());
 		
 		// File Flags
-		byte fileFlags = getFileFlags();
-		streamHandler.data(new ByteDataReference(fileFlags));
-		length += 1;
+		encoder.putByte(getFileFlags());
 		
 		// File Unit Size: 0 (no interleaving)
-		streamHandler.data(new ByteDataReference(0));
-		length += 1;
+		encoder.putByte(0);
 		
 		// Interleave Gap Size: 0 (no interleaving)
-		streamHandler.data(new ByteDataReference(0));
-		length += 1;
+		encoder.putByte(0);
 		
 		// Volume Sequence Number
-		streamHandler.data(new BothShortDataReference(volSeqNo));
-		length += 4;
+		encoder.putBothShort(volSeqNo);
 
 		// Length of File Identifier
-		streamHandler.data(new ByteDataReference(filenameDataReference.getLength()));
-		length += 1;
+		encoder.putByte((int) filenameDataReference.getLength());
 		
 		// File Identifier
-		streamHandler.data(filenameDataReference);
-		length += filenameDataReference.getLength();
+		encoder.put(filenameDataReference);
 		
 		// Padding Field
 		if (filenameDataReference.getLength()%2==0) {
-			streamHandler.data(new ByteDataReference(0));
-			length += 1;
+			encoder.putByte(0);
+		}
+	}
+	
+	/**
+	 * Fills in the length of the encoded Directory Record and writes it
+	 * together with the System Use Entries appended to the encoder
+	 * 
+	 * @throws HandlerException Problems writing the record
+	 */
+	public void write() throws HandlerException {
+		int length = encoder.length();
+		if (length%2==1) {
+			// DR length must be an even number, see ISO 9660 section 9.1.13
+			encoder.putByte(0);
+			length++;
 		}
 		
-		memory.put("drLength", new Integer(length));
+		if (length > 0xFF) {
+			throw new HandlerException("Invalid Directory Record Length: " + length);
+		}
 		
-		return memory;
+		encoder.setByte(0, length);
+		encoder.writeTo(streamHandler);
+	}
+	
+	/**
+	 * Returns the Fixup of the Location of Extent
+	 * 
+	 * @return Location Fixup
+	 */
+	public Fixup getLocationFixup() {
+		return locationFixup;
+	}
+	
+	/**
+	 * Returns the Fixup of the Data Length, unless it has been set before
+	 * encoding, see setDataLength()
+	 * 
+	 * @return Data Length Fixup or null
+	 */
+	public Fixup getDataLengthFixup() {
+		return dataLengthFixup;
 	}
 
 	private byte getFileFlags() {
@@ -20,7 +20,6 @@
 package de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -32,7 +31,7 @@ import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660HierarchyObject;
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660MovedDirectory;
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660RootDirectory;
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.LayoutHelper;
-import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.NamingConventions;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.NamingConventionsProcessor;
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.StandardConfig;
 import de.tu_darmstadt.informatik.rbg.hatlak.sabre.impl.BothWordDataReference;
 import de.tu_darmstadt.informatik.rbg.hatlak.sabre.impl.EmptyByteArrayDataReference;
@@ -41,7 +40,6 @@ import de.tu_darmstadt.informatik.rbg.mhartle.sabre.DataReference;
 import de.tu_darmstadt.informatik.rbg.mhartle.sabre.Fixup;
 import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
 import de.tu_darmstadt.informatik.rbg.mhartle.sabre.StreamHandler;
-import de.tu_darmstadt.informatik.rbg.mhartle.sabre.impl.ByteDataReference;
 import de.tu_darmstadt.informatik.rbg.mhartle.sabre.impl.WordDataReference;
 
 public class ISO9660Factory {
@@ -49,8 +47,11 @@ public class ISO9660Factory {
 	StandardConfig config;
 	LayoutHelper helper;
 	ISO9660RootDirectory root;
-	HashMap volumeFixups, typeLPTFixups, typeMPTFixups, dirFixups, fileFixups, locationFixups;
+	HashMap volumeFixups, typeLPTFixups, typeMPTFixups, dirFixups, locationFixups;
+	// Location Fixups of the files by index (see ISO9660File.getIndex())
+	Fixup[] fileFixups;
 	List emptyFileFixups;
+	RecordEncoder encoder;
 	
 	public ISO9660Factory(StreamHandler streamHandler, StandardConfig config, LayoutHelper helper, ISO9660RootDirectory root, HashMap volumeFixups) {
 		this.streamHandler = streamHandler;
@@ -65,23 +66,32 @@ public class ISO9660Factory {
 		this.dirFixups = new HashMap(dirCount);
 		
 		int fileCount = root.deepFileCount() + 1;
-		this.fileFixups = new HashMap(fileCount);
+		this.fileFixups = new Fixup[fileCount];
 		this.locationFixups = new HashMap(fileCount);
 
 		this.emptyFileFixups = new ArrayList();
+		this.encoder = new RecordEncoder();
 	}
 	
 	public void applyNamingConventions() throws HandlerException {
-		NamingConventions namingConventions = helper.getNamingConventions();
-		namingConventions.processDirectory(root);
-		
-		Iterator dit = root.unsortedIterator();
-		while (dit.hasNext()) {
-			ISO9660Directory dir = (ISO9660Directory) dit.next();
-			namingConventions.processDirectory(dir);
+		NamingConventionsProcessor processor = new NamingConventionsProcessor(config.getNamingThreads());
+		try {
+			applyNamingConventions(processor);
+		} finally {
+			processor.finish();
 		}
 	}
 	
+	/**
+	 * Start applying the naming conventions (completed by processor.finish())
+	 * 
+	 * @param processor Naming conventions processor
+	 * @throws HandlerException Problems renaming
+	 */
+	public void applyNamingConventions(NamingConventionsProcessor processor) throws HandlerException {
+		processor.add(helper.getNamingConventions(), root);
+	}
+	
 	public void relocateDirectories() {
 		if (root.deepLevelCount()>=8) {
 			root.setMovedDirectoryStore();
@@ -200,35 +210,33 @@ public class ISO9660Factory {
 		int location = helper.getCurrentLocation();
 		
 		// "dot": Current Directory
-		HashMap dotMemory = doDRLengthFixup(doDotDR(dir));
-		Fixup dotLocationFixup = (Fixup) dotMemory.get("drLocationFixup");		
-		Fixup dotLengthFixup = (Fixup) dotMemory.get("drDataLengthFixup");
+		ISO9660DirectoryRecord dotDR = doDotDR(dir);
+		dotDR.write();
+		Fixup dotLocationFixup = dotDR.getLocationFixup();
+		Fixup dotLengthFixup = dotDR.getDataLengthFixup();
 			
 		// "dotdot": Parent Directory
-		HashMap dotdotMemory = doDRLengthFixup(doDotDotDR(dir));
-		Fixup dotdotLocationFixup = (Fixup) dotdotMemory.get("drLocationFixup");
-		Fixup dotdotLengthFixup = (Fixup) dotdotMemory.get("drDataLengthFixup");
+		ISO9660DirectoryRecord dotdotDR = doDotDotDR(dir);
+		dotdotDR.write();
+		Fixup dotdotLocationFixup = dotdotDR.getLocationFixup();
+		Fixup dotdotLengthFixup = dotdotDR.getDataLengthFixup();
 
-		// Prepare files and directories to be processed in sorted order
-		List<ISO9660HierarchyObject> contents = new ArrayList<ISO9660HierarchyObject>();		contents.addAll(dir.getDirectories());
-		contents.addAll(dir.getFiles());
-		Collections.sort(contents);
-			
-		Iterator<ISO9660HierarchyObject> it = contents.iterator();
+		// Process files and directories in sorted order
+		Iterator<ISO9660HierarchyObject> it = dir.getContents().iterator();
 		while (it.hasNext()) {
 			doBlockCheck(position);
 			ISO9660HierarchyObject object = it.next();
 			if (object instanceof ISO9660Directory) {
 				ISO9660Directory subdir = (ISO9660Directory) object;
 				if (subdir.isMoved() && dir!=root.getMovedDirectoriesStore()) {
-					doDRLengthFixup(doFakeDR(subdir));
+					doFakeDR(subdir).write();
 				} else {
-					doDRLengthFixup(doDR(subdir));
+					doDR(subdir).write();
 				}
 			} else
 			if (object instanceof ISO9660File) {
 				ISO9660File file = (ISO9660File) object;
-				doDRLengthFixup(doDR(file));
+				doDR(file).write();
 			} else {
 				throw new HandlerException("Neither file nor directory: " + object);
 			}
@@ -285,79 +293,58 @@ public class ISO9660Factory {
 		typeMPTDirLocation.close();
 	}
 	
-	private HashMap doDRLengthFixup(HashMap memory) throws HandlerException {
-		int drLength = ((Integer) memory.get("drLength")).intValue();
-		memory.remove("drLength");
-		
-		if (drLength%2==1) {
-			// DR length must be an even number, see ISO 9660 section 9.1.13
-			streamHandler.data(new ByteDataReference(0));
-			drLength++;
-		}
-		
-		if (drLength > 0xFF) {
-			throw new HandlerException("Invalid Directory Record Length: " + drLength);
-		}
-		
-		// Write and close Directory Record Length Fixup
-		Fixup drLengthFixup = (Fixup) memory.get("drLengthFixup");	 
-		drLengthFixup.data(new ByteDataReference(drLength));
-		drLengthFixup.close();
-		memory.remove("drLengthFixup");
-
-		return memory;
-	}
-
-	HashMap doFakeDR(ISO9660Directory dir) throws HandlerException {
+	ISO9660DirectoryRecord doFakeDR(ISO9660Directory dir) throws HandlerException {
 		ISO9660MovedDirectory moved = new ISO9660MovedDirectory(dir.getName());
 		ISO9660DirectoryRecord dr = new ISO9660DirectoryRecord(streamHandler, moved, helper);
-		HashMap memory = dr.doDR();
+		dr.setEncoder(encoder);
+		dr.setDataLength(0);
+		dr.encode();
 		
 		// Remember Location Fixup
-		Fixup locationFixup = (Fixup) memory.get("drLocationFixup");
-		emptyFileFixups.add(locationFixup);
+		emptyFileFixups.add(dr.getLocationFixup());
 		
-		// Write and close Length Fixup
-		Fixup dataLengthFixup = (Fixup) memory.get("drDataLengthFixup");
-		dataLengthFixup.data(new BothWordDataReference(0));
-		dataLengthFixup.close();
-		
-		return memory;
+		return dr;
 	}
 
-	HashMap doDR(ISO9660File file) throws HandlerException {
+	ISO9660DirectoryRecord doDR(ISO9660File file) throws HandlerException {
 		ISO9660DirectoryRecord dr = new ISO9660DirectoryRecord(streamHandler, file, helper);
-		HashMap memory = dr.doDR();
+		dr.setEncoder(encoder);
+		dr.setDataLength(file.length());
+		dr.encode();
 		
 		// Remember Location Fixup
-		Fixup locationFixup = (Fixup) memory.get("drLocationFixup");
-		if (fileFixups.containsKey(file.getID())) {
+		int index = file.getIndex();
+		if (index < 0) {
+			throw new RuntimeException("File not indexed: " + file.getISOPath());
+		}
+		if (index >= fileFixups.length) {
+			Fixup[] newFileFixups = new Fixup[Math.max(index + 1, fileFixups.length * 2)];
+			System.arraycopy(fileFixups, 0, newFileFixups, 0, fileFixups.length);
+			fileFixups = newFileFixups;
+		}
+		if (fileFixups[index]!=null) {
 			throw new RuntimeException("Duplicate file encountered: " + file.getISOPath());
 		}
-		fileFixups.put(file.getID(), locationFixup);
-		
-		// Write and close Length Fixup
-		Fixup dataLengthFixup = (Fixup) memory.get("drDataLengthFixup");
-		dataLengthFixup.data(new BothWordDataReference(file.length()));
-		dataLengthFixup.close();
+		fileFixups[index] = dr.getLocationFixup();
 		
-		return memory;
+		return dr;
 	}
 	
-	HashMap doDR(ISO9660Directory dir) throws HandlerException {
+	ISO9660DirectoryRecord doDR(ISO9660Directory dir) throws HandlerException {
 		ISO9660DirectoryRecord dr = new ISO9660DirectoryRecord(streamHandler, dir, helper);
-		HashMap memory = dr.doDR();
+		dr.setEncoder(encoder);
+		dr.encode();
 		
 		// Remember Location and Length Fixups
 		DirFixupPair dirFixupPair = new DirFixupPair();
-		dirFixupPair.location = (Fixup) memory.get("drLocationFixup");
-		dirFixupPair.length = (Fixup) memory.get("drDataLengthFixup");
+		dirFixupPair.location = dr.getLocationFixup();
+		dirFixupPair.length = dr.getDataLengthFixup();
 		dirFixups.put(dir, dirFixupPair);
 		
-		return memory;
+		return dr;
 	}
 	
-	HashMap doDotDR(ISO9660Directory dir) throws HandlerException {
+	ISO9660DirectoryRecord doDotDR(ISO9660Directory dir) throws HandlerException {
 		Object dot;
 		if (dir==root) {
 			dot = ISO9660Constants.FI_ROOT;
@@ -366,14 +353,18 @@ public class ISO9660Factory {
 		}
 		
 		ISO9660DirectoryRecord dr = new ISO9660DirectoryRecord(streamHandler, dot, dir, helper);
-		return dr.doDR();		
+		dr.setEncoder(encoder);
+		dr.encode();
+		return dr;
 	}
 
-	HashMap doDotDotDR(ISO9660Directory dir) throws HandlerException {
+	ISO9660DirectoryRecord doDotDotDR(ISO9660Directory dir) throws HandlerException {
 		ISO9660Directory parentDir = dir.getParentDirectory();
 		Object dotdot = ISO9660Constants.FI_DOTDOT;
 		ISO9660DirectoryRecord dr = new ISO9660DirectoryRecord(streamHandler, dotdot, parentDir, helper);
-		return dr.doDR();
+		dr.setEncoder(encoder);
+		dr.encode();
+		return dr;
 	}
 	
 	private void doBlockCheck(long position) throws HandlerException {
@@ -387,10 +378,11 @@ public class ISO9660Factory {
 	}
 
 	public void doFileFixup(ISO9660File file) throws HandlerException {
-		if (!fileFixups.containsKey(file.getID())) {
-			throw new RuntimeException("File " + file.getID() + " missing: " + file.getISOPath());
+		int index = file.getIndex();
+		if (index < 0 || index >= fileFixups.length || fileFixups[index]==null) {
+			throw new RuntimeException("File " + index + " missing: " + file.getISOPath());
 		}		
-		Fixup locationFixup = (Fixup) fileFixups.get(file.getID());
+		Fixup locationFixup = fileFixups[index];
 
 		int location = helper.getCurrentLocation();
 		
@@ -33,6 +33,7 @@ public class ISO9660Handler extends StandardHandler {
 	private LayoutHelper helper;
 	private HashMap volumeFixups;
 	private ISO9660Factory factory;
+	private NamingConventionsProcessor namingProcessor;
 	
 	public ISO9660Handler(StreamHandler streamHandler, ISO9660RootDirectory root, ISO9660Config config, RockRidgeConfig rrConfig) throws HandlerException {
 		super(streamHandler, root, config);
@@ -42,8 +43,8 @@ public class ISO9660Handler extends StandardHandler {
 
 		checkMetadataFiles();
 
-		// Use a copy of the original root for ISO 9660
-		ISO9660RootDirectory isoRoot = (ISO9660RootDirectory) root.clone();
+		// Use a namespace of the original root for ISO 9660
+		ISO9660RootDirectory isoRoot = root.createNamespace();
 		this.helper = new ISO9660LayoutHelper(this, isoRoot);
 		
 		if (rrConfig!=null) {
@@ -56,7 +57,31 @@ public class ISO9660Handler extends StandardHandler {
 			factory.relocateDirectories();
 		}
 		
-		factory.applyNamingConventions();
+		// Applied by startDocument(), possibly in parallel to other namespaces
+		namingProcessor = new NamingConventionsProcessor(config.getNamingThreads());
+	}
+	
+	public void startDocument() throws HandlerException {
+		boolean started = false;
+		try {
+			factory.applyNamingConventions(namingProcessor);
+			super.startDocument();
+			started = true;
+		} finally {
+			if (!started) {
+				namingProcessor.shutdown();
+			}
+		}
+		namingProcessor.finish();
+	}
+	
+	/**
+	 * Returns the naming conventions applied (ISO 9660 and Rock Ridge)
+	 * 
+	 * @return Naming conventions
+	 */
+	public List<NamingConventions> getNamingConventions() {
+		return namingProcessor.getNamingConventions();
 	}
 	
 	public void startElement(Element element) throws HandlerException {
@@ -68,6 +93,9 @@ public class ISO9660Handler extends StandardHandler {
 		if (element instanceof FileElement) {
 			FileElement fileElement = (FileElement) element;
 			factory.doFileFixup(fileElement.getFile());
+		} else
+		if (element instanceof SharedFileElement) {
+			factory.doFileFixup(((SharedFileElement) element).getFile());
 		}
 		super.startElement(element);
 	}
@@ -21,10 +21,10 @@ package de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl;
 
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Pattern;
 
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660Directory;
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660File;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.NameNormalizer;
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.NamingConventions;
 import de.tu_darmstadt.informatik.rbg.hatlak.joliet.impl.JolietNamingConventions;
 import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
@@ -33,9 +33,7 @@ public class ISO9660NamingConventions extends NamingConventions {
 	public static int INTERCHANGE_LEVEL = 1;
 	public static boolean FORCE_ISO9660_CHARSET = true;
 	public static boolean FORCE_DOT_DELIMITER = true;
-	private static final Pattern AZ09 = Pattern.compile("[^A-Z0-9_]");
-	private boolean enforce8plus3;
-	private int MAX_DIRECTORY_LENGTH, MAX_FILENAME_LENGTH, MAX_EXTENSION_LENGTH;
+	private static final NameNormalizer AZ09 = NameNormalizer.allowing("ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789_");
 
 	public ISO9660NamingConventions() {
 		super("ISO 9660");
@@ -43,27 +41,36 @@ public class ISO9660NamingConventions extends NamingConventions {
 	
 	@Override
 	public void apply(ISO9660Directory dir) throws HandlerException {
+		setFilename(dir, normalizeDirectoryName(dir.getName()));
+	}
+
+	@Override
+	public void apply(ISO9660File file) throws HandlerException {
+		String[] name = normalizeFilename(file.getFilename(), file.getExtension(), file.getVersion(), file.enforces8plus3());
+		file.enforceDotDelimiter(FORCE_DOT_DELIMITER);
+		setFilename(file, name[0], name[1]);
+	}
+
+	@Override
+	public String normalizeDirectoryName(String name) throws HandlerException {
 		// ISO 9660 directory restrictions:
 		// - character set: uppercase letters, digits and underscore
 		// - filename may NOT contain dot
 		// - filename non-empty
-		// - filename <= MAX_DIRECTORY_LENGTH bytes
-		init();
+		// - filename <= MAX_DIRECTORY_LENGTH bytes (8 for Interchange Level 1, else 31)
+		int MAX_DIRECTORY_LENGTH = INTERCHANGE_LEVEL==1 ? 8 : 31;
 
-		String filename = normalize(dir.getName());
-		if (filename.length() > MAX_DIRECTORY_LENGTH) {
-			filename = filename.substring(0, MAX_DIRECTORY_LENGTH);
-		}
+		String filename = normalize(name, MAX_DIRECTORY_LENGTH);
 
 		if (filename.length()==0) {
 			throw new HandlerException(getID() + ": Empty directory name encountered.");
 		}
 		
-		setFilename(dir, filename);
+		return filename;
 	}
 
 	@Override
-	public void apply(ISO9660File file) throws HandlerException {
+	public String[] normalizeFilename(String filename, String extension, int version, boolean enforce8plus3) throws HandlerException {
 		// ISO 9660 file name restrictions:
 		// - character set: uppercase letters, digits, underscore, dot and semicolon
 		// - filename + extension <= 30 bytes
@@ -71,25 +78,25 @@ public class ISO9660NamingConventions extends NamingConventions {
 		// - extension <= MAX_EXTENSION_LENGTH
 		// - either filename or extension must be non-empty 
 		// - file version must be present and delimited by semicolon
-		enforce8plus3(file.enforces8plus3());
-		init();
+		boolean enforces8plus3 = INTERCHANGE_LEVEL==1 || enforce8plus3;
+		int MAX_FILENAME_LENGTH = enforces8plus3 ? 8 : 0;
+		int MAX_EXTENSION_LENGTH = enforces8plus3 ? 3 : 0;
 
-		String filename = normalize(file.getFilename());
-		String extension = normalize(file.getExtension());
-		file.enforceDotDelimiter(FORCE_DOT_DELIMITER);
+		filename = normalize(filename, Integer.MAX_VALUE);
+		extension = normalize(extension, Integer.MAX_VALUE);
 
 		if (filename.length()==0 && extension.length()==0) {
 			throw new HandlerException(getID() + ": Empty file name encountered.");
 		}
 			
-		if (enforces8plus3()) {
+		if (enforces8plus3) {
 			if (filename.length() > MAX_FILENAME_LENGTH) {
 				filename = filename.substring(0, MAX_FILENAME_LENGTH);
 			}
 			if (extension.length() > MAX_EXTENSION_LENGTH) {
 				String mapping = getExtensionMapping(extension);
 				if (mapping!=null && mapping.length() <= MAX_EXTENSION_LENGTH) {
-					extension = normalize(mapping);
+					extension = normalize(mapping, Integer.MAX_VALUE);
 				} else {
 					extension = extension.substring(0, MAX_EXTENSION_LENGTH);
 				}
@@ -104,7 +111,7 @@ public class ISO9660NamingConventions extends NamingConventions {
 					// Shorten extension
 					String mapping = getExtensionMapping(extension);
 					if (mapping!=null && mapping.length() <= MAX_EXTENSION_LENGTH) {
-						extension = normalize(mapping);
+						extension = normalize(mapping, Integer.MAX_VALUE);
 					} else {
 						extension = extension.substring(0, 30-filename.length());
 					}
@@ -112,39 +119,14 @@ public class ISO9660NamingConventions extends NamingConventions {
 			}
 		}
 		
-		setFilename(file, filename, extension);
-	}
-
-	public void init() {
-		if (INTERCHANGE_LEVEL==1) {
-			enforce8plus3(true);
-		}
-		
-		if (enforces8plus3()) {
-			// Interchange Level 1 (or explicitly requested): Directories 8, files 8+3 characters
-			MAX_DIRECTORY_LENGTH = 8;
-			MAX_FILENAME_LENGTH = 8;
-			MAX_EXTENSION_LENGTH = 3;
-		} else {
-			MAX_DIRECTORY_LENGTH = 31;
-			MAX_FILENAME_LENGTH = 0;
-			MAX_EXTENSION_LENGTH = 0;
-		}
-	}
-
-	void enforce8plus3(boolean flag) {
-		this.enforce8plus3 = flag;
-	}
-	
-	boolean enforces8plus3() {
-		return enforce8plus3;
+		return new String[] {filename, extension};
 	}
 
-	private String normalize(String name) {
+	private String normalize(String name, int maxLength) {
 		if (FORCE_ISO9660_CHARSET)
-			return AZ09.matcher(name.toUpperCase()).replaceAll("_");
+			return AZ09.normalize(name.toUpperCase(), maxLength);
 		else
-			return JolietNamingConventions.PATTERN.matcher(name).replaceAll("_");
+			return JolietNamingConventions.NORMALIZER.normalize(name, maxLength);
 	}
 	
 	@Override
@@ -161,7 +143,7 @@ public class ISO9660NamingConventions extends NamingConventions {
 	public void checkPathLength(String isoPath) {
 		// ISO 9660:6.8.2.1: 255 Byte (255 characters)
 		if (isoPath.length() > 255) {
-			System.out.println(getID() + ": Path length exceeds limit: " + isoPath);
+			println(getID() + ": Path length exceeds limit: " + isoPath);
 		}
 	}
 }
@@ -31,7 +31,7 @@ import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660Directory;
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660File;
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660RootDirectory;
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.LayoutHelper;
-import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.NamingConventions;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.NamingConventionsProcessor;
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.StandardConfig;
 import de.tu_darmstadt.informatik.rbg.hatlak.rockridge.impl.POSIXFileMode;
 import de.tu_darmstadt.informatik.rbg.hatlak.rockridge.impl.RRIPFactory;
@@ -56,28 +56,20 @@ public class ISO9660RockRidgeFactory extends ISO9660Factory {
 	
 	public ISO9660RockRidgeFactory(StreamHandler streamHandler, StandardConfig config, LayoutHelper helper, ISO9660RootDirectory root, ISO9660RootDirectory isoRoot, HashMap volumeFixups) {
 		super(streamHandler, config, helper, isoRoot, volumeFixups);
-		this.rripFactory = new RRIPFactory(streamHandler);
+		this.rripFactory = new RRIPFactory(streamHandler, encoder);
 		this.unfinishedNMEntries = new LinkedList<UnfinishedNMEntry>();
 		
-		// Use a copy of the original root for Rock Ridge
-		rripRoot = (ISO9660RootDirectory) root.clone();
+		// Use a namespace of the original root for Rock Ridge
+		rripRoot = root.createNamespace();
 		this.helper = new RockRidgeLayoutHelper(streamHandler, isoRoot, rripRoot);
 		
 		originalParentMapper = new HashMap<ISO9660Directory, Collection<ISO9660Directory>>();
 	}
 
 	@Override
-	public void applyNamingConventions() throws HandlerException {
-		super.applyNamingConventions();
-
-		NamingConventions namingConventions = helper.getNamingConventions();
-		namingConventions.processDirectory(rripRoot);
-		
-		Iterator<ISO9660Directory> sit = rripRoot.unsortedIterator();
-		while (sit.hasNext()) {
-			ISO9660Directory dir = sit.next();
-			namingConventions.processDirectory(dir);
-		}
+	public void applyNamingConventions(NamingConventionsProcessor processor) throws HandlerException {
+		super.applyNamingConventions(processor);
+		processor.add(helper.getNamingConventions(), rripRoot);
 	}
 	
 	@Override
@@ -147,9 +139,8 @@ public class ISO9660RockRidgeFactory extends ISO9660Factory {
 	}
 		
 	@Override
-	HashMap doFakeDR(ISO9660Directory dir) throws HandlerException {
-		long position = streamHandler.mark();
-		HashMap memory = super.doFakeDR(dir);
+	ISO9660DirectoryRecord doFakeDR(ISO9660Directory dir) throws HandlerException {
+		ISO9660DirectoryRecord dr = super.doFakeDR(dir);
 
 		if (RRIPFactory.MKISOFS_COMPATIBILITY) {
 			// RR: Recorded Fields
@@ -166,20 +157,16 @@ public class ISO9660RockRidgeFactory extends ISO9660Factory {
 		// CL: Child link (location of the actual directory record)
 		childLocationFixups.put(dir, rripFactory.doCLEntry());
 
-		// Compute length up to here
-		int length = helper.getDifferenceTo(position);
-
 		// NM: Alternate Name
-		length = doNM(helper.getFilenameDataReference(dir), length);
+		doNM(helper.getFilenameDataReference(dir));
 		
-		// Update Directory Record Length
-		return finalizeDR(memory, length);
+		// Finish System Use Area
+		return finalizeDR(dr);
 	}
 	
 	@Override
-	HashMap doDR(ISO9660File file) throws HandlerException {
-		long position = streamHandler.mark();
-		HashMap memory = super.doDR(file);
+	ISO9660DirectoryRecord doDR(ISO9660File file) throws HandlerException {
+		ISO9660DirectoryRecord dr = super.doDR(file);
 		
 		if (RRIPFactory.MKISOFS_COMPATIBILITY) {
 			// RR: Recorded Fields
@@ -190,26 +177,21 @@ public class ISO9660RockRidgeFactory extends ISO9660Factory {
 		// PX: POSIX File Attributes
 		POSIXFileMode fileMode = file.getFileMode();
 		if (fileMode == null) fileMode = POSIXFileMode.FILE_DEFAULT;
-		rripFactory.doPXEntry(fileMode.getFileMode(), 1, 0, 0, 1);
+		rripFactory.doPXEntry(fileMode.getFileMode(), file.getLinks(), 0, 0, 1);
 		
 		// TF: Timestamp
-		ISO9660ShortDateDataReference date = new ISO9660ShortDateDataReference(file.lastModified());
-		rripFactory.doTFEntry(RRIPFactory.TF_MODIFY, date);
-
-		// Compute length up to here
-		int length = helper.getDifferenceTo(position);
+		rripFactory.doTFEntry(RRIPFactory.TF_MODIFY, file.lastModified());
 
 		// NM: Alternate Name
-		length = doNM(helper.getFilenameDataReference(file), length);
+		doNM(helper.getFilenameDataReference(file));
 		
-		// Update Directory Record Length
-		return finalizeDR(memory, length);
+		// Finish System Use Area
+		return finalizeDR(dr);
 	}
 	
 	@Override
-	HashMap doDR(ISO9660Directory dir) throws HandlerException {
-		long position = streamHandler.mark();
-		HashMap memory = super.doDR(dir);
+	ISO9660DirectoryRecord doDR(ISO9660Directory dir) throws HandlerException {
+		ISO9660DirectoryRecord dr = super.doDR(dir);
 		
 		if (RRIPFactory.MKISOFS_COMPATIBILITY) {
 			// RR: Recorded Fields
@@ -232,23 +214,18 @@ public class ISO9660RockRidgeFactory extends ISO9660Factory {
 		rripFactory.doPXEntry(fileMode.getFileMode(), fileLinks, 0, 0, 1);
 		
 		// TF: Timestamp
-		ISO9660ShortDateDataReference date = new ISO9660ShortDateDataReference(dir.lastModified());
-		rripFactory.doTFEntry(RRIPFactory.TF_MODIFY, date);
-
-		// Compute length up to here
-		int length = helper.getDifferenceTo(position);
+		rripFactory.doTFEntry(RRIPFactory.TF_MODIFY, dir.lastModified());
 
 		// NM: Alternate Name
-		length = doNM(helper.getFilenameDataReference(dir), length);
-
-		// Update Directory Record Length
-		return finalizeDR(memory, length);
+		doNM(helper.getFilenameDataReference(dir));
+		
+		// Finish System Use Area
+		return finalizeDR(dr);
 	}
 
 	@Override
-	HashMap doDotDR(ISO9660Directory dir) throws HandlerException {
-		long position = streamHandler.mark();
-		HashMap memory = super.doDotDR(dir);
+	ISO9660DirectoryRecord doDotDR(ISO9660Directory dir) throws HandlerException {
+		ISO9660DirectoryRecord dr = super.doDotDR(dir);
 		
 		if (dir==root) {
 			// SP: SUSP Indicator
@@ -268,8 +245,7 @@ public class ISO9660RockRidgeFactory extends ISO9660Factory {
 		rripFactory.doPXEntry(fileMode.getFileMode(), fileLinks, 0, 0, 1);
 		
 		// TF: Timestamp
-		ISO9660ShortDateDataReference date = new ISO9660ShortDateDataReference(dir.lastModified());
-		rripFactory.doTFEntry(RRIPFactory.TF_MODIFY, date);
+		rripFactory.doTFEntry(RRIPFactory.TF_MODIFY, dir.lastModified());
 
 		if (dir==root) {
 			// CE: Continuation Area for RRIP ER
@@ -283,14 +259,13 @@ public class ISO9660RockRidgeFactory extends ISO9660Factory {
 			rripEROffsetFixup.close();
 		}
 		
-		// Update Directory Record Length
-		return finalizeDR(memory, helper.getDifferenceTo(position));
+		// Finish System Use Area
+		return finalizeDR(dr);
 	}
 
 	@Override
-	HashMap doDotDotDR(ISO9660Directory dir) throws HandlerException {
-		long position = streamHandler.mark();
-		HashMap memory = super.doDotDotDR(dir);
+	ISO9660DirectoryRecord doDotDotDR(ISO9660Directory dir) throws HandlerException {
+		ISO9660DirectoryRecord dr = super.doDotDotDR(dir);
 		ISO9660Directory parentDir = dir.getParentDirectory();
 		
 		if (RRIPFactory.MKISOFS_COMPATIBILITY) {
@@ -314,22 +289,19 @@ public class ISO9660RockRidgeFactory extends ISO9660Factory {
 		rripFactory.doPXEntry(fileMode.getFileMode(), fileLinks, 0, 0, 1);
 		
 		// TF: Timestamp
-		ISO9660ShortDateDataReference date = new ISO9660ShortDateDataReference(parentDir.lastModified());
-		rripFactory.doTFEntry(RRIPFactory.TF_MODIFY, date);
+		rripFactory.doTFEntry(RRIPFactory.TF_MODIFY, parentDir.lastModified());
 
-		// Update Directory Record Length
-		return finalizeDR(memory, helper.getDifferenceTo(position));
+		// Finish System Use Area
+		return finalizeDR(dr);
 	}
 	
-	private int doNM(FilenameDataReference filename, int drLength) throws HandlerException {
-		int lengthToAdd = RRIPFactory.NM_ENTRY_LENGTH;
+	private void doNM(FilenameDataReference filename) throws HandlerException {
 		// Note: Since DR length must be an even number (see ISO 9660 section 9.1.13),
 		// a DR length of 255 would be changed to 256 which does not fit into a byte
-		int rest = 254 - drLength;
+		int rest = 254 - encoder.length();
 		if (rest >= filename.getLength() + RRIPFactory.NM_ENTRY_LENGTH) {
 			// Filename fits into this System Use Area
 			rripFactory.doNMEntry(0, filename);
-			lengthToAdd += filename.getLength();
 		} else {
 			// Filename exceeds space left -> Continuation Area needed
 			int prefixLength = rest - (RRIPFactory.NM_ENTRY_LENGTH + RRIPFactory.CE_ENTRY_LENGTH);
@@ -345,20 +317,16 @@ public class ISO9660RockRidgeFactory extends ISO9660Factory {
 			unfinishedNMEntry.length = (Fixup) ceMemory.get("ceLengthFixup");
 			unfinishedNMEntry.filenameRest = name.substring(prefixLength);
 			unfinishedNMEntries.add(unfinishedNMEntry);
-			
-			lengthToAdd += prefixLength + RRIPFactory.CE_ENTRY_LENGTH;
 		}
-		
-		return drLength + lengthToAdd;
 	}
 
-	private HashMap finalizeDR(HashMap memory, int length) throws HandlerException {
+	private ISO9660DirectoryRecord finalizeDR(ISO9660DirectoryRecord dr) throws HandlerException {
+		int length = encoder.length();
 		if (length<=250) {
 			// Write ST entry if at least 4 bytes are left
-			length = doST(length);
+			doST(length);
 		}
-		memory.put("drLength", new Integer(length));
-		return memory;
+		return dr;
 	}
 
 	private int doST(int length) throws HandlerException {
@@ -0,0 +1,396 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import de.tu_darmstadt.informatik.rbg.hatlak.sabre.impl.ByteBufferDataReference;
+import de.tu_darmstadt.informatik.rbg.hatlak.sabre.impl.EmptyByteArrayDataReference;
+import de.tu_darmstadt.informatik.rbg.hatlak.sabre.impl.FileChannelDataReference;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.DataReference;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.Element;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.Fixup;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.StreamHandler;
+
+/**
+ * ISO image file handler that writes through a single FileChannel.
+ * File contents referenced by a FileChannelDataReference are copied
+ * using FileChannel.transferTo(), i.e. without passing through the
+ * Java heap. All other (synthetic) data is collected in a buffer.
+ * Fixups are patched into that buffer while their region has not
+ * been flushed yet; all other fixups are journaled and written in a
+ * single pass sorted by offset at the end of the document.
+ * Optionally, file contents are copied by a pool of worker threads
+ * (see setContentThreads()) while the metadata is being written.
+ */
+public class ISOImageChannelHandler implements StreamHandler, MeteredOutput, ProgressReportingOutput, Closeable {
+	private RandomAccessFile file = null;
+	private FileChannel channel = null;
+	private long position = 0, bufferPosition = 0;
+	
+	private static final int BUFFER_LENGTH = 1048576;
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_LENGTH);
+	
+	private final FixupJournal journal = new FixupJournal();
+	private int bufferedPatches = 0, journaledPatches = 0, journalWrites = 0;
+	
+	private int contentThreads = 1;
+	private long contentBudget = 64 * 1048576;
+	private ParallelContentWriter contentWriter = null;
+	private long stalls = 0, stallTime = 0;
+	
+	private ProgressReporter progress = null;
+	// Within a FileElement, before its contents
+	private boolean fileContents = false;
+
+	/**
+	 * ISO Image Channel Handler
+	 * 
+	 * @param file ISO image output file
+	 * @throws FileNotFoundException File not found
+	 */
+	public ISOImageChannelHandler(File file) throws FileNotFoundException {
+		this.file = new RandomAccessFile(file, "rw");
+		this.channel = this.file.getChannel();
+	}
+
+	/**
+	 * Set number of threads copying file contents (default: 1, i.e.
+	 * file contents are copied sequentially)
+	 * 
+	 * @param contentThreads Number of threads
+	 */
+	public void setContentThreads(int contentThreads) {
+		this.contentThreads = contentThreads;
+	}
+
+	/**
+	 * Set maximum number of bytes of file contents queued or being copied
+	 * at a time when using multiple threads (default: 64 MB)
+	 * 
+	 * @param contentBudget Number of bytes
+	 */
+	public void setContentBudget(long contentBudget) {
+		this.contentBudget = contentBudget;
+	}
+
+	public void startDocument() throws HandlerException {
+		try {
+			channel.truncate(0);
+		} catch (IOException e) {
+			throw new HandlerException(e);
+		}
+		if (contentThreads > 1) {
+			contentWriter = new ParallelContentWriter(channel, contentThreads, contentBudget);
+			contentWriter.setProgressReporter(progress);
+		}
+	}
+
+	public void setProgressReporter(ProgressReporter progress) {
+		this.progress = progress;
+	}
+
+	public void startElement(Element element) throws HandlerException {
+		fileContents = element instanceof FileElement;
+	}
+
+	public void data(DataReference reference) throws HandlerException {
+		boolean contents = fileContents;
+		fileContents = false;
+		if (reference instanceof FileChannelDataReference) {
+			transfer((FileChannelDataReference) reference, contents);
+		} else
+		if (reference instanceof ByteBufferDataReference) {
+			put(((ByteBufferDataReference) reference).getBuffer());
+		} else
+		if (reference instanceof EmptyByteArrayDataReference) {
+			fill(reference.getLength());
+		} else {
+			copy(reference);
+		}
+	}
+
+	private void put(ByteBuffer source) throws HandlerException {
+		try {
+			int limit = source.limit();
+			while (source.hasRemaining()) {
+				if (!buffer.hasRemaining()) {
+					flush();
+				}
+				source.limit(Math.min(limit, source.position() + buffer.remaining()));
+				position += source.remaining();
+				buffer.put(source);
+				source.limit(limit);
+			}
+		} catch (IOException e) {
+			throw new HandlerException(e);
+		}
+	}
+
+	private void fill(long length) throws HandlerException {
+		try {
+			while (length > 0) {
+				if (!buffer.hasRemaining()) {
+					flush();
+				}
+				int chunk = (int) Math.min(length, buffer.remaining());
+				Arrays.fill(buffer.array(), buffer.position(), buffer.position() + chunk, (byte) 0);
+				buffer.position(buffer.position() + chunk);
+				position += chunk;
+				length -= chunk;
+			}
+		} catch (IOException e) {
+			throw new HandlerException(e);
+		}
+	}
+
+	private void copy(DataReference reference) throws HandlerException {
+		InputStream inputStream = null;
+		
+		try {
+			inputStream = reference.createInputStream();
+			
+			long start = position;
+			byte[] array = buffer.array();
+			int read = 0;
+			
+			while(read > -1) {
+				if (!buffer.hasRemaining()) {
+					flush();
+				}
+				read = inputStream.read(array, buffer.position(), buffer.remaining());
+				if (read > 0) {
+					buffer.position(buffer.position() + read);
+					position += read;
+				}
+			}
+			
+			if (position - start != reference.getLength()) {
+				throw new HandlerException("Data reference length did not match input stream.");
+			}
+		} catch (IOException e) {
+			throw new HandlerException(e);
+		} finally {
+			try {
+				if (inputStream != null) {
+					inputStream.close();
+					inputStream = null;
+				}
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private void transfer(FileChannelDataReference reference, boolean contents) throws HandlerException {
+		if (contentWriter != null) {
+			try {
+				flush();
+			} catch (IOException e) {
+				throw new HandlerException(e);
+			}
+			long length = reference.getLength();
+			contentWriter.submit(reference, position, length, contents);
+			position += length;
+			bufferPosition = position;
+			return;
+		}
+		
+		FileInputStream inputStream = null;
+
+		try {
+			flush();
+			
+			inputStream = new FileInputStream(reference.getFile());
+			FileChannel source = inputStream.getChannel();
+			reference.checkUnchanged(source);
+			
+			long length = reference.getLength();
+			long offset = reference.getPosition();
+			long end = Math.min(offset + length, source.size());
+			
+			channel.position(position);
+			while (offset < end) {
+				long transferred = source.transferTo(offset, end - offset, channel);
+				if (transferred <= 0) {
+					break;
+				}
+				offset += transferred;
+			}
+			
+			long written = offset - reference.getPosition();
+			position += written;
+			bufferPosition = position;
+			
+			if (written != length) {
+				throw new HandlerException("Data reference length did not match input stream.");
+			}
+			if (contents && progress != null) {
+				progress.written(1, length);
+			}
+		} catch (IOException e) {
+			throw new HandlerException(e);
+		} finally {
+			try {
+				if (inputStream != null) {
+					inputStream.close();
+					inputStream = null;
+				}
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			bufferPosition += channel.write(buffer, bufferPosition);
+		}
+		buffer.clear();
+	}
+
+	public Fixup fixup(DataReference reference) throws HandlerException {
+		Fixup fixup = new ChannelFixup(position, reference.getLength());
+		data(reference);
+		return fixup;
+	}
+
+	public long mark() throws HandlerException {
+		return position;
+	}
+
+	public void endElement() throws HandlerException {
+		// nothing to do here
+	}
+
+	public void endDocument() throws HandlerException {
+		if (contentWriter != null) {
+			contentWriter.finish();
+			stalls = contentWriter.getStallCount();
+			stallTime = contentWriter.getStallTime();
+			contentWriter = null;
+		}
+		
+		try {
+			flush();
+			journalWrites = journal.apply(channel);
+			channel.truncate(position);
+			file.close();
+		} catch (IOException e) {
+			throw new HandlerException(e);
+		}
+	}
+	
+	/**
+	 * Closes the image file without completing the image, e.g. after a
+	 * failed or cancelled build (see CreateISO.process()); stops the threads copying file contents. Has no
+	 * effect after endDocument().
+	 * 
+	 * @throws IOException Closing the image file failed
+	 */
+	public void close() throws IOException {
+		if (contentWriter != null) {
+			contentWriter.abort();
+			contentWriter = null;
+		}
+		file.close();
+	}
+	
+	/**
+	 * Returns the number of fixup patches that were applied to
+	 * still buffered data
+	 * 
+	 * @return Number of patches applied in the buffer
+	 */
+	public int getBufferedPatchCount() {
+		return bufferedPatches;
+	}
+
+	/**
+	 * Returns the number of fixup patches that targeted data already
+	 * written and therefore had to be journaled
+	 * 
+	 * @return Number of journaled patches
+	 */
+	public int getJournaledPatchCount() {
+		return journaledPatches;
+	}
+
+	/**
+	 * Returns the number of positional writes needed to apply the
+	 * journal (adjacent patches are merged)
+	 * 
+	 * @return Number of journal writes
+	 */
+	public int getJournalWriteCount() {
+		return journalWrites;
+	}
+
+	public long getSeekCount() {
+		return journalWrites;
+	}
+
+	/**
+	 * Returns the number of times the file contents had to wait for the
+	 * content budget because the copying threads fell behind (see
+	 * setContentThreads())
+	 * 
+	 * @return Number of stalls
+	 */
+	public long getStallCount() {
+		return stalls;
+	}
+
+	/**
+	 * Returns the time spent waiting for the content budget
+	 * 
+	 * @return Time in nanoseconds
+	 */
+	public long getStallTime() {
+		return stallTime;
+	}
+
+	private class ChannelFixup extends JournalFixup {
+		ChannelFixup(long position, long available) {
+			super(journal, position, available);
+		}
+
+		protected boolean patch(long position, byte[] bytes) {
+			if (position < bufferPosition) {
+				// Already written
+				journaledPatches++;
+				return false;
+			}
+			
+			System.arraycopy(bytes, 0, buffer.array(), (int) (position - bufferPosition), bytes.length);
+			bufferedPatches++;
+			return true;
+		}
+	}
+}
@@ -20,6 +20,7 @@
 package de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl;
 
 import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -27,15 +28,18 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 
+import de.tu_darmstadt.informatik.rbg.hatlak.sabre.impl.ByteBufferDataReference;
+import de.tu_darmstadt.informatik.rbg.hatlak.sabre.impl.EmptyByteArrayDataReference;
+import de.tu_darmstadt.informatik.rbg.hatlak.sabre.impl.FileChannelDataReference;
 import de.tu_darmstadt.informatik.rbg.mhartle.sabre.DataReference;
 import de.tu_darmstadt.informatik.rbg.mhartle.sabre.Element;
 import de.tu_darmstadt.informatik.rbg.mhartle.sabre.Fixup;
 import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
 import de.tu_darmstadt.informatik.rbg.mhartle.sabre.StreamHandler;
-import de.tu_darmstadt.informatik.rbg.mhartle.sabre.impl.FileFixup;
 
-public class ISOImageFileHandler implements StreamHandler {
+public class ISOImageFileHandler implements StreamHandler, MeteredOutput, ProgressReportingOutput, Closeable {
 	private RandomAccessFile file = null;
 	private DataOutputStream dataOutputStream = null;
 	private long position = 0;
@@ -43,6 +47,19 @@ public class ISOImageFileHandler implements StreamHandler {
 	private static final int BUFFER_LENGTH = 65535;
 	private final byte[] buffer = new byte[BUFFER_LENGTH];
 	
+	private final FixupJournal journal = new FixupJournal();
+	
+	private static final int WRITE_BUFFER_LENGTH = 1048576;
+	private int writeBuffers = 0;
+	private PipelinedWriter writer = null;
+	private long stalls = 0;
+	private long stallTime = 0;
+	private int seeks = 0;
+	
+	private ProgressReporter progress = null;
+	// Within a FileElement, before its contents
+	private boolean fileContents = false;
+	
 	/**
 	 * ISO Image File Handler 
 	 * 
@@ -54,15 +71,78 @@ public class ISOImageFileHandler implements StreamHandler {
 		this.dataOutputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
 	}
 
+	/**
+	 * Set number of 1 MB buffers written by a separate thread, so that
+	 * reading the sources and writing the image overlap (default: 0, i.e.
+	 * the image is written by the calling thread; 2 for double buffering).
+	 * Has to be set before the document starts.
+	 * 
+	 * @param writeBuffers Number of buffers
+	 */
+	public void setWriteBuffers(int writeBuffers) {
+		this.writeBuffers = writeBuffers;
+	}
+
+	public void setProgressReporter(ProgressReporter progress) {
+		this.progress = progress;
+	}
+
 	public void startDocument() throws HandlerException {
-		// nothing to do here
+		if (writeBuffers > 0) {
+			writer = new PipelinedWriter(file.getChannel(), writeBuffers, WRITE_BUFFER_LENGTH);
+			writer.setProgressReporter(progress);
+		}
 	}
 	
 	public void startElement(Element element) throws HandlerException {
-		// nothing to do here
+		fileContents = element instanceof FileElement;
 	}
 
 	public void data(DataReference reference) throws HandlerException {
+		boolean contents = fileContents;
+		fileContents = false;
+		if (contents && reference instanceof FileChannelDataReference) {
+			copy(reference);
+			if (writer != null) {
+				writer.contentsAppended(reference.getLength());
+			} else
+			if (progress != null) {
+				progress.written(1, reference.getLength());
+			}
+			return;
+		}
+		
+		if (reference instanceof ByteBufferDataReference) {
+			ByteBuffer source = ((ByteBufferDataReference) reference).getBuffer();
+			if (writer != null) {
+				writer.put(source);
+				position += source.remaining();
+				return;
+			} else
+			if (source.hasArray()) {
+				write(source.array(), source.arrayOffset() + source.position(), source.remaining());
+				return;
+			}
+		} else
+		if (reference instanceof EmptyByteArrayDataReference) {
+			if (writer != null) {
+				writer.fill(reference.getLength());
+				position += reference.getLength();
+				return;
+			}
+			try {
+				((EmptyByteArrayDataReference) reference).writeTo(dataOutputStream);
+				position += reference.getLength();
+			} catch (IOException e) {
+				throw new HandlerException(e);
+			}
+			return;
+		}
+		
+		copy(reference);
+	}
+	
+	private void copy(DataReference reference) throws HandlerException {
 		InputStream inputStream = null;
 		
 		try {
@@ -72,13 +152,10 @@ public class ISOImageFileHandler implements StreamHandler {
 			int read = inputStream.read(buffer);
 			
 			while(read > -1) {
-				dataOutputStream.write(buffer, 0, read);
-				position += read;
+				write(buffer, 0, read);
 				read = inputStream.read(buffer);
 			}
 			
-			dataOutputStream.flush();
-			
 			if (position - start != reference.getLength()) {
 				throw new HandlerException("Data reference length did not match input stream.");
 			}
@@ -95,9 +172,27 @@ public class ISOImageFileHandler implements StreamHandler {
 		}
 	}
 	
+	private void write(byte[] bytes, int offset, int length) throws HandlerException {
+		if (writer != null) {
+			writer.put(bytes, offset, length);
+			position += length;
+			return;
+		}
+		try {
+			dataOutputStream.write(bytes, offset, length);
+			position += length;
+		} catch (IOException e) {
+			throw new HandlerException(e);
+		}
+	}
+	
 	public Fixup fixup(DataReference reference) throws HandlerException {
 		Fixup fixup = null;
-		fixup = new FileFixup(file, position, reference.getLength());
+		if (writer != null) {
+			fixup = new PipelinedFixup(position, reference.getLength());
+		} else {
+			fixup = new JournalFixup(journal, position, reference.getLength());
+		}
 		data(reference);
 		return fixup;
 	}
@@ -111,11 +206,74 @@ public class ISOImageFileHandler implements StreamHandler {
 	}
 
 	public void endDocument() throws HandlerException {
+		if (writer != null) {
+			// Journaled patches must not be overwritten by buffered data
+			writer.finish();
+			stalls = writer.getStallCount();
+			stallTime = writer.getStallTime();
+			writer = null;
+		}
+		
 		try {
 			this.dataOutputStream.close();
+			// Apply all fixups in a single pass
+			seeks = journal.apply(this.file.getChannel());
 			this.file.close();
 		} catch (IOException e) {
 			throw new HandlerException(e);
 		}
 	}
+
+	/**
+	 * Closes the image file without completing the image, e.g. after a
+	 * failed or cancelled build (see CreateISO.process()); stops the writer thread. Has no
+	 * effect after endDocument().
+	 * 
+	 * @throws IOException Closing the image file failed
+	 */
+	public void close() throws IOException {
+		if (writer != null) {
+			writer.abort();
+			writer = null;
+		}
+		try {
+			dataOutputStream.close();
+		} finally {
+			file.close();
+		}
+	}
+
+	public long getSeekCount() {
+		return seeks;
+	}
+
+	/**
+	 * Returns the number of times the data had to wait for a free write
+	 * buffer because the writer thread fell behind (see setWriteBuffers())
+	 * 
+	 * @return Number of stalls
+	 */
+	public long getStallCount() {
+		return stalls;
+	}
+
+	/**
+	 * Returns the time spent waiting for free write buffers
+	 * 
+	 * @return Time in nanoseconds
+	 */
+	public long getStallTime() {
+		return stallTime;
+	}
+
+	private class PipelinedFixup extends JournalFixup {
+		PipelinedFixup(long position, long available) {
+			super(journal, position, available);
+		}
+
+		protected boolean patch(long position, byte[] bytes) {
+			// Only data not handed to the writer thread yet can be patched
+			return writer != null && writer.patch(position, bytes);
+		}
+	}
 }
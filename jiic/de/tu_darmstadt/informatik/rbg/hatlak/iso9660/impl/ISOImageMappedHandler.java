@@ -0,0 +1,379 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.tu_darmstadt.informatik.rbg.hatlak.sabre.impl.ByteBufferDataReference;
+import de.tu_darmstadt.informatik.rbg.hatlak.sabre.impl.EmptyByteArrayDataReference;
+import de.tu_darmstadt.informatik.rbg.hatlak.sabre.impl.FileChannelDataReference;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.DataReference;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.Element;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.Fixup;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.StreamHandler;
+
+/**
+ * ISO image file handler that maps the metadata region into memory.
+ * Everything up to the first file contents (volume descriptors, path
+ * tables, directory records, continuation areas) is collected in a
+ * buffer as in ISOImageChannelHandler, but every full buffer is put into
+ * a newly mapped region of exactly its length instead of being written.
+ * Patching fixups of the metadata therefore needs no system calls. File
+ * contents are copied behind the mapped regions using
+ * FileChannel.transferTo(), other data following them is written from
+ * the buffer. Fixups behind the mapped regions are patched in that
+ * buffer or journaled.<br>
+ * Since nothing is mapped beyond the data put, the image never has to
+ * be truncated while mapped, which is not possible on all platforms.
+ * The mappings are released by the garbage collector.
+ */
+public class ISOImageMappedHandler implements StreamHandler, MeteredOutput, Closeable {
+	private RandomAccessFile file = null;
+	private FileChannel channel = null;
+	private long position = 0, bufferPosition = 0;
+	
+	private static final int BUFFER_LENGTH = 1048576;
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_LENGTH);
+	private final byte[] readBuffer = new byte[65536];
+	
+	// Regions of BUFFER_LENGTH bytes, only the last one may be shorter
+	private List<MappedByteBuffer> maps = new ArrayList<MappedByteBuffer>();
+	private boolean mapping = true;
+	private long mappedLength = 0;
+	
+	private final FixupJournal journal = new FixupJournal();
+	private int mappedPatches = 0, bufferedPatches = 0, journaledPatches = 0, journalWrites = 0;
+
+	/**
+	 * ISO Image Mapped Handler
+	 * 
+	 * @param file ISO image output file
+	 * @throws FileNotFoundException File not found
+	 */
+	public ISOImageMappedHandler(File file) throws FileNotFoundException {
+		this.file = new RandomAccessFile(file, "rw");
+		this.channel = this.file.getChannel();
+	}
+
+	public void startDocument() throws HandlerException {
+		try {
+			channel.truncate(0);
+		} catch (IOException e) {
+			throw new HandlerException(e);
+		}
+	}
+
+	public void startElement(Element element) throws HandlerException {
+		// nothing to do here
+	}
+
+	public void data(DataReference reference) throws HandlerException {
+		if (reference instanceof FileChannelDataReference) {
+			transfer((FileChannelDataReference) reference);
+		} else
+		if (reference instanceof ByteBufferDataReference) {
+			put(((ByteBufferDataReference) reference).getBuffer());
+		} else
+		if (reference instanceof EmptyByteArrayDataReference) {
+			fill(reference.getLength());
+		} else {
+			copy(reference);
+		}
+	}
+
+	private void put(ByteBuffer source) throws HandlerException {
+		try {
+			int limit = source.limit();
+			while (source.hasRemaining()) {
+				if (!buffer.hasRemaining()) {
+					flush();
+				}
+				source.limit(Math.min(limit, source.position() + buffer.remaining()));
+				position += source.remaining();
+				buffer.put(source);
+				source.limit(limit);
+			}
+		} catch (IOException e) {
+			throw new HandlerException(e);
+		}
+	}
+
+	private void fill(long length) throws HandlerException {
+		try {
+			while (length > 0) {
+				if (!buffer.hasRemaining()) {
+					flush();
+				}
+				int chunk = (int) Math.min(length, buffer.remaining());
+				Arrays.fill(buffer.array(), buffer.position(), buffer.position() + chunk, (byte) 0);
+				buffer.position(buffer.position() + chunk);
+				position += chunk;
+				length -= chunk;
+			}
+		} catch (IOException e) {
+			throw new HandlerException(e);
+		}
+	}
+
+	private void copy(DataReference reference) throws HandlerException {
+		InputStream inputStream = null;
+		
+		try {
+			inputStream = reference.createInputStream();
+			
+			long start = position;
+			int read = inputStream.read(readBuffer);
+			
+			while(read > -1) {
+				put(ByteBuffer.wrap(readBuffer, 0, read));
+				read = inputStream.read(readBuffer);
+			}
+			
+			if (position - start != reference.getLength()) {
+				throw new HandlerException("Data reference length did not match input stream.");
+			}
+		} catch (IOException e) {
+			throw new HandlerException(e);
+		} finally {
+			try {
+				if (inputStream != null) {
+					inputStream.close();
+					inputStream = null;
+				}
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private void transfer(FileChannelDataReference reference) throws HandlerException {
+		FileInputStream inputStream = null;
+
+		try {
+			// The metadata region ends with the first file contents
+			flush();
+			mapping = false;
+			
+			inputStream = new FileInputStream(reference.getFile());
+			FileChannel source = inputStream.getChannel();
+			reference.checkUnchanged(source);
+			
+			long length = reference.getLength();
+			long offset = reference.getPosition();
+			long end = Math.min(offset + length, source.size());
+			
+			channel.position(position);
+			while (offset < end) {
+				long transferred = source.transferTo(offset, end - offset, channel);
+				if (transferred <= 0) {
+					break;
+				}
+				offset += transferred;
+			}
+			
+			long written = offset - reference.getPosition();
+			position += written;
+			bufferPosition = position;
+			
+			if (written != length) {
+				throw new HandlerException("Data reference length did not match input stream.");
+			}
+		} catch (IOException e) {
+			throw new HandlerException(e);
+		} finally {
+			try {
+				if (inputStream != null) {
+					inputStream.close();
+					inputStream = null;
+				}
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		if (mapping && buffer.hasRemaining()) {
+			// Map exactly the buffered data, the file grows accordingly
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, bufferPosition, buffer.remaining());
+			bufferPosition += buffer.remaining();
+			map.put(buffer);
+			maps.add(map);
+			mappedLength = bufferPosition;
+		}
+		while (buffer.hasRemaining()) {
+			bufferPosition += channel.write(buffer, bufferPosition);
+		}
+		buffer.clear();
+	}
+
+	public Fixup fixup(DataReference reference) throws HandlerException {
+		Fixup fixup = new MappedFixup(position, reference.getLength());
+		data(reference);
+		return fixup;
+	}
+
+	public long mark() throws HandlerException {
+		return position;
+	}
+
+	public void endElement() throws HandlerException {
+		// nothing to do here
+	}
+
+	public void endDocument() throws HandlerException {
+		try {
+			flush();
+			mapping = false;
+			journalWrites = journal.apply(channel);
+			file.close();
+		} catch (IOException e) {
+			throw new HandlerException(e);
+		}
+	}
+
+	/**
+	 * Closes the image file without completing the image, e.g. after a
+	 * failed or cancelled build (see CreateISO.process()). Has no
+	 * effect after endDocument().
+	 * 
+	 * @throws IOException Closing the image file failed
+	 */
+	public void close() throws IOException {
+		mapping = false;
+		maps.clear();
+		file.close();
+	}
+
+	/**
+	 * Returns the length of the mapped metadata region
+	 * 
+	 * @return Number of bytes
+	 */
+	public long getMappedLength() {
+		return mappedLength;
+	}
+
+	/**
+	 * Returns the number of regions the metadata has been mapped in
+	 * 
+	 * @return Number of mappings
+	 */
+	public int getMapCount() {
+		return maps.size();
+	}
+
+	/**
+	 * Returns the number of fixup patches that were put into the
+	 * mapped region
+	 * 
+	 * @return Number of patches applied in the mapped region
+	 */
+	public int getMappedPatchCount() {
+		return mappedPatches;
+	}
+
+	/**
+	 * Returns the number of fixup patches that were applied to still
+	 * buffered data
+	 * 
+	 * @return Number of patches applied in the buffer
+	 */
+	public int getBufferedPatchCount() {
+		return bufferedPatches;
+	}
+
+	/**
+	 * Returns the number of fixup patches that targeted data already
+	 * written and therefore had to be journaled
+	 * 
+	 * @return Number of journaled patches
+	 */
+	public int getJournaledPatchCount() {
+		return journaledPatches;
+	}
+
+	/**
+	 * Returns the number of positional writes needed to apply the
+	 * journal (adjacent patches are merged)
+	 * 
+	 * @return Number of journal writes
+	 */
+	public int getJournalWriteCount() {
+		return journalWrites;
+	}
+
+	public long getSeekCount() {
+		return journalWrites;
+	}
+
+	public long getStallCount() {
+		// The image is written by the building thread
+		return 0;
+	}
+
+	public long getStallTime() {
+		return 0;
+	}
+
+	private class MappedFixup extends JournalFixup {
+		MappedFixup(long position, long available) {
+			super(journal, position, available);
+		}
+
+		protected boolean patch(long position, byte[] bytes) {
+			if (position + bytes.length <= mappedLength) {
+				// May span two regions
+				int offset = 0;
+				while (offset < bytes.length) {
+					long target = position + offset;
+					ByteBuffer map = maps.get((int) (target / BUFFER_LENGTH)).duplicate();
+					map.position((int) (target % BUFFER_LENGTH));
+					int length = Math.min(bytes.length - offset, map.remaining());
+					map.put(bytes, offset, length);
+					offset += length;
+				}
+				mappedPatches++;
+				return true;
+			}
+			if (position < bufferPosition) {
+				// Already written
+				journaledPatches++;
+				return false;
+			}
+			
+			System.arraycopy(bytes, 0, buffer.array(), (int) (position - bufferPosition), bytes.length);
+			bufferedPatches++;
+			return true;
+		}
+	}
+}
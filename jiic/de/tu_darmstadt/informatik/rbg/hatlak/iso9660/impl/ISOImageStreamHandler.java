@@ -0,0 +1,240 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+import de.tu_darmstadt.informatik.rbg.hatlak.sabre.impl.ByteBufferDataReference;
+import de.tu_darmstadt.informatik.rbg.hatlak.sabre.impl.EmptyByteArrayDataReference;
+import de.tu_darmstadt.informatik.rbg.hatlak.sabre.impl.FileChannelDataReference;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.DataReference;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.Element;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.Fixup;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.StreamHandler;
+
+/**
+ * ISO image handler that writes to a non-seekable OutputStream or
+ * WritableByteChannel, e.g. a pipe, socket or compressing stream.
+ * Since nothing can be patched after it has been written, the image
+ * has to be buffered and replayed, see CreateISO.processBuffered().
+ * The stream is flushed but not closed
+ * at the end of the document.
+ */
+public class ISOImageStreamHandler implements StreamHandler {
+	private WritableByteChannel channel = null;
+	private OutputStream outputStream = null;
+	private long position = 0;
+	
+	private static final int BUFFER_LENGTH = 65536;
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_LENGTH);
+
+	/**
+	 * ISO Image Stream Handler
+	 * 
+	 * @param outputStream ISO image output stream
+	 */
+	public ISOImageStreamHandler(OutputStream outputStream) {
+		this.outputStream = outputStream;
+		this.channel = Channels.newChannel(outputStream);
+	}
+
+	/**
+	 * ISO Image Stream Handler
+	 * 
+	 * @param channel ISO image output channel
+	 */
+	public ISOImageStreamHandler(WritableByteChannel channel) {
+		this.channel = channel;
+	}
+
+	public void startDocument() throws HandlerException {
+		// nothing to do here
+	}
+
+	public void startElement(Element element) throws HandlerException {
+		// nothing to do here
+	}
+
+	public void data(DataReference reference) throws HandlerException {
+		if (reference instanceof FileChannelDataReference) {
+			transfer((FileChannelDataReference) reference);
+		} else
+		if (reference instanceof ByteBufferDataReference) {
+			put(((ByteBufferDataReference) reference).getBuffer());
+		} else
+		if (reference instanceof EmptyByteArrayDataReference) {
+			fill(reference.getLength());
+		} else {
+			copy(reference);
+		}
+	}
+
+	private void put(ByteBuffer source) throws HandlerException {
+		try {
+			int limit = source.limit();
+			while (source.hasRemaining()) {
+				if (!buffer.hasRemaining()) {
+					flush();
+				}
+				source.limit(Math.min(limit, source.position() + buffer.remaining()));
+				position += source.remaining();
+				buffer.put(source);
+				source.limit(limit);
+			}
+		} catch (IOException e) {
+			throw new HandlerException(e);
+		}
+	}
+
+	private void fill(long length) throws HandlerException {
+		try {
+			while (length > 0) {
+				if (!buffer.hasRemaining()) {
+					flush();
+				}
+				int chunk = (int) Math.min(length, buffer.remaining());
+				Arrays.fill(buffer.array(), buffer.position(), buffer.position() + chunk, (byte) 0);
+				buffer.position(buffer.position() + chunk);
+				position += chunk;
+				length -= chunk;
+			}
+		} catch (IOException e) {
+			throw new HandlerException(e);
+		}
+	}
+
+	private void copy(DataReference reference) throws HandlerException {
+		InputStream inputStream = null;
+		
+		try {
+			inputStream = reference.createInputStream();
+			
+			long start = position;
+			byte[] array = buffer.array();
+			int read = 0;
+			
+			while(read > -1) {
+				if (!buffer.hasRemaining()) {
+					flush();
+				}
+				read = inputStream.read(array, buffer.position(), buffer.remaining());
+				if (read > 0) {
+					buffer.position(buffer.position() + read);
+					position += read;
+				}
+			}
+			
+			if (position - start != reference.getLength()) {
+				throw new HandlerException("Data reference length did not match input stream.");
+			}
+		} catch (IOException e) {
+			throw new HandlerException(e);
+		} finally {
+			try {
+				if (inputStream != null) {
+					inputStream.close();
+					inputStream = null;
+				}
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private void transfer(FileChannelDataReference reference) throws HandlerException {
+		FileInputStream inputStream = null;
+
+		try {
+			flush();
+			
+			inputStream = new FileInputStream(reference.getFile());
+			FileChannel source = inputStream.getChannel();
+			reference.checkUnchanged(source);
+			
+			long length = reference.getLength();
+			long offset = reference.getPosition();
+			long end = Math.min(offset + length, source.size());
+			
+			while (offset < end) {
+				long transferred = source.transferTo(offset, end - offset, channel);
+				if (transferred <= 0) {
+					break;
+				}
+				offset += transferred;
+			}
+			
+			long written = offset - reference.getPosition();
+			position += written;
+			
+			if (written != length) {
+				throw new HandlerException("Data reference length did not match input stream.");
+			}
+		} catch (IOException e) {
+			throw new HandlerException(e);
+		} finally {
+			try {
+				if (inputStream != null) {
+					inputStream.close();
+					inputStream = null;
+				}
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	public Fixup fixup(DataReference reference) throws HandlerException {
+		throw new HandlerException("Cannot patch a non-seekable output, use CreateISO.processBuffered().");
+	}
+
+	public long mark() throws HandlerException {
+		return position;
+	}
+
+	public void endElement() throws HandlerException {
+		// nothing to do here
+	}
+
+	public void endDocument() throws HandlerException {
+		try {
+			flush();
+			if (outputStream != null) {
+				outputStream.flush();
+			}
+		} catch (IOException e) {
+			throw new HandlerException(e);
+		}
+	}
+}
@@ -0,0 +1,320 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import de.tu_darmstadt.informatik.rbg.hatlak.sabre.impl.ByteBufferDataReference;
+import de.tu_darmstadt.informatik.rbg.hatlak.sabre.impl.EmptyByteArrayDataReference;
+import de.tu_darmstadt.informatik.rbg.hatlak.sabre.impl.FileChannelDataReference;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.DataReference;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.Element;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.Fixup;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.StreamHandler;
+
+/**
+ * ISO image handler that does not write an image at all but records
+ * its sector map: metadata is kept in memory, file contents are mapped
+ * to regions of the source files and padding is mapped to zeros. After
+ * the document has ended, getImage() returns a read-only channel
+ * that serves any part of the image on demand, and CreateISO uses the
+ * sector map to replay an image sequentially, see write().
+ */
+public class ISOImageVirtualHandler implements StreamHandler {
+	static final int SEGMENT_MEMORY = 0, SEGMENT_FILE = 1, SEGMENT_ZERO = 2;
+	static final int BLOCK_BITS = 16;
+	static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+
+	// Segment table: image offset, length, type and source offset
+	private long[] starts = new long[1024];
+	private long[] lengths = new long[1024];
+	private byte[] types = new byte[1024];
+	private long[] offsets = new long[1024];
+	private FileChannelDataReference[] references = new FileChannelDataReference[1024];
+	// FileElement of file contents, null for other files (e.g. a boot image)
+	private FileElement[] elements = new FileElement[1024];
+	private int count = 0;
+	private FileElement element = null;
+
+	// In-memory metadata, split into blocks
+	private byte[][] blocks = new byte[16][];
+	private long memoryLength = 0;
+
+	private long position = 0;
+	private boolean ended = false;
+
+	public void startDocument() throws HandlerException {
+		// nothing to do here
+	}
+
+	public void startElement(Element element) throws HandlerException {
+		this.element = element instanceof FileElement ? (FileElement) element : null;
+	}
+
+	public void data(DataReference reference) throws HandlerException {
+		long length = reference.getLength();
+		FileElement element = this.element;
+		this.element = null;
+		if (length == 0) {
+			return;
+		}
+
+		if (reference instanceof FileChannelDataReference) {
+			FileChannelDataReference fileReference = (FileChannelDataReference) reference;
+			addSegment(SEGMENT_FILE, length, fileReference.getPosition(), fileReference);
+			elements[count - 1] = element;
+		} else
+		if (reference instanceof EmptyByteArrayDataReference) {
+			addSegment(SEGMENT_ZERO, length, 0, null);
+		} else
+		if (reference instanceof ByteBufferDataReference) {
+			store(((ByteBufferDataReference) reference).getBuffer());
+		} else {
+			store(reference);
+		}
+	}
+
+	private void store(ByteBuffer source) {
+		long start = memoryLength;
+		while (source.hasRemaining()) {
+			byte[] block = block();
+			int offset = (int) (memoryLength & (BLOCK_SIZE - 1));
+			int chunk = Math.min(source.remaining(), BLOCK_SIZE - offset);
+			source.get(block, offset, chunk);
+			memoryLength += chunk;
+		}
+		stored(start);
+	}
+
+	private void store(DataReference reference) throws HandlerException {
+		InputStream inputStream = null;
+
+		try {
+			inputStream = reference.createInputStream();
+			
+			long start = memoryLength;
+			int read = 0;
+			while (read > -1) {
+				int offset = (int) (memoryLength & (BLOCK_SIZE - 1));
+				read = inputStream.read(block(), offset, BLOCK_SIZE - offset);
+				if (read > 0) {
+					memoryLength += read;
+				}
+			}
+			
+			if (memoryLength - start != reference.getLength()) {
+				throw new HandlerException("Data reference length did not match input stream.");
+			}
+			stored(start);
+		} catch (IOException e) {
+			throw new HandlerException(e);
+		} finally {
+			try {
+				if (inputStream != null) {
+					inputStream.close();
+					inputStream = null;
+				}
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	// Returns the block containing the end of the in-memory metadata
+	private byte[] block() {
+		int block = (int) (memoryLength >>> BLOCK_BITS);
+		if (block == blocks.length) {
+			byte[][] newBlocks = new byte[block * 2][];
+			System.arraycopy(blocks, 0, newBlocks, 0, block);
+			blocks = newBlocks;
+		}
+		if (blocks[block] == null) {
+			blocks[block] = new byte[BLOCK_SIZE];
+		}
+		return blocks[block];
+	}
+
+	// Adds the bytes stored since start to the segment table
+	private void stored(long start) {
+		long length = memoryLength - start;
+		if (count > 0 && types[count - 1] == SEGMENT_MEMORY) {
+			// Memory is contiguous: extend previous segment
+			lengths[count - 1] += length;
+			position += length;
+		} else {
+			addSegment(SEGMENT_MEMORY, length, start, null);
+		}
+	}
+
+	private void addSegment(int type, long length, long offset, FileChannelDataReference reference) {
+		if (count == starts.length) {
+			int size = count * 2;
+			long[] newStarts = new long[size];
+			System.arraycopy(starts, 0, newStarts, 0, count);
+			starts = newStarts;
+			long[] newLengths = new long[size];
+			System.arraycopy(lengths, 0, newLengths, 0, count);
+			lengths = newLengths;
+			byte[] newTypes = new byte[size];
+			System.arraycopy(types, 0, newTypes, 0, count);
+			types = newTypes;
+			long[] newOffsets = new long[size];
+			System.arraycopy(offsets, 0, newOffsets, 0, count);
+			offsets = newOffsets;
+			FileChannelDataReference[] newReferences = new FileChannelDataReference[size];
+			System.arraycopy(references, 0, newReferences, 0, count);
+			references = newReferences;
+			FileElement[] newElements = new FileElement[size];
+			System.arraycopy(elements, 0, newElements, 0, count);
+			elements = newElements;
+		}
+		
+		starts[count] = position;
+		lengths[count] = length;
+		types[count] = (byte) type;
+		offsets[count] = offset;
+		references[count] = reference;
+		count++;
+		position += length;
+	}
+
+	public Fixup fixup(DataReference reference) throws HandlerException {
+		// Placeholders always go to memory so that they can be patched
+		long start = position;
+		store(reference);
+		return new VirtualFixup(memoryLength - reference.getLength(), start, reference.getLength());
+	}
+
+	public long mark() throws HandlerException {
+		return position;
+	}
+
+	public void endElement() throws HandlerException {
+		// nothing to do here
+	}
+
+	public void endDocument() throws HandlerException {
+		ended = true;
+	}
+
+	/**
+	 * Returns a new read-only channel on the virtual image. Each channel
+	 * has its own position, so multiple channels can be used concurrently.
+	 * 
+	 * @return Virtual ISO image
+	 * @throws HandlerException Document has not ended yet
+	 */
+	public VirtualISOImage getImage() throws HandlerException {
+		if (!ended) {
+			throw new HandlerException("Virtual image is not complete yet.");
+		}
+		return new VirtualISOImage(starts, lengths, types, offsets, references, count, blocks, position);
+	}
+
+	/**
+	 * Writes the recorded image to another handler in a single pass. All
+	 * fixups have been applied by now, so the handler never has to seek.
+	 * File contents are only read here. Each file is reported as done,
+	 * by the handler itself if it is a ProgressReportingOutput.
+	 * 
+	 * @param streamHandler Output handler
+	 * @param progress Progress of writing the file contents
+	 * @throws HandlerException Problems writing the image or cancelled
+	 */
+	void write(StreamHandler streamHandler, ProgressReporter progress) throws HandlerException {
+		if (!ended) {
+			throw new HandlerException("Virtual image is not complete yet.");
+		}
+
+		long files = 0, bytes = 0;
+		for (int i = 0; i < count; i++) {
+			if (elements[i] != null) {
+				files++;
+				bytes += lengths[i];
+			}
+		}
+		progress.start(files, bytes);
+		boolean reporting = streamHandler instanceof ProgressReportingOutput;
+
+		streamHandler.startDocument();
+		for (int i = 0; i < count; i++) {
+			switch (types[i]) {
+				case SEGMENT_MEMORY:
+					writeMemory(streamHandler, offsets[i], lengths[i]);
+					break;
+				case SEGMENT_FILE:
+					if (elements[i] == null) {
+						streamHandler.data(references[i]);
+						break;
+					}
+					streamHandler.startElement(elements[i]);
+					streamHandler.data(references[i]);
+					streamHandler.endElement();
+					if (reporting) {
+						progress.checkCancelled();
+					} else {
+						progress.fileDone(lengths[i]);
+					}
+					break;
+				default:
+					writeZeros(streamHandler, lengths[i]);
+			}
+		}
+		streamHandler.endDocument();
+	}
+
+	private void writeZeros(StreamHandler streamHandler, long length) throws HandlerException {
+		while (length > 0) {
+			int chunk = (int) Math.min(length, BLOCK_SIZE);
+			streamHandler.data(new EmptyByteArrayDataReference(chunk));
+			length -= chunk;
+		}
+	}
+
+	private void writeMemory(StreamHandler streamHandler, long offset, long length) throws HandlerException {
+		while (length > 0) {
+			int inBlock = (int) (offset & (BLOCK_SIZE - 1));
+			int chunk = (int) Math.min(length, BLOCK_SIZE - inBlock);
+			streamHandler.data(new ByteBufferDataReference(blocks[(int) (offset >>> BLOCK_BITS)], inBlock, chunk));
+			offset += chunk;
+			length -= chunk;
+		}
+	}
+
+	private class VirtualFixup extends JournalFixup {
+		private long memoryOffset, imageOffset;
+
+		VirtualFixup(long memoryOffset, long imageOffset, long available) {
+			super(null, imageOffset, available);
+			this.memoryOffset = memoryOffset;
+			this.imageOffset = imageOffset;
+		}
+
+		protected boolean patch(long position, byte[] bytes) {
+			long offset = memoryOffset + position - imageOffset;
+			for (int i = 0; i < bytes.length; i++, offset++) {
+				blocks[(int) (offset >>> BLOCK_BITS)][(int) (offset & (BLOCK_SIZE - 1))] = bytes[i];
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,94 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl;
+
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.DataReference;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.Fixup;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
+
+/**
+ * Fixup that records its data in a FixupJournal instead of
+ * seeking and writing immediately
+ */
+class JournalFixup implements Fixup {
+	private FixupJournal journal;
+	private long position, available;
+	private boolean closed = false;
+
+	/**
+	 * Journal Fixup
+	 * 
+	 * @param journal Journal to record patches in
+	 * @param position Image offset of the reserved region
+	 * @param available Length of the reserved region
+	 */
+	JournalFixup(FixupJournal journal, long position, long available) {
+		this.journal = journal;
+		this.position = position;
+		this.available = available;
+	}
+
+	public void data(DataReference reference) throws HandlerException {
+		if (closed) {
+			throw new HandlerException("Fixup already closed.");
+		}
+		
+		long length = reference.getLength();
+		if (length > available) {
+			throw new HandlerException("Fixup larger than available space.");
+		}
+		
+		byte[] bytes = FixupJournal.read(reference);
+		if (!patch(position, bytes)) {
+			journal.add(position, bytes, bytes.length);
+		}
+		
+		position += length;
+		available -= length;
+	}
+	
+	/**
+	 * Applies a patch in place if possible
+	 * 
+	 * @param position Image offset to patch
+	 * @param bytes Patch data
+	 * @return Whether the patch has been applied
+	 * @throws HandlerException Patch failed
+	 */
+	protected boolean patch(long position, byte[] bytes) throws HandlerException {
+		return false;
+	}
+
+	public Fixup fixup(DataReference reference) throws HandlerException {
+		throw new HandlerException("Cannot create fixup within fixup.");
+	}
+
+	public long mark() throws HandlerException {
+		return position;
+	}
+
+	public void close() throws HandlerException {
+		closed = true;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+}
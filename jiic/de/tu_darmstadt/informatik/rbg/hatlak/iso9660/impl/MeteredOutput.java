@@ -0,0 +1,51 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+
+package de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl;
+
+/**
+ * Output handler that counts its own seeks and stalls, reported to
+ * BuildMetrics once the document has ended (see BuildMetrics.output())
+ */
+public interface MeteredOutput {
+	/**
+	 * Returns the number of positional writes needed to patch data
+	 * already written to the image
+	 * 
+	 * @return Number of seeks
+	 */
+	public long getSeekCount();
+
+	/**
+	 * Returns the number of times the building thread had to wait for
+	 * the threads writing the image
+	 * 
+	 * @return Number of stalls
+	 */
+	public long getStallCount();
+
+	/**
+	 * Returns the time the building thread waited for the threads writing
+	 * the image
+	 * 
+	 * @return Time in nanoseconds
+	 */
+	public long getStallTime();
+}
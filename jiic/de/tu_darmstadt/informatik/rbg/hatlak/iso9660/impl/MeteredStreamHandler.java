@@ -0,0 +1,87 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl;
+
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.BuildMetrics;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.DataReference;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.Fixup;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.StreamHandler;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.impl.ChainingStreamHandler;
+
+/**
+ * Counts the data and Fixups passed into a handler of the chain
+ * (see BuildMetrics.handler(String, long, long, long, long))
+ */
+class MeteredStreamHandler extends ChainingStreamHandler {
+	private String name;
+	private long dataCalls = 0, bytes = 0, fixups = 0, fixupWrites = 0;
+
+	MeteredStreamHandler(String name, StreamHandler streamHandler) {
+		super(streamHandler, streamHandler);
+		this.name = name;
+	}
+
+	@Override
+	public void data(DataReference reference) throws HandlerException {
+		dataCalls++;
+		bytes += reference.getLength();
+		super.data(reference);
+	}
+
+	@Override
+	public Fixup fixup(DataReference reference) throws HandlerException {
+		fixups++;
+		return new MeteredFixup(super.fixup(reference));
+	}
+
+	void report(BuildMetrics metrics) {
+		metrics.handler(name, dataCalls, bytes, fixups, fixupWrites);
+	}
+
+	private class MeteredFixup implements Fixup {
+		private Fixup fixup;
+
+		MeteredFixup(Fixup fixup) {
+			this.fixup = fixup;
+		}
+
+		public void data(DataReference reference) throws HandlerException {
+			fixupWrites++;
+			fixup.data(reference);
+		}
+
+		public Fixup fixup(DataReference reference) throws HandlerException {
+			return fixup.fixup(reference);
+		}
+
+		public long mark() throws HandlerException {
+			return fixup.mark();
+		}
+
+		public void close() throws HandlerException {
+			fixup.close();
+		}
+
+		public boolean isClosed() {
+			return fixup.isClosed();
+		}
+	}
+}
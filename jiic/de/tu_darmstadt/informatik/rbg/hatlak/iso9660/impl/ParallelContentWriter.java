@@ -0,0 +1,232 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import de.tu_darmstadt.informatik.rbg.hatlak.sabre.impl.FileChannelDataReference;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
+
+/**
+ * Copies file contents into their extents of the image concurrently.
+ * Every copy uses positional writes. FileChannel.transferFrom() does not
+ * write beyond the end of the image, so the image is extended to the end
+ * of each extent before its copy is queued; after that the copies may
+ * complete in any order. The number of bytes queued or being copied is
+ * limited by a budget. File contents are reported as done once copied.
+ */
+class ParallelContentWriter {
+	private FileChannel channel;
+	private ExecutorService executor;
+	private long budget, inFlight = 0;
+	private long extended = 0;
+	private Exception error = null;
+	private long stalls = 0, stallTime = 0;
+	private ProgressReporter progress = null;
+
+	/**
+	 * Parallel Content Writer
+	 * 
+	 * @param channel Image file channel
+	 * @param threads Number of worker threads
+	 * @param budget Maximum number of bytes in flight
+	 */
+	ParallelContentWriter(FileChannel channel, int threads, long budget) {
+		this.channel = channel;
+		this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				// Do not keep the VM alive if the image is abandoned
+				Thread thread = new Thread(runnable, "ISO content writer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.budget = budget;
+	}
+
+	/**
+	 * Report the file contents copied to a ProgressReporter
+	 * 
+	 * @param progress Progress reporter
+	 */
+	void setProgressReporter(ProgressReporter progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * Queues a file region to be copied, waiting for the budget if needed
+	 * 
+	 * @param reference File region
+	 * @param position Image offset of the extent
+	 * @param length Length of the extent
+	 * @param contents Whether the region is the contents of a file to be reported once copied
+	 * @throws HandlerException A previous copy failed
+	 */
+	void submit(final FileChannelDataReference reference, final long position, final long length, final boolean contents) throws HandlerException {
+		// Small files still occupy a sector, a large file may use the whole budget
+		final long charge = Math.min(Math.max(length, ISO9660Constants.LOGICAL_SECTOR_SIZE), budget);
+		
+		synchronized (this) {
+			if (inFlight + charge > budget && error == null) {
+				// The workers are behind
+				long start = System.nanoTime();
+				while (inFlight + charge > budget && error == null) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						throw new HandlerException(e);
+					}
+				}
+				stallTime += System.nanoTime() - start;
+				stalls++;
+			}
+			checkError();
+			inFlight += charge;
+		}
+		
+		if (length > 0 && position + length > extended) {
+			// The last byte is overwritten by the copy
+			try {
+				channel.write(ByteBuffer.wrap(new byte[1]), position + length - 1);
+			} catch (IOException e) {
+				synchronized (this) {
+					inFlight -= charge;
+				}
+				throw new HandlerException(e);
+			}
+			extended = position + length;
+		}
+		
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					copy(reference, position, length);
+					if (contents && progress != null) {
+						progress.written(1, length);
+					}
+				} catch (Exception e) {
+					synchronized (ParallelContentWriter.this) {
+						if (error == null) {
+							error = e;
+						}
+					}
+				} finally {
+					synchronized (ParallelContentWriter.this) {
+						inFlight -= charge;
+						ParallelContentWriter.this.notifyAll();
+					}
+				}
+			}
+		});
+	}
+	
+	private void copy(FileChannelDataReference reference, long position, long length) throws IOException, HandlerException {
+		FileInputStream inputStream = new FileInputStream(reference.getFile());
+		try {
+			FileChannel source = inputStream.getChannel();
+			reference.checkUnchanged(source);
+			source.position(reference.getPosition());
+			
+			long written = 0;
+			while (written < length) {
+				long transferred = channel.transferFrom(source, position + written, length - written);
+				if (transferred <= 0) {
+					break;
+				}
+				written += transferred;
+			}
+			
+			if (written != length) {
+				throw new HandlerException("Data reference length did not match input stream.");
+			}
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	/**
+	 * Waits for all queued copies and shuts the workers down
+	 * 
+	 * @throws HandlerException A copy failed
+	 */
+	void finish() throws HandlerException {
+		executor.shutdown();
+		try {
+			while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+				// keep waiting
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			throw new HandlerException(e);
+		}
+		synchronized (this) {
+			checkError();
+		}
+	}
+
+	/**
+	 * Stops the workers without waiting for the queued copies.
+	 * Interrupting a copy closes the channel.
+	 */
+	void abort() {
+		executor.shutdownNow();
+		try {
+			while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+				// keep waiting
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns the number of times submit() waited for the budget
+	 * 
+	 * @return Number of stalls
+	 */
+	long getStallCount() {
+		return stalls;
+	}
+
+	/**
+	 * Returns the time submit() waited for the budget
+	 * 
+	 * @return Time in nanoseconds
+	 */
+	long getStallTime() {
+		return stallTime;
+	}
+
+	private void checkError() throws HandlerException {
+		if (error instanceof HandlerException) {
+			throw (HandlerException) error;
+		} else
+		if (error != null) {
+			throw new HandlerException(error);
+		}
+	}
+}
@@ -0,0 +1,306 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
+
+/**
+ * Writes the image sequentially from a separate thread. The producer
+ * fills a ring of direct buffers, full buffers are handed to the writer
+ * thread and come back once they have been written. Waiting for a free
+ * buffer, i.e. the writer falling behind, is counted as a stall. File
+ * contents appended are reported as done once they have been written.
+ */
+class PipelinedWriter implements Runnable {
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+	private static final byte[] ZEROS = new byte[65536];
+	
+	private FileChannel channel;
+	private BlockingQueue<ByteBuffer> free, full;
+	private ByteBuffer current;
+	private long currentPosition = 0;
+	private Thread thread;
+	private volatile IOException error = null;
+	private long stalls = 0;
+	private long stallTime = 0;
+	
+	private ProgressReporter progress = null;
+	// Image offsets at which file contents end and their lengths, oldest first
+	private long[] pendingEnds = new long[64], pendingLengths = new long[64];
+	private int pendingFirst = 0, pendingCount = 0;
+
+	/**
+	 * Pipelined Writer
+	 * 
+	 * @param channel Image file channel
+	 * @param buffers Number of buffers (2 for double buffering)
+	 * @param bufferLength Length of each buffer
+	 */
+	PipelinedWriter(FileChannel channel, int buffers, int bufferLength) {
+		this.channel = channel;
+		this.free = new ArrayBlockingQueue<ByteBuffer>(buffers);
+		this.full = new ArrayBlockingQueue<ByteBuffer>(buffers + 1);
+		for (int i = 0; i < buffers; i++) {
+			free.add(ByteBuffer.allocateDirect(bufferLength));
+		}
+		this.current = free.poll();
+		
+		// Do not keep the VM alive if the image is abandoned
+		this.thread = new Thread(this, "ISO image writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Report file contents to a ProgressReporter once they have been written
+	 * 
+	 * @param progress Progress reporter
+	 */
+	void setProgressReporter(ProgressReporter progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * File contents have been appended, they are reported as done once the
+	 * writer thread has written them (see setProgressReporter())
+	 * 
+	 * @param length Length of the contents, which end at the current end of the image
+	 */
+	void contentsAppended(long length) {
+		if (progress == null) {
+			return;
+		}
+		long end = currentPosition + current.position();
+		synchronized (this) {
+			if (pendingCount == pendingEnds.length) {
+				long[] ends = new long[pendingCount * 2], lengths = new long[pendingCount * 2];
+				for (int i = 0; i < pendingCount; i++) {
+					ends[i] = pendingEnds[(pendingFirst + i) % pendingCount];
+					lengths[i] = pendingLengths[(pendingFirst + i) % pendingCount];
+				}
+				pendingEnds = ends;
+				pendingLengths = lengths;
+				pendingFirst = 0;
+			}
+			int last = (pendingFirst + pendingCount) % pendingEnds.length;
+			pendingEnds[last] = end;
+			pendingLengths[last] = length;
+			pendingCount++;
+		}
+	}
+
+	// The image has been written up to position
+	private void written(long position) {
+		if (progress == null) {
+			return;
+		}
+		long files = 0, bytes = 0;
+		synchronized (this) {
+			while (pendingCount > 0 && pendingEnds[pendingFirst] <= position) {
+				files++;
+				bytes += pendingLengths[pendingFirst];
+				pendingFirst = (pendingFirst + 1) % pendingEnds.length;
+				pendingCount--;
+			}
+		}
+		if (files > 0) {
+			progress.written(files, bytes);
+		}
+	}
+
+	/**
+	 * Appends bytes to the image
+	 * 
+	 * @param bytes Source array
+	 * @param offset Offset within the array
+	 * @param length Number of bytes
+	 * @throws HandlerException A previous write failed
+	 */
+	void put(byte[] bytes, int offset, int length) throws HandlerException {
+		while (length > 0) {
+			if (!current.hasRemaining()) {
+				send();
+			}
+			int chunk = Math.min(length, current.remaining());
+			current.put(bytes, offset, chunk);
+			offset += chunk;
+			length -= chunk;
+		}
+	}
+
+	/**
+	 * Appends the remaining bytes of a buffer to the image
+	 * 
+	 * @param source Source buffer, its position is not changed
+	 * @throws HandlerException A previous write failed
+	 */
+	void put(ByteBuffer source) throws HandlerException {
+		source = source.duplicate();
+		int limit = source.limit();
+		while (source.hasRemaining()) {
+			if (!current.hasRemaining()) {
+				send();
+			}
+			source.limit(Math.min(limit, source.position() + current.remaining()));
+			current.put(source);
+			source.limit(limit);
+		}
+	}
+
+	/**
+	 * Appends zeros to the image
+	 * 
+	 * @param length Number of bytes
+	 * @throws HandlerException A previous write failed
+	 */
+	void fill(long length) throws HandlerException {
+		while (length > 0) {
+			int chunk = (int) Math.min(length, ZEROS.length);
+			put(ZEROS, 0, chunk);
+			length -= chunk;
+		}
+	}
+
+	/**
+	 * Patches bytes appended before if they have not been handed to the
+	 * writer thread yet
+	 * 
+	 * @param position Image offset to patch
+	 * @param bytes Patch data
+	 * @return Whether the patch has been applied
+	 */
+	boolean patch(long position, byte[] bytes) {
+		if (position < currentPosition || position + bytes.length > currentPosition + current.position()) {
+			return false;
+		}
+		ByteBuffer target = current.duplicate();
+		target.position((int) (position - currentPosition));
+		target.put(bytes);
+		return true;
+	}
+
+	private void send() throws HandlerException {
+		checkError();
+		current.flip();
+		currentPosition += current.remaining();
+		full.add(current);
+		
+		current = free.poll();
+		if (current == null) {
+			// Writer thread is behind
+			long start = System.nanoTime();
+			try {
+				current = free.take();
+			} catch (InterruptedException e) {
+				throw new HandlerException(e);
+			}
+			stallTime += System.nanoTime() - start;
+			stalls++;
+		}
+	}
+
+	public void run() {
+		long position = 0;
+		try {
+			while (true) {
+				ByteBuffer buffer = full.take();
+				if (buffer == END) {
+					return;
+				}
+				// After an error, only return the buffers to the producer
+				if (error == null) {
+					try {
+						while (buffer.hasRemaining()) {
+							position += channel.write(buffer, position);
+						}
+						written(position);
+					} catch (IOException e) {
+						error = e;
+					}
+				}
+				buffer.clear();
+				free.add(buffer);
+			}
+		} catch (InterruptedException e) {
+			// abandoned
+		}
+	}
+
+	/**
+	 * Writes the remaining buffers and stops the writer thread
+	 * 
+	 * @throws HandlerException A write failed
+	 */
+	void finish() throws HandlerException {
+		current.flip();
+		full.add(current);
+		full.add(END);
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			thread.interrupt();
+			throw new HandlerException(e);
+		}
+		checkError();
+	}
+
+	/**
+	 * Stops the writer thread without writing the remaining buffers.
+	 * Interrupting a write closes the channel.
+	 */
+	void abort() {
+		thread.interrupt();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns the number of times the producer waited for a free buffer
+	 * 
+	 * @return Number of stalls
+	 */
+	long getStallCount() {
+		return stalls;
+	}
+
+	/**
+	 * Returns the time the producer waited for free buffers
+	 * 
+	 * @return Time in nanoseconds
+	 */
+	long getStallTime() {
+		return stallTime;
+	}
+
+	private void checkError() throws HandlerException {
+		if (error != null) {
+			throw new HandlerException(error);
+		}
+	}
+}
@@ -0,0 +1,198 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl;
+
+import java.util.Iterator;
+import java.util.List;
+
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.BuildProgress;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ProgressListener;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
+
+/**
+ * Counts the file contents written and reports them to ProgressListeners
+ * from a separate thread once per interval, so the threads writing the
+ * contents only update two counters per file. Contents count as written
+ * once the output handler has written them (see ProgressReportingOutput),
+ * otherwise when they have been handed to it. Also carries the
+ * cancellation request, which the building thread checks per file and
+ * per area.
+ */
+class ProgressReporter implements Runnable {
+	private List<ProgressListener> listeners;
+	private long interval = 1000;
+	private Thread thread = null;
+	private volatile boolean cancelled = false;
+	// Written by the threads writing the contents (see written())
+	private volatile long filesDone = 0, bytesDone = 0;
+	// Written by the building thread only
+	private volatile long filesTotal = 0, bytesTotal = 0;
+	// Used by the reporting thread only (and after it has been stopped)
+	private long lastTime, lastBytes;
+	private double throughput = -1;
+
+	/**
+	 * Progress Reporter
+	 * 
+	 * @param listeners Listeners to report to
+	 */
+	ProgressReporter(List<ProgressListener> listeners) {
+		this.listeners = listeners;
+	}
+
+	/**
+	 * Set the minimum time between reports (default: 1 s)
+	 * 
+	 * @param interval Interval in milliseconds
+	 */
+	void setInterval(long interval) {
+		this.interval = interval;
+	}
+
+	/**
+	 * Prepare for another build, clearing the counters and a previous
+	 * cancellation request
+	 */
+	void reset() {
+		cancelled = false;
+		filesDone = bytesDone = 0;
+		filesTotal = bytesTotal = 0;
+		throughput = -1;
+	}
+
+	/**
+	 * Writing file contents starts, reporting starts if there are listeners
+	 * 
+	 * @param filesTotal Number of files to be written
+	 * @param bytesTotal Number of bytes to be written
+	 */
+	void start(long filesTotal, long bytesTotal) {
+		this.filesTotal = filesTotal;
+		this.bytesTotal = bytesTotal;
+		lastTime = System.nanoTime();
+		lastBytes = bytesDone;
+		if (!listeners.isEmpty() && thread==null) {
+			thread = new Thread(this, "ISO progress reporter");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * The contents of a file have been handed to an output handler that
+	 * has written them before returning
+	 * 
+	 * @param length Length of the contents
+	 * @throws HandlerException The build has been cancelled
+	 */
+	void fileDone(long length) throws HandlerException {
+		written(1, length);
+		checkCancelled();
+	}
+
+	/**
+	 * The contents of files have been written, called by the output
+	 * handler or its writer threads
+	 * 
+	 * @param files Number of files
+	 * @param bytes Length of their contents
+	 */
+	synchronized void written(long files, long bytes) {
+		filesDone += files;
+		bytesDone += bytes;
+	}
+
+	/**
+	 * Request the build to be cancelled
+	 */
+	void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Aborts the build if it has been cancelled
+	 * 
+	 * @throws HandlerException The build has been cancelled
+	 */
+	void checkCancelled() throws HandlerException {
+		if (cancelled) {
+			throw new HandlerException("Build cancelled");
+		}
+	}
+
+	/**
+	 * Stop reporting
+	 * 
+	 * @param complete Whether to report the final state once more
+	 */
+	void stop(boolean complete) {
+		if (thread==null) {
+			return;
+		}
+		thread.interrupt();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		thread = null;
+		if (complete) {
+			report(false);
+		}
+	}
+
+	public void run() {
+		try {
+			while (true) {
+				Thread.sleep(interval);
+				report(true);
+			}
+		} catch (InterruptedException e) {
+			// stopped
+		}
+	}
+
+	private void report(boolean measure) {
+		long time = System.nanoTime();
+		long bytesDone = this.bytesDone;
+		long bytesTotal = this.bytesTotal;
+
+		// Smooth the throughput of the last interval with the previous ones
+		if (measure && time > lastTime) {
+			double current = (bytesDone - lastBytes) * 1e9 / (time - lastTime);
+			throughput = throughput < 0 ? current : (throughput + current) / 2;
+			lastTime = time;
+			lastBytes = bytesDone;
+		}
+		long remainingTime = -1;
+		if (bytesDone >= bytesTotal) {
+			remainingTime = 0;
+		} else
+		if (throughput > 0) {
+			remainingTime = (long) ((bytesTotal - bytesDone) * 1000 / throughput);
+		}
+
+		BuildProgress progress = new BuildProgress(filesDone, filesTotal, bytesDone, bytesTotal, (long) Math.max(throughput, 0), remainingTime);
+		Iterator<ProgressListener> it = listeners.iterator();
+		while (it.hasNext()) {
+			it.next().progress(progress);
+		}
+	}
+}
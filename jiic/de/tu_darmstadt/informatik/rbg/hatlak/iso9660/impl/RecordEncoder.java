@@ -0,0 +1,330 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+import de.tu_darmstadt.informatik.rbg.hatlak.sabre.impl.ByteBufferDataReference;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.DataReference;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.Fixup;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.StreamHandler;
+
+/**
+ * Reusable buffer for encoding Directory Records and System Use Entries
+ * field by field in place. A whole record, System Use Entries included,
+ * is encoded before it is written, so that its length can be filled in
+ * place. Fields only known later are reserved with putFixup(). When the
+ * record is written, the bytes between these placeholders are passed
+ * down the handler chain with one data() call each, instead of one call
+ * (and one data reference) per field.
+ */
+public class RecordEncoder {
+	private byte[] buffer = new byte[256];
+	private int length = 0;
+	
+	// Placeholders of fields only known later, in buffer order
+	private RecordFixup[] fixups = new RecordFixup[4];
+	private int fixupCount = 0;
+	
+	// Last encoded date
+	private final Calendar calendar = new GregorianCalendar();
+	private final byte[] date = new byte[7];
+	private long dateSeconds = Long.MIN_VALUE;
+
+	/**
+	 * Discards the buffer contents
+	 */
+	public void reset() {
+		length = 0;
+		for (int i = 0; i < fixupCount; i++) {
+			// Discarded placeholders cannot be filled any more
+			fixups[i].closed = true;
+			fixups[i] = null;
+		}
+		fixupCount = 0;
+	}
+
+	/**
+	 * Returns the number of bytes encoded
+	 * 
+	 * @return Buffer length
+	 */
+	public int length() {
+		return length;
+	}
+
+	private void ensureCapacity(int additional) {
+		if (length + additional > buffer.length) {
+			byte[] newBuffer = new byte[Math.max(buffer.length * 2, length + additional)];
+			System.arraycopy(buffer, 0, newBuffer, 0, length);
+			buffer = newBuffer;
+		}
+	}
+
+	/**
+	 * Appends a byte
+	 * 
+	 * @param value Value
+	 */
+	public void putByte(int value) {
+		ensureCapacity(1);
+		buffer[length++] = (byte) value;
+	}
+
+	/**
+	 * Overwrites an already encoded byte, e.g. a length field
+	 * 
+	 * @param index Buffer index
+	 * @param value Value
+	 */
+	public void setByte(int index, int value) {
+		if (index >= length) {
+			throw new IndexOutOfBoundsException("Index " + index + " not encoded yet.");
+		}
+		buffer[index] = (byte) value;
+	}
+
+	/**
+	 * Appends a byte array
+	 * 
+	 * @param bytes Bytes
+	 */
+	public void putBytes(byte[] bytes) {
+		ensureCapacity(bytes.length);
+		System.arraycopy(bytes, 0, buffer, length, bytes.length);
+		length += bytes.length;
+	}
+
+	/**
+	 * Appends a 16 bit value in both byte orders (ISO 9660 section 7.2.3)
+	 * 
+	 * @param value Value
+	 */
+	public void putBothShort(int value) {
+		ensureCapacity(4);
+		buffer[length++] = (byte) value;
+		buffer[length++] = (byte) (value >> 8);
+		buffer[length++] = (byte) (value >> 8);
+		buffer[length++] = (byte) value;
+	}
+
+	/**
+	 * Appends a 32 bit value in both byte orders (ISO 9660 section 7.3.3)
+	 * 
+	 * @param value Value
+	 */
+	public void putBothWord(long value) {
+		ensureCapacity(8);
+		buffer[length++] = (byte) value;
+		buffer[length++] = (byte) (value >> 8);
+		buffer[length++] = (byte) (value >> 16);
+		buffer[length++] = (byte) (value >> 24);
+		buffer[length++] = (byte) (value >> 24);
+		buffer[length++] = (byte) (value >> 16);
+		buffer[length++] = (byte) (value >> 8);
+		buffer[length++] = (byte) value;
+	}
+
+	/**
+	 * Appends a 7 byte date (ISO 9660 section 9.1.5), encoded the same
+	 * way as by ISO9660ShortDateDataReference
+	 * 
+	 * @param time Milliseconds since the epoch
+	 */
+	public void putShortDate(long time) {
+		long seconds = time / 1000;
+		if (time % 1000 < 0) {
+			seconds--;
+		}
+		
+		if (seconds != dateSeconds) {
+			calendar.setTimeInMillis(time);
+			date[0] = (byte) (calendar.get(Calendar.YEAR) - 1900);
+			date[1] = (byte) (calendar.get(Calendar.MONTH) + 1);
+			date[2] = (byte) calendar.get(Calendar.DAY_OF_MONTH);
+			date[3] = (byte) calendar.get(Calendar.HOUR_OF_DAY);
+			date[4] = (byte) calendar.get(Calendar.MINUTE);
+			date[5] = (byte) calendar.get(Calendar.SECOND);
+			date[6] = (byte) (calendar.get(Calendar.ZONE_OFFSET) / (15 * 60 * 1000));
+			dateSeconds = seconds;
+		}
+		
+		putBytes(date);
+	}
+
+	/**
+	 * Appends the contents of a data reference
+	 * 
+	 * @param reference Data reference
+	 * @throws HandlerException Problems reading the reference
+	 */
+	public void put(DataReference reference) throws HandlerException {
+		int referenceLength = (int) reference.getLength();
+		ensureCapacity(referenceLength);
+		read(reference, length);
+		length += referenceLength;
+	}
+
+	// Reads a data reference into the buffer at index
+	private void read(DataReference reference, int index) throws HandlerException {
+		InputStream inputStream = null;
+		try {
+			inputStream = reference.createInputStream();
+			int end = index + (int) reference.getLength();
+			while (index < end) {
+				int read = inputStream.read(buffer, index, end - index);
+				if (read < 0) {
+					throw new HandlerException("Data reference length did not match input stream.");
+				}
+				index += read;
+			}
+		} catch (IOException e) {
+			throw new HandlerException(e);
+		} finally {
+			try {
+				if (inputStream != null) {
+					inputStream.close();
+					inputStream = null;
+				}
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	/**
+	 * Appends a placeholder of zeros for a field that is only known later.
+	 * Data written to the returned Fixup before the buffer is written is
+	 * filled in place; a placeholder that has been closed by then is
+	 * written like any other field. Otherwise writeTo() creates a Fixup
+	 * down the handler chain and the returned Fixup passes data on to it.
+	 * 
+	 * @param fieldLength Length of the field
+	 * @return Fixup of the field
+	 */
+	public Fixup putFixup(int fieldLength) {
+		ensureCapacity(fieldLength);
+		for (int i = 0; i < fieldLength; i++) {
+			buffer[length + i] = 0;
+		}
+		if (fixupCount == fixups.length) {
+			RecordFixup[] newFixups = new RecordFixup[fixupCount * 2];
+			System.arraycopy(fixups, 0, newFixups, 0, fixupCount);
+			fixups = newFixups;
+		}
+		RecordFixup fixup = new RecordFixup(length, fieldLength);
+		fixups[fixupCount++] = fixup;
+		length += fieldLength;
+		return fixup;
+	}
+
+	/**
+	 * Passes the encoded bytes down the handler chain and resets the buffer:
+	 * one data() call per run of bytes between the open placeholders and
+	 * one fixup() call per open placeholder. The buffer is reused, so the
+	 * stream handler must consume the data before returning.
+	 * 
+	 * @param streamHandler Stream handler
+	 * @throws HandlerException Problems writing the data
+	 */
+	public void writeTo(StreamHandler streamHandler) throws HandlerException {
+		int start = 0;
+		for (int i = 0; i < fixupCount; i++) {
+			RecordFixup fixup = fixups[i];
+			if (fixup.closed) {
+				// Filled in place
+				continue;
+			}
+			if (fixup.offset > start) {
+				streamHandler.data(new ByteBufferDataReference(buffer, start, fixup.offset - start));
+			}
+			fixup.bind(streamHandler.fixup(new ByteBufferDataReference(buffer, fixup.offset, fixup.available)));
+			start = fixup.offset + fixup.available;
+		}
+		if (length > start) {
+			streamHandler.data(new ByteBufferDataReference(buffer, start, length - start));
+		}
+		reset();
+	}
+
+	/**
+	 * Fixup of a placeholder, filled in place until the buffer is written
+	 */
+	private class RecordFixup implements Fixup {
+		private int offset, available, position = 0;
+		private boolean closed = false;
+		private Fixup target = null;
+
+		RecordFixup(int offset, int available) {
+			this.offset = offset;
+			this.available = available;
+		}
+
+		// The placeholder has been written, continue with the Fixup created for it
+		void bind(Fixup target) throws HandlerException {
+			this.target = target;
+			if (position > 0) {
+				target.data(new ByteBufferDataReference(buffer, offset, position));
+			}
+		}
+
+		public void data(DataReference reference) throws HandlerException {
+			if (target != null) {
+				target.data(reference);
+				return;
+			}
+			if (closed) {
+				throw new HandlerException("Fixup already closed.");
+			}
+			int referenceLength = (int) reference.getLength();
+			if (position + referenceLength > available) {
+				throw new HandlerException("Fixup larger than available space.");
+			}
+			read(reference, offset + position);
+			position += referenceLength;
+		}
+
+		public Fixup fixup(DataReference reference) throws HandlerException {
+			throw new HandlerException("Cannot create fixup within fixup.");
+		}
+
+		public long mark() throws HandlerException {
+			if (target == null) {
+				throw new HandlerException("Fixup has not been written yet.");
+			}
+			return target.mark();
+		}
+
+		public void close() throws HandlerException {
+			if (target != null) {
+				target.close();
+			} else {
+				closed = true;
+			}
+		}
+
+		public boolean isClosed() {
+			return target != null ? target.isClosed() : closed;
+		}
+	}
+}
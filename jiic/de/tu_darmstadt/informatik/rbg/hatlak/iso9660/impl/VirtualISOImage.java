@@ -0,0 +1,194 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+import de.tu_darmstadt.informatik.rbg.hatlak.sabre.impl.FileChannelDataReference;
+
+/**
+ * Read-only view of an ISO image recorded by ISOImageVirtualHandler.
+ * Metadata is served from memory, file contents are read from the
+ * source files on demand. Source files must not change while the
+ * image is in use. Not thread-safe; use one channel per thread.
+ */
+public class VirtualISOImage implements SeekableByteChannel {
+	private long[] starts, lengths, offsets;
+	private byte[] types;
+	private FileChannelDataReference[] references;
+	private int count;
+	private byte[][] blocks;
+	private long size, position = 0;
+	private boolean open = true;
+	
+	// Most recently used source file
+	private File sourceFile = null;
+	private RandomAccessFile source = null;
+
+	VirtualISOImage(long[] starts, long[] lengths, byte[] types, long[] offsets, FileChannelDataReference[] references, int count, byte[][] blocks, long size) {
+		this.starts = starts;
+		this.lengths = lengths;
+		this.types = types;
+		this.offsets = offsets;
+		this.references = references;
+		this.count = count;
+		this.blocks = blocks;
+		this.size = size;
+	}
+
+	public int read(ByteBuffer dst) throws IOException {
+		checkOpen();
+		if (position >= size) {
+			return -1;
+		}
+		
+		int total = 0;
+		int segment = findSegment(position);
+		while (dst.hasRemaining() && position < size) {
+			while (position >= starts[segment] + lengths[segment]) {
+				segment++;
+			}
+			
+			long inSegment = position - starts[segment];
+			int length = (int) Math.min(dst.remaining(), lengths[segment] - inSegment);
+			switch (types[segment]) {
+				case ISOImageVirtualHandler.SEGMENT_MEMORY:
+					readMemory(offsets[segment] + inSegment, dst, length);
+					break;
+				case ISOImageVirtualHandler.SEGMENT_FILE:
+					readFile(references[segment].getFile(), offsets[segment] + inSegment, dst, length);
+					break;
+				default:
+					for (int i = 0; i < length; i++) {
+						dst.put((byte) 0);
+					}
+			}
+			
+			position += length;
+			total += length;
+		}
+		return total;
+	}
+
+	private int findSegment(long position) {
+		int low = 0, high = count - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (starts[middle] <= position) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	private void readMemory(long offset, ByteBuffer dst, int length) {
+		while (length > 0) {
+			int block = (int) (offset >>> ISOImageVirtualHandler.BLOCK_BITS);
+			int inBlock = (int) (offset & (ISOImageVirtualHandler.BLOCK_SIZE - 1));
+			int chunk = Math.min(length, ISOImageVirtualHandler.BLOCK_SIZE - inBlock);
+			dst.put(blocks[block], inBlock, chunk);
+			offset += chunk;
+			length -= chunk;
+		}
+	}
+
+	private void readFile(File file, long offset, ByteBuffer dst, int length) throws IOException {
+		if (file != sourceFile) {
+			closeSource();
+			source = new RandomAccessFile(file, "r");
+			sourceFile = file;
+		}
+		
+		FileChannel channel = source.getChannel();
+		int limit = dst.limit();
+		dst.limit(dst.position() + length);
+		try {
+			while (dst.hasRemaining()) {
+				int read = channel.read(dst, offset);
+				if (read < 0) {
+					throw new EOFException("Source file shrunk: " + file);
+				}
+				offset += read;
+			}
+		} finally {
+			dst.limit(limit);
+		}
+	}
+
+	public int write(ByteBuffer src) throws IOException {
+		throw new NonWritableChannelException();
+	}
+
+	public long position() throws IOException {
+		checkOpen();
+		return position;
+	}
+
+	public SeekableByteChannel position(long newPosition) throws IOException {
+		checkOpen();
+		if (newPosition < 0) {
+			throw new IllegalArgumentException("Negative position: " + newPosition);
+		}
+		position = newPosition;
+		return this;
+	}
+
+	public long size() throws IOException {
+		checkOpen();
+		return size;
+	}
+
+	public SeekableByteChannel truncate(long size) throws IOException {
+		throw new NonWritableChannelException();
+	}
+
+	public boolean isOpen() {
+		return open;
+	}
+
+	public void close() throws IOException {
+		open = false;
+		closeSource();
+	}
+
+	private void closeSource() throws IOException {
+		if (source != null) {
+			source.close();
+			source = null;
+			sourceFile = null;
+		}
+	}
+
+	private void checkOpen() throws IOException {
+		if (!open) {
+			throw new ClosedChannelException();
+		}
+	}
+}
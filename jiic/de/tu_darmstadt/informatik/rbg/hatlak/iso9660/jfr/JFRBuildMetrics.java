@@ -0,0 +1,156 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package de.tu_darmstadt.informatik.rbg.hatlak.iso9660.jfr;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.BuildMetrics;
+
+/**
+ * Emits the measurements of builds as JDK Flight Recorder events
+ * (category JIIC). Phase events span their phase, the other events are
+ * emitted when the measurement is reported.<br>
+ * Requires JDK 11 or later and is only compiled if available (see
+ * build.xml).
+ */
+public class JFRBuildMetrics implements BuildMetrics {
+	private Map<String, PhaseEvent> phases = new HashMap<String, PhaseEvent>();
+
+	public void startPhase(String phase) {
+		PhaseEvent event = new PhaseEvent();
+		event.begin();
+		phases.put(phase, event);
+	}
+
+	public void endPhase(String phase, long wallTime, long cpuTime) {
+		PhaseEvent event = phases.remove(phase);
+		if (event==null) {
+			return;
+		}
+		event.end();
+		if (event.shouldCommit()) {
+			event.phase = phase;
+			event.cpuTime = cpuTime;
+			event.commit();
+		}
+	}
+
+	public void handler(String handler, long dataCalls, long bytes, long fixups, long fixupWrites) {
+		HandlerEvent event = new HandlerEvent();
+		if (event.isEnabled()) {
+			event.handler = handler;
+			event.dataCalls = dataCalls;
+			event.bytes = bytes;
+			event.fixups = fixups;
+			event.fixupWrites = fixupWrites;
+			event.commit();
+		}
+	}
+
+	public void output(String output, long seeks, long stalls, long stallTime) {
+		OutputEvent event = new OutputEvent();
+		if (event.isEnabled()) {
+			event.output = output;
+			event.seeks = seeks;
+			event.stalls = stalls;
+			event.stallTime = stallTime;
+			event.commit();
+		}
+	}
+
+	public void renames(String namespace, int renames) {
+		RenameEvent event = new RenameEvent();
+		if (event.isEnabled()) {
+			event.namespace = namespace;
+			event.renames = renames;
+			event.commit();
+		}
+	}
+
+	@Name("de.tu_darmstadt.informatik.rbg.hatlak.iso9660.Phase")
+	@Label("Build Phase")
+	@Category("JIIC")
+	static class PhaseEvent extends Event {
+		@Label("Phase")
+		String phase;
+
+		@Label("CPU Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long cpuTime;
+	}
+
+	@Name("de.tu_darmstadt.informatik.rbg.hatlak.iso9660.Handler")
+	@Label("Handler Data")
+	@Category("JIIC")
+	static class HandlerEvent extends Event {
+		@Label("Handler")
+		String handler;
+
+		@Label("Data Calls")
+		long dataCalls;
+
+		@Label("Bytes")
+		@DataAmount
+		long bytes;
+
+		@Label("Fixups")
+		long fixups;
+
+		@Label("Fixup Writes")
+		long fixupWrites;
+	}
+
+	@Name("de.tu_darmstadt.informatik.rbg.hatlak.iso9660.Output")
+	@Label("Output Handler")
+	@Category("JIIC")
+	static class OutputEvent extends Event {
+		@Label("Output Handler")
+		String output;
+
+		@Label("Seeks")
+		long seeks;
+
+		@Label("Stalls")
+		long stalls;
+
+		@Label("Stall Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long stallTime;
+	}
+
+	@Name("de.tu_darmstadt.informatik.rbg.hatlak.iso9660.Renames")
+	@Label("Naming Conventions")
+	@Category("JIIC")
+	static class RenameEvent extends Event {
+		@Label("Namespace")
+		String namespace;
+
+		@Label("Renames")
+		int renames;
+	}
+}
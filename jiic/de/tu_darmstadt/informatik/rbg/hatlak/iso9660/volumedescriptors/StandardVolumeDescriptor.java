@@ -224,21 +224,14 @@ public abstract class StandardVolumeDescriptor extends ISO9660VolumeDescriptor {
 	
 	private void doRootDR(HashMap memory) throws HandlerException {
 		ISO9660DirectoryRecord rddr = new ISO9660DirectoryRecord(streamHandler, ISO9660Constants.FI_ROOT, helper.getRoot(), helper);
-		HashMap drMemory = rddr.doDR();
-		
-		// Length of Directory Record
-		Fixup drLengthFixup = (Fixup) drMemory.get("drLengthFixup");
-		int drLength = ((Integer) drMemory.get("drLength")).intValue(); 
-		drLengthFixup.data(new ByteDataReference(drLength));
-		drLengthFixup.close();
+		rddr.encode();
+		rddr.write();
 		
 		// Root Directory Location
-		Fixup rootDirLocation = (Fixup) drMemory.get("drLocationFixup");
-		memory.put("rootDirLocationFixup", rootDirLocation);
+		memory.put("rootDirLocationFixup", rddr.getLocationFixup());
 
 		// Root Directory Length
-		Fixup rootDirLength = (Fixup) drMemory.get("drDataLengthFixup");
-		memory.put("rootDirLengthFixup", rootDirLength);
+		memory.put("rootDirLengthFixup", rddr.getDataLengthFixup());
 	}
 
 	private ByteArrayDataReference getSystemId()
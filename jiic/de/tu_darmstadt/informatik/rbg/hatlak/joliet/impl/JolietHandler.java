@@ -33,6 +33,7 @@ public class JolietHandler extends StandardHandler {
 	private LayoutHelper helper;
 	private HashMap volumeFixups;
 	private ISO9660Factory factory;
+	private NamingConventionsProcessor namingProcessor;
 	
 	public JolietHandler(StreamHandler streamHandler, ISO9660RootDirectory root, JolietConfig config) throws HandlerException {
 		super(streamHandler, root, config);
@@ -41,12 +42,36 @@ public class JolietHandler extends StandardHandler {
 
 		checkMetadataFiles();
 
-		// Use a copy of the original root for Joliet
-		ISO9660RootDirectory jolietRoot = (ISO9660RootDirectory) root.clone();
+		// Use a namespace of the original root for Joliet
+		ISO9660RootDirectory jolietRoot = root.createNamespace();
 		this.helper = new JolietLayoutHelper(this, jolietRoot);
 		this.factory = new ISO9660Factory(this, config, helper, jolietRoot, volumeFixups);
 		
-		factory.applyNamingConventions();
+		// Applied by startDocument(), possibly in parallel to other namespaces
+		namingProcessor = new NamingConventionsProcessor(config.getNamingThreads());
+	}
+	
+	public void startDocument() throws HandlerException {
+		boolean started = false;
+		try {
+			factory.applyNamingConventions(namingProcessor);
+			super.startDocument();
+			started = true;
+		} finally {
+			if (!started) {
+				namingProcessor.shutdown();
+			}
+		}
+		namingProcessor.finish();
+	}
+	
+	/**
+	 * Returns the naming conventions applied
+	 * 
+	 * @return Naming conventions
+	 */
+	public List<NamingConventions> getNamingConventions() {
+		return namingProcessor.getNamingConventions();
 	}
 	
 	public void startElement(Element element) throws HandlerException {
@@ -57,6 +82,9 @@ public class JolietHandler extends StandardHandler {
 		if (element instanceof FileElement) {
 			FileElement fileElement = (FileElement) element;
 			factory.doFileFixup(fileElement.getFile());
+		} else
+		if (element instanceof SharedFileElement) {
+			factory.doFileFixup(((SharedFileElement) element).getFile());
 		}
 		super.startElement(element);
 	}
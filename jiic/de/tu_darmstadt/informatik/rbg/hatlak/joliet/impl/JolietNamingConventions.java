@@ -25,6 +25,7 @@ import java.util.regex.Pattern;
 
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660Directory;
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660File;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.NameNormalizer;
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.NamingConventions;
 import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
 
@@ -33,6 +34,7 @@ public class JolietNamingConventions extends NamingConventions {
 	public static int MAX_NAME_LENGTH = 64;
 	// Note: Backslash escaped for both the RegEx and Java itself
 	public static final Pattern PATTERN = Pattern.compile("[*/:;?\\\\]");
+	public static final NameNormalizer NORMALIZER = NameNormalizer.forbidding("*/:;?\\");
 
 	public JolietNamingConventions() {
 		super("Joliet");
@@ -40,53 +42,60 @@ public class JolietNamingConventions extends NamingConventions {
 	
 	@Override
 	public void apply(ISO9660Directory dir) throws HandlerException {
+		setFilename(dir, normalizeDirectoryName(dir.getName()));
+	}
+
+	@Override
+	public void apply(ISO9660File file) throws HandlerException {
+		String[] name = normalizeFilename(file.getFilename(), file.getExtension(), file.getVersion(), file.enforces8plus3());
+		file.enforceDotDelimiter(FORCE_DOT_DELIMITER);
+		setFilename(file, name[0], name[1]);
+	}
+
+	@Override
+	public String normalizeDirectoryName(String name) throws HandlerException {
 		// Joliet directory name restrictions:
 		// Directory Identifier length (filename) <= 128 bytes (64 characters)
 		// name may contain extension
 		// name non-empty
 		
-		String filename = normalize(dir.getName());
-		
-		if (filename.length() > MAX_NAME_LENGTH) {
-			filename = filename.substring(0, MAX_NAME_LENGTH);
-		}
+		String filename = NORMALIZER.normalize(name, MAX_NAME_LENGTH);
 		
 		if (filename.length()==0) {
 			throw new HandlerException(getID() + ": Empty directory name encountered.");
 		}
 		
-		setFilename(dir, filename);
+		return filename;
 	}
 
 	@Override
-	public void apply(ISO9660File file) throws HandlerException {
+	public String[] normalizeFilename(String filename, String extension, int version, boolean enforce8plus3) throws HandlerException {
 		// Joliet file name restrictions:
 		// File Identifier length (filename + extension + overhead) <= 128 bytes (64 characters)
 		// either filename or extension non-empty
 		
-		String filename = normalize(file.getFilename());
-		String extension = normalize(file.getExtension());
-		file.enforceDotDelimiter(FORCE_DOT_DELIMITER);
+		filename = NORMALIZER.normalize(filename);
+		extension = NORMALIZER.normalize(extension);
 		
 		if (filename.length()==0 && extension.length()==0) {
 			throw new HandlerException(getID() + ": Empty file name encountered.");
 		}
 		
-		if (file.enforces8plus3()) {
+		if (enforce8plus3) {
 			if (filename.length() > 8) {
 				filename = filename.substring(0, 8);
 			}
 			if (extension.length() > 3) {
 				String mapping = getExtensionMapping(extension);
 				if (mapping!=null && mapping.length() <= 3) {
-					extension = normalize(mapping);
+					extension = NORMALIZER.normalize(mapping);
 				} else {
 					extension = extension.substring(0, 3);
 				}
 			}
 		}
 		
-		int versionAndSeparatorsLength = (String.valueOf(file.getVersion())).length() + 2; // ;. -> 2
+		int versionAndSeparatorsLength = (String.valueOf(version)).length() + 2; // ;. -> 2
 		if (filename.length() + extension.length() + versionAndSeparatorsLength > MAX_NAME_LENGTH) {
 			if (filename.length() >= extension.length()) {
 				// Shorten filename
@@ -97,13 +106,9 @@ public class JolietNamingConventions extends NamingConventions {
 			}
 		}
 		
-		setFilename(file, filename, extension);
+		return new String[] {filename, extension};
 	}
 
-	private String normalize(String name) {
-		return PATTERN.matcher(name).replaceAll("_");
-	}
-	
 	@Override
 	public void addDuplicate(Map<String, Set<Integer>> duplicates, String name, int version) {
 		super.addDuplicate(duplicates, name.toUpperCase(), version);
@@ -118,7 +123,7 @@ public class JolietNamingConventions extends NamingConventions {
 	public void checkPathLength(String isoPath) {
 		// "Remainder of ISO 9660 section 6.8.2.1": 240 Byte (120 characters)
 		if (isoPath.length() > 120) {
-			System.out.println(getID() + ": Path length exceeds limit: " + isoPath);
+			println(getID() + ": Path length exceeds limit: " + isoPath);
 		}
 	}
 }
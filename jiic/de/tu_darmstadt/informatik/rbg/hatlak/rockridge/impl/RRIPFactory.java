@@ -21,7 +21,7 @@ package de.tu_darmstadt.informatik.rbg.hatlak.rockridge.impl;
 
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.ISO9660DateDataReference;
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.ISO9660ShortDateDataReference;
-import de.tu_darmstadt.informatik.rbg.hatlak.sabre.impl.BothWordDataReference;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.RecordEncoder;
 import de.tu_darmstadt.informatik.rbg.mhartle.sabre.DataReference;
 import de.tu_darmstadt.informatik.rbg.mhartle.sabre.Fixup;
 import de.tu_darmstadt.informatik.rbg.mhartle.sabre.HandlerException;
@@ -59,27 +59,31 @@ public class RRIPFactory extends SUSPFactory {
 	public RRIPFactory(StreamHandler streamHandler) {
 		super(streamHandler);
 	}
+	
+	public RRIPFactory(StreamHandler streamHandler, RecordEncoder encoder) {
+		super(streamHandler, encoder);
+	}
 
 	public void doPXEntry(int fileModes, int fileLinks, int uid, int gid, long serialNumber) throws HandlerException {
-		streamHandler.startElement(new SystemUseEntryElement("PX", 1));
-		streamHandler.data(new BothWordDataReference(fileModes));
-		streamHandler.data(new BothWordDataReference(fileLinks));
-		streamHandler.data(new BothWordDataReference(uid));
-		streamHandler.data(new BothWordDataReference(gid));
+		startEntry("PX", 1);
+		encoder.putBothWord(fileModes);
+		encoder.putBothWord(fileLinks);
+		encoder.putBothWord(uid);
+		encoder.putBothWord(gid);
 		
 		if (!MKISOFS_COMPATIBILITY) {
 			// RRIP 1.12 includes the Serial Number field, RRIP 1.09 does not
-			streamHandler.data(new BothWordDataReference(serialNumber));
+			encoder.putBothWord(serialNumber);
 		}
 		
-		streamHandler.endElement();
+		endEntry();
 	}
 	
 	public void doPNEntry(int deviceNumberHigh, int deviceNumberLow) throws HandlerException {
-		streamHandler.startElement(new SystemUseEntryElement("PN", 1));
-		streamHandler.data(new BothWordDataReference(deviceNumberHigh));
-		streamHandler.data(new BothWordDataReference(deviceNumberLow));
-		streamHandler.endElement();
+		startEntry("PN", 1);
+		encoder.putBothWord(deviceNumberHigh);
+		encoder.putBothWord(deviceNumberLow);
+		endEntry();
 	}
 	
 	public void startSLEntry(boolean continues) throws HandlerException {
@@ -106,36 +110,35 @@ public class RRIPFactory extends SUSPFactory {
 	}
 
 	public void doNMEntry(int flags, DataReference name) throws HandlerException {
-		streamHandler.startElement(new SystemUseEntryElement("NM", 1));
-		
 		if (flags != 0 && flags != NM_CONTINUES && flags != NM_CURRENT && flags != NM_PARENT) {
 			throw new HandlerException("Invalid Rock Ridge directory flags combination: " + flags);
 		}
-		streamHandler.data(new ByteDataReference(flags));
-		
-		streamHandler.data(name);
-		streamHandler.endElement();
+
+		startEntry("NM", 1);
+		encoder.putByte(flags);
+		encoder.put(name);
+		endEntry();
 	}
 
 	public Fixup doCLEntry() throws HandlerException {
-		streamHandler.startElement(new SystemUseEntryElement("CL", 1));
-		Fixup childLocationFixup = streamHandler.fixup(new BothWordDataReference(0));
-		streamHandler.endElement();
+		startEntry("CL", 1);
+		Fixup childLocationFixup = encoder.putFixup(8);
+		endEntry();
 		
 		return childLocationFixup;
 	}
 
 	public Fixup doPLEntry() throws HandlerException {
-		streamHandler.startElement(new SystemUseEntryElement("PL", 1));
-		Fixup parentLocationFixup = streamHandler.fixup(new BothWordDataReference(0));
-		streamHandler.endElement();
+		startEntry("PL", 1);
+		Fixup parentLocationFixup = encoder.putFixup(8);
+		endEntry();
 
 		return parentLocationFixup;
 	}
 
 	public void doREEntry() throws HandlerException {
-		streamHandler.startElement(new SystemUseEntryElement("RE", 1));
-		streamHandler.endElement();
+		startEntry("RE", 1);
+		endEntry();
 	}
 
 	public void doTFEntry(int type, ISO9660DateDataReference date) throws HandlerException {
@@ -148,6 +151,15 @@ public class RRIPFactory extends SUSPFactory {
 		streamHandler.endElement();
 	}
 	
+	public void doTFEntry(int type, long time) throws HandlerException {
+		checkTFType(type);
+		
+		startEntry("TF", 1);
+		encoder.putByte(type);
+		encoder.putShortDate(time);
+		endEntry();
+	}
+	
 	public void doTFEntry(int type, ISO9660ShortDateDataReference date) throws HandlerException {
 		streamHandler.startElement(new SystemUseEntryElement("TF", 1));
 		
@@ -166,11 +178,11 @@ public class RRIPFactory extends SUSPFactory {
 	}
 	
 	public void doSFEntry(long virtualFileSizeHigh, long virtualFileSizeLow, int tableDepth) throws HandlerException {
-		streamHandler.startElement(new SystemUseEntryElement("SF", 1));
-		streamHandler.data(new BothWordDataReference(virtualFileSizeHigh));
-		streamHandler.data(new BothWordDataReference(virtualFileSizeLow));
-		streamHandler.data(new ByteDataReference(tableDepth));
-		streamHandler.endElement();
+		startEntry("SF", 1);
+		encoder.putBothWord(virtualFileSizeHigh);
+		encoder.putBothWord(virtualFileSizeLow);
+		encoder.putByte(tableDepth);
+		endEntry();
 	}
 	
 	public void doEREntry() throws HandlerException {
@@ -199,9 +211,9 @@ public class RRIPFactory extends SUSPFactory {
 				throw new HandlerException("Invalid RR flags: " + flags);
 			}
 			
-			streamHandler.startElement(new SystemUseEntryElement("RR", 1));
-			streamHandler.data(new ByteDataReference(flags));
-			streamHandler.endElement();
+			startEntry("RR", 1);
+			encoder.putByte(flags);
+			endEntry();
 		}
 		// Else: Do nothing (RRIP 1.12 does not include the RR Entry type)
 	}
@@ -19,10 +19,6 @@
 
 package de.tu_darmstadt.informatik.rbg.hatlak.rockridge.impl;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
-
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.FilenameDataReference;
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660Directory;
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660File;
@@ -34,52 +30,10 @@ import de.tu_darmstadt.informatik.rbg.mhartle.sabre.StreamHandler;
 
 public class RockRidgeLayoutHelper extends LayoutHelper {
 	private ISO9660RootDirectory rripRoot;
-	/** Map files by either ID or ISO9660File */
-	private Map<Object,ISO9660File> fileMapper;
-	/** Map directories by ID */
-	private Map<Object,ISO9660Directory> directoryMapper;
 	
 	public RockRidgeLayoutHelper(StreamHandler streamHandler, ISO9660RootDirectory isoRoot, ISO9660RootDirectory rripRoot) {
 		super(streamHandler, isoRoot, new RockRidgeNamingConventions());
 		this.rripRoot = rripRoot;
-		setup(isoRoot);
-	}
-	
-	private void setup(ISO9660RootDirectory isoRoot) {
-		// Lookup tables mapping files and directories between hierarchies
-		// (ISO 9660 -> Rock Ridge)
-		int fileCount = isoRoot.deepFileCount() + 1;
-		fileMapper = new HashMap<Object,ISO9660File>(fileCount);
-		int dirCount = isoRoot.deepDirCount() + 1;
-		directoryMapper = new HashMap<Object,ISO9660Directory>(dirCount);
-		
-		// Root files (root itself does not have to be mapped)
-		Iterator<ISO9660File> isoFit = isoRoot.getFiles().iterator();
-		Iterator<ISO9660File> rripFit = rripRoot.getFiles().iterator();
-		while (isoFit.hasNext()) {
-			ISO9660File isoFile = isoFit.next();
-			ISO9660File rripFile = rripFit.next();
-			fileMapper.put(isoFile, rripFile);
-		}		
-		
-		// Subdirectories:
-		// Since rripRoot and isoRoot are just a deep copy of the same
-		// root at this point, simultaneous iteration can be applied here
-		Iterator<ISO9660Directory> isoIt = isoRoot.unsortedIterator();
-		Iterator<ISO9660Directory> rripIt = rripRoot.unsortedIterator();
-		while (isoIt.hasNext()) {
-			ISO9660Directory isoDir = isoIt.next();
-			ISO9660Directory rripDir = rripIt.next();
-			directoryMapper.put(isoDir.getID(), rripDir);
-			
-			isoFit = isoDir.getFiles().iterator();
-			rripFit = rripDir.getFiles().iterator();
-			while (isoFit.hasNext()) {
-				ISO9660File isoFile = isoFit.next();
-				ISO9660File rripFile = rripFit.next();
-				fileMapper.put(isoFile.getID(), rripFile);
-			}
-		}
 	}
 
 	@Override
@@ -110,7 +64,9 @@ public class RockRidgeLayoutHelper extends LayoutHelper {
 			return rripRoot.getMovedDirectoriesStore();
 		}
 		
-		ISO9660Directory rripDir = directoryMapper.get(dir.getID());
+		// Both hierarchies are namespaces of the same root, so corresponding
+		// files and directories have the same index
+		ISO9660Directory rripDir = rripRoot.getIndexedDirectory(dir.getIndex());
 		if (rripDir!=null) {
 			return rripDir;
 		}
@@ -119,7 +75,7 @@ public class RockRidgeLayoutHelper extends LayoutHelper {
 	}
 
 	public ISO9660File matchFile(ISO9660File file) {		
-		ISO9660File rripFile = fileMapper.get(file.getID());
+		ISO9660File rripFile = rripRoot.getIndexedFile(file.getIndex());
 		if (rripFile!=null) {
 			return rripFile;
 		}
@@ -128,11 +84,7 @@ public class RockRidgeLayoutHelper extends LayoutHelper {
 	}
 	
 	public ISO9660File matchFile(ISO9660MovedDirectory moved) {		
-		ISO9660File rripFile = fileMapper.get(moved.getID());
-		if (rripFile!=null) {
-			return rripFile;
-		}
-		
+		// Placeholders for moved directories are not part of the hierarchy
 		throw new RuntimeException("No matching file found for " + moved.getISOPath());
 	}
 
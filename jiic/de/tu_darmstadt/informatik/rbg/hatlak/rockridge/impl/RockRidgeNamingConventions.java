@@ -21,16 +21,16 @@ package de.tu_darmstadt.informatik.rbg.hatlak.rockridge.impl;
 
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Pattern;
 
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660Directory;
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.ISO9660File;
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.NameNormalizer;
 import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.NamingConventions;
 
 public class RockRidgeNamingConventions extends NamingConventions {
 	public static boolean HIDE_MOVED_DIRECTORIES_STORE = true;
 	public static boolean FORCE_PORTABLE_FILENAME_CHARACTER_SET = true;
-	private static final Pattern PATTERN = Pattern.compile("[^-A-Za-z0-9._]");
+	private static final NameNormalizer PORTABLE = NameNormalizer.allowing("-ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789._");
 	// Filename lengths are not restricted by Rock Ridge,
 	// these are just safe defaults
 	public static int MAX_DIRECTORY_LENGTH = 255;
@@ -42,20 +42,25 @@ public class RockRidgeNamingConventions extends NamingConventions {
 	
 	@Override
 	public void apply(ISO9660Directory dir) {
-		String filename = normalize(dir.getName());
-
-		if (filename.length() > MAX_DIRECTORY_LENGTH) {
-			// Shorten filename
-			filename = filename.substring(0, MAX_DIRECTORY_LENGTH);
-		}
-		
-		setFilename(dir, filename);
+		setFilename(dir, normalizeDirectoryName(dir.getName()));
 	}
 
 	@Override
 	public void apply(ISO9660File file) {
-		String filename = normalize(file.getFilename());
-		String extension = normalize(file.getExtension());
+		String[] name = normalizeFilename(file.getFilename(), file.getExtension(), file.getVersion(), file.enforces8plus3());
+		setFilename(file, name[0], name[1]);
+	}
+
+	@Override
+	public String normalizeDirectoryName(String name) {
+		// Shorten filename if needed
+		return normalize(name, MAX_DIRECTORY_LENGTH);
+	}
+
+	@Override
+	public String[] normalizeFilename(String filename, String extension, int version, boolean enforce8plus3) {
+		filename = normalize(filename, Integer.MAX_VALUE);
+		extension = normalize(extension, Integer.MAX_VALUE);
 		int length = filename.length() + extension.length();
 
 		if (extension.length() == 0) {
@@ -70,7 +75,7 @@ public class RockRidgeNamingConventions extends NamingConventions {
 			}
 		}
 		
-		setFilename(file, filename, extension);
+		return new String[] {filename, extension};
 	}
 
 	@Override
@@ -81,13 +86,16 @@ public class RockRidgeNamingConventions extends NamingConventions {
 	@Override
 	public void endRenaming(ISO9660File file) {
 		if (VERBOSE) {
-			System.out.println(" to " + file.getName());
+			println(" to " + file.getName());
 		}
 	}
 
-	private String normalize(String name) {
+	private String normalize(String name, int maxLength) {
 		if (FORCE_PORTABLE_FILENAME_CHARACTER_SET) {
-			return PATTERN.matcher(name).replaceAll("_");
+			return PORTABLE.normalize(name, maxLength);
+		}
+		if (name.length() > maxLength) {
+			return name.substring(0, maxLength);
 		}
 		return name;
 	}
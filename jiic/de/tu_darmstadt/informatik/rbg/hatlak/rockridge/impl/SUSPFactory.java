@@ -21,6 +21,7 @@ package de.tu_darmstadt.informatik.rbg.hatlak.rockridge.impl;
 
 import java.util.HashMap;
 
+import de.tu_darmstadt.informatik.rbg.hatlak.iso9660.impl.RecordEncoder;
 import de.tu_darmstadt.informatik.rbg.hatlak.sabre.impl.*;
 import de.tu_darmstadt.informatik.rbg.mhartle.sabre.*;
 import de.tu_darmstadt.informatik.rbg.mhartle.sabre.impl.*;
@@ -28,45 +29,88 @@ import de.tu_darmstadt.informatik.rbg.mhartle.sabre.impl.*;
 public class SUSPFactory {
 	public static final int CE_ENTRY_LENGTH = 28;
 	StreamHandler streamHandler;
+	StreamHandler chainedHandler;
+	RecordEncoder encoder;
+	private int entryStart = 0;
 	
 	public SUSPFactory(StreamHandler streamHandler) {
+		this(streamHandler, new RecordEncoder());
+	}
+	
+	/**
+	 * SUSP Factory appending the entries to the Directory Records encoded
+	 * by a RecordEncoder, see endEntry()
+	 * 
+	 * @param streamHandler Stream handler
+	 * @param encoder Record encoder shared with the Directory Records
+	 */
+	public SUSPFactory(StreamHandler streamHandler, RecordEncoder encoder) {
 		this.streamHandler = new SystemUseEntryHandler(streamHandler, streamHandler);
+		this.chainedHandler = streamHandler;
+		this.encoder = encoder;
+	}
+	
+	/**
+	 * Starts encoding a System Use Entry
+	 * 
+	 * @param signature Signature Word
+	 * @param version Version
+	 */
+	void startEntry(String signature, int version) {
+		entryStart = encoder.length();
+		encoder.putByte(signature.charAt(0));
+		encoder.putByte(signature.charAt(1));
+		encoder.putByte(0);
+		encoder.putByte(version);
+	}
+	
+	/**
+	 * Fills in the length of the encoded System Use Entry. An entry that
+	 * follows a Directory Record in the encoder is written with the record,
+	 * any other entry (e.g. in a Continuation Area) is written right away.
+	 * 
+	 * @throws HandlerException Problems writing the entry
+	 */
+	void endEntry() throws HandlerException {
+		int length = encoder.length() - entryStart;
+		if (length > 255) {
+			throw new RuntimeException("Invalid System Use Entry length: " + length);
+		}
+		encoder.setByte(entryStart + 2, length);
+		if (entryStart == 0) {
+			encoder.writeTo(chainedHandler);
+		}
 	}
 	
 	public HashMap doCEEntry() throws HandlerException {
 		HashMap memory = new HashMap();
-		streamHandler.startElement(new SystemUseEntryElement("CE", 1));
-		
-		Fixup ceLocationFixup = streamHandler.fixup(new BothWordDataReference(0));
-		memory.put("ceLocationFixup", ceLocationFixup);
-		
-		Fixup ceOffsetFixup = streamHandler.fixup(new BothWordDataReference(0));
-		memory.put("ceOffsetFixup", ceOffsetFixup);
-		
-		Fixup ceLengthFixup = streamHandler.fixup(new BothWordDataReference(0));
-		memory.put("ceLengthFixup", ceLengthFixup);
-		
-		streamHandler.endElement();
+		startEntry("CE", 1);
+		memory.put("ceLocationFixup", encoder.putFixup(8));
+		memory.put("ceOffsetFixup", encoder.putFixup(8));
+		memory.put("ceLengthFixup", encoder.putFixup(8));
+		endEntry();
 		return memory;
 	}
 	
 	public void doPDEntry(int paddingLength) throws HandlerException {
-		streamHandler.startElement(new SystemUseEntryElement("PD", 1));
-		streamHandler.data(new EmptyByteArrayDataReference(paddingLength));
-		streamHandler.endElement();
+		startEntry("PD", 1);
+		for (int i = 0; i < paddingLength; i++) {
+			encoder.putByte(0);
+		}
+		endEntry();
 	}
 	
 	public void doSPEntry(int skipBytes) throws HandlerException {
-		streamHandler.startElement(new SystemUseEntryElement("SP", 1));
-		streamHandler.data(new ByteDataReference(0xBE));
-		streamHandler.data(new ByteDataReference(0xEF));
-		streamHandler.data(new ByteDataReference(skipBytes));
-		streamHandler.endElement();
+		startEntry("SP", 1);
+		encoder.putByte(0xBE);
+		encoder.putByte(0xEF);
+		encoder.putByte(skipBytes);
+		endEntry();
 	}
 	
 	public void doSTEntry() throws HandlerException {
-		streamHandler.startElement(new SystemUseEntryElement("ST", 1));
-		streamHandler.endElement();
+		startEntry("ST", 1);
+		endEntry();
 	}
 	
 	public void doEREntry(DataReference id, DataReference descriptor, DataReference source, int version) throws HandlerException {
@@ -88,8 +132,8 @@ public class SUSPFactory {
 	}
 	
 	public void doESEntry(int sequenceNumber) throws HandlerException {
-		streamHandler.startElement(new SystemUseEntryElement("ES", 1));
-		streamHandler.data(new ByteDataReference(sequenceNumber));
-		streamHandler.endElement();
+		startEntry("ES", 1);
+		encoder.putByte(sequenceNumber);
+		endEntry();
 	}
 }
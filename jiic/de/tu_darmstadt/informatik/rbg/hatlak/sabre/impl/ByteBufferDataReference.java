@@ -0,0 +1,68 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package de.tu_darmstadt.informatik.rbg.hatlak.sabre.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.DataReference;
+
+/**
+ * Data reference to the remaining bytes of a ByteBuffer, e.g. one or
+ * more filled logical sectors. Handlers pass it on unchanged and sinks
+ * copy the buffer contents directly instead of reading an InputStream.
+ * The buffer must not be modified until the reference has been consumed.
+ */
+public class ByteBufferDataReference implements DataReference {
+	private ByteBuffer buffer;
+
+	public ByteBufferDataReference(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+	
+	public ByteBufferDataReference(byte[] buffer, int start, int length) {
+		this(ByteBuffer.wrap(buffer, start, length));
+	}
+
+	public long getLength() {
+		return buffer.remaining();
+	}
+
+	/**
+	 * Returns a view of the referenced bytes with its own position and limit
+	 * 
+	 * @return Referenced bytes
+	 */
+	public ByteBuffer getBuffer() {
+		return buffer.duplicate();
+	}
+
+	public InputStream createInputStream() throws IOException {
+		if (buffer.hasArray()) {
+			return new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+		}
+		
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		return new ByteArrayInputStream(bytes);
+	}
+}
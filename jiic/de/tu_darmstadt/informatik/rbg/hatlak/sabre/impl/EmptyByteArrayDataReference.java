@@ -19,13 +19,16 @@
 
 package de.tu_darmstadt.informatik.rbg.hatlak.sabre.impl;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
 
 import de.tu_darmstadt.informatik.rbg.mhartle.sabre.DataReference;
 
 public class EmptyByteArrayDataReference implements DataReference {
+	// Shared source of zero bytes, never written to
+	private static final byte[] ZEROS = new byte[2048];
 	private int length = 0;
 
 	public EmptyByteArrayDataReference(int length) {
@@ -37,6 +40,54 @@ public class EmptyByteArrayDataReference implements DataReference {
 	}
 
 	public InputStream createInputStream() throws IOException {
-		return new ByteArrayInputStream(new byte[length]);
+		return new ZeroInputStream(length);
+	}
+	
+	/**
+	 * Writes the zero bytes without allocating a buffer of the full length
+	 * 
+	 * @param outputStream Output stream
+	 * @throws IOException Problems writing to the stream
+	 */
+	public void writeTo(OutputStream outputStream) throws IOException {
+		int rest = length;
+		while (rest > 0) {
+			int chunk = Math.min(rest, ZEROS.length);
+			outputStream.write(ZEROS, 0, chunk);
+			rest -= chunk;
+		}
+	}
+	
+	private static class ZeroInputStream extends InputStream {
+		private int rest;
+		
+		ZeroInputStream(int length) {
+			this.rest = length;
+		}
+		
+		@Override
+		public int read() throws IOException {
+			if (rest == 0) {
+				return -1;
+			}
+			rest--;
+			return 0;
+		}
+		
+		@Override
+		public int read(byte[] bytes, int offset, int length) throws IOException {
+			if (rest == 0) {
+				return -1;
+			}
+			int read = Math.min(rest, length);
+			Arrays.fill(bytes, offset, offset + read, (byte) 0);
+			rest -= read;
+			return read;
+		}
+		
+		@Override
+		public int available() throws IOException {
+			return rest;
+		}
 	}
 }
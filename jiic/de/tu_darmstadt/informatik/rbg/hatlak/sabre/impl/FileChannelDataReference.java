@@ -0,0 +1,173 @@
+/*  
+ *  JIIC: Java ISO Image Creator. Copyright (C) 2007, Jens Hatlak <hatlak@rbg.informatik.tu-darmstadt.de>
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ *
+ */
+
+package de.tu_darmstadt.informatik.rbg.hatlak.sabre.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+
+import de.tu_darmstadt.informatik.rbg.mhartle.sabre.impl.FileDataReference;
+
+/**
+ * File data reference that exposes the referenced file region so that
+ * stream handlers which write to a FileChannel can copy it using
+ * FileChannel.transferTo() instead of streaming it through the heap.
+ */
+public class FileChannelDataReference extends FileDataReference {
+	private File file;
+	private long position, length;
+	private long lastModified = -1;
+
+	/**
+	 * Reference to the whole file
+	 * 
+	 * @param file File
+	 */
+	public FileChannelDataReference(File file) {
+		this(file, 0, -1);
+	}
+
+	/**
+	 * Reference to a region of the file
+	 * 
+	 * @param file File
+	 * @param position Start of region
+	 * @param length Length of region (-1: up to the end of the file)
+	 */
+	public FileChannelDataReference(File file, long position, long length) {
+		super(file);
+		this.file = file;
+		this.position = position;
+		this.length = length;
+	}
+
+	/**
+	 * Reference to the whole file as of an earlier snapshot of its
+	 * attributes; copying fails if the file has changed since
+	 * 
+	 * @param file File
+	 * @param length File length of the snapshot
+	 * @param lastModified Date of last modification of the snapshot
+	 * @return File data reference
+	 */
+	public static FileChannelDataReference snapshot(File file, long length, long lastModified) {
+		FileChannelDataReference reference = new FileChannelDataReference(file, 0, length);
+		reference.lastModified = lastModified;
+		return reference;
+	}
+
+	/**
+	 * Returns the referenced file
+	 * 
+	 * @return File
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the start of the referenced region
+	 * 
+	 * @return Offset into the file
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	public long getLength() {
+		if (length == -1) {
+			return file.length() - position;
+		}
+		return length;
+	}
+
+	/**
+	 * Checks that the file still matches the snapshot it was referenced
+	 * with (size of the open channel and date of last modification)
+	 * 
+	 * @param source Channel of the opened file
+	 * @throws IOException File changed or problems reading its size
+	 */
+	public void checkUnchanged(FileChannel source) throws IOException {
+		if (lastModified != -1 && (source.size() != length || file.lastModified() != lastModified)) {
+			throw new IOException("File changed: " + file.getAbsolutePath());
+		}
+	}
+
+	public InputStream createInputStream() throws IOException {
+		FileInputStream inputStream = new FileInputStream(file);
+		try {
+			checkUnchanged(inputStream.getChannel());
+		} catch (IOException e) {
+			inputStream.close();
+			throw e;
+		}
+		if (position > 0) {
+			inputStream.getChannel().position(position);
+		}
+		if (length == -1) {
+			return inputStream;
+		}
+		return new RegionInputStream(inputStream, length);
+	}
+
+	private static class RegionInputStream extends FilterInputStream {
+		private long remaining;
+
+		RegionInputStream(InputStream in, long length) {
+			super(in);
+			this.remaining = length;
+		}
+
+		public int read() throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int b = super.read();
+			if (b != -1) {
+				remaining--;
+			}
+			return b;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			if (len > remaining) {
+				len = (int) remaining;
+			}
+			int read = super.read(b, off, len);
+			if (read > 0) {
+				remaining -= read;
+			}
+			return read;
+		}
+
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(Math.min(n, remaining));
+			remaining -= skipped;
+			return skipped;
+		}
+	}
+}